@@ -29,15 +29,21 @@ import android.content.Intent;
 import android.os.Build;
 import android.os.Environment;
 import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatDelegate;
 import com.blankj.utilcode.util.ThrowableUtils;
+import com.eup.codeopsstudio.common.AsyncTask;
 import com.eup.codeopsstudio.common.Constants;
 import com.eup.codeopsstudio.common.ContextManager;
 import com.eup.codeopsstudio.common.util.PreferencesUtils;
 import com.eup.codeopsstudio.common.util.SDKUtil;
 import com.eup.codeopsstudio.common.util.SDKUtil.API;
 import com.eup.codeopsstudio.editor.ContextualCodeEditor;
+import com.eup.codeopsstudio.editor.langs.textmate.TextMateGrammarLoader;
+import com.eup.codeopsstudio.util.CharsetRegistry;
+import com.eup.codeopsstudio.util.FileClassificationCache;
 import com.eup.codeopsstudio.util.Wizard;
 import com.google.android.material.color.DynamicColors;
 import com.google.android.material.color.DynamicColors.Precondition;
@@ -63,6 +69,9 @@ public class IdeApplication extends Application implements Thread.UncaughtExcept
   private static final String AARCH64 = "arm64-v8a";
   private static final String I686 = "x86";
   private static final String X86_64 = "x86_64";
+  private static final String LOG_TAG = "IdeApplication";
+  // most used grammars compiled in the background after startup
+  private static final int PREWARMED_GRAMMARS = 3;
 
   @Override
   public void onCreate() {
@@ -78,13 +87,33 @@ public class IdeApplication extends Application implements Thread.UncaughtExcept
     // validateExpirationDate();
     changeTheme(PreferencesUtils.getCurrentTheme());
     applyDynamicColor();
+    FileClassificationCache.getInstance()
+        .setStoreFile(new File(getCacheDir(), "file_classifications.json"));
+    CharsetRegistry.prewarm();
     try {
-      ContextualCodeEditor.loadConfigurations(this);
+      long start = SystemClock.elapsedRealtime();
+      ContextualCodeEditor.loadConfigurations(this, /* eager= */ false);
+      if (isAppInDebugMode()) {
+        // startup benchmark, compare with eager loading by flipping the flag above
+        Log.d(
+            LOG_TAG,
+            "Editor configurations loaded in " + (SystemClock.elapsedRealtime() - start) + "ms");
+      }
+      TextMateGrammarLoader.getInstance().prewarm(PREWARMED_GRAMMARS);
     } catch (Exception e) {
       crashlytics.recordException(e);
     }
   }
 
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    if (level >= TRIM_MEMORY_UI_HIDDEN) {
+      // the process may be killed from here on
+      AsyncTask.runNonCancelable(() -> FileClassificationCache.getInstance().save());
+    }
+  }
+
   @Override
   public void uncaughtException(Thread thread, Throwable throwable) {
     writeException(throwable);
@@ -32,6 +32,7 @@ import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.FrameLayout;
 import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -77,20 +78,26 @@ import com.eup.codeopsstudio.ui.editor.code.CodeEditorPane;
 import com.eup.codeopsstudio.ui.editor.panes.EmptyPaneWindow;
 import com.eup.codeopsstudio.ui.editor.panes.WebViewPane;
 import com.eup.codeopsstudio.ui.editor.panes.WelcomePane;
+import com.eup.codeopsstudio.ui.editor.session.PaneSessionStore;
+import com.eup.codeopsstudio.ui.editor.session.TabMemoryManager;
 import com.eup.codeopsstudio.ui.settings.PreferencesFragment;
 import com.eup.codeopsstudio.ui.settings.SettingsPane;
 import com.eup.codeopsstudio.util.Wizard;
 import com.eup.codeopsstudio.viewmodel.MainViewModel;
-import io.github.rosemoe.sora.text.Content;
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
 import androidx.lifecycle.Observer;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.apache.commons.io.IOUtils;
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
@@ -126,6 +133,10 @@ public class BaseFragment extends Fragment
         }
       };
   private SharedPreferences sharedPreferences;
+  private PaneSessionStore mSessionStore;
+  // containers of restored and dehydrated panes, their view is only created once selected
+  private final Map<Pane, FrameLayout> mPanePlaceholders = new HashMap<>();
+  private TabMemoryManager mTabMemoryManager;
   private MutableLiveData<List<Pair<Tab, Pane>>> panesLiveData =
       new MutableLiveData<>(new LinkedList<>());
   private MutableLiveData<Pair<Integer, Pair<Tab, Pane>>> currentPaneLiveData =
@@ -164,6 +175,9 @@ public class BaseFragment extends Fragment
   public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
     PreferencesUtils.getDefaultPreferences().registerOnSharedPreferenceChangeListener(this);
     sharedPreferences = PreferencesUtils.getPersistentPanesPreferences();
+    mSessionStore = new PaneSessionStore(requireContext());
+    mTabMemoryManager = new TabMemoryManager(this::dehydratePanes);
+    requireContext().registerComponentCallbacks(mTabMemoryManager);
     mMainViewModel =
         new ViewModelProvider(requireActivity() /*shared activity scope*/).get(MainViewModel.class);
 
@@ -223,8 +237,11 @@ public class BaseFragment extends Fragment
     // position
     binding.paneContainer.setDisplayedChild(position);
     var pair = getPair(tab);
+    // restored panes are materialised on first selection
+    materialisePane(pair.second);
     // mark selected and also for persistency
     pair.second.onSelected();
+    mTabMemoryManager.onPaneSelected(pair.second);
     // post current pane
     EventBus.getDefault().post(new CurrentPaneEvent(position, pair.second));
     currentPaneLiveData.setValue(Pair.create(position, pair));
@@ -293,6 +310,7 @@ public class BaseFragment extends Fragment
     mMainViewModel.addSettingsPane().removeObservers(getViewLifecycleOwner());
     panesLiveData.removeObserver(panesObserver);
     PreferencesUtils.getDefaultPreferences().unregisterOnSharedPreferenceChangeListener(this);
+    requireContext().unregisterComponentCallbacks(mTabMemoryManager);
     this.binding = null;
   }
 
@@ -302,7 +320,7 @@ public class BaseFragment extends Fragment
     if (iterator.hasNext()) {
       do {
         var pair = iterator.next();
-        if (pair != null) {
+        if (pair != null && pair.second.hasPerformedCreateView()) {
           // destroy panes to avoid memory leaks
           pair.second.onDestroy();
         }
@@ -344,8 +362,7 @@ public class BaseFragment extends Fragment
       if (pair.first == tab && !pair.second.isPinned()) {
         removeCodeEditorPaneFromHistory(getSelectedCodeEditorPane(pair.second));
         binding.tablayout.removeTab(tab);
-        binding.paneContainer.removeView(pair.second.getView());
-        pair.second.onDestroy();
+        destroyPane(pair.second);
         removePaneTab(pair);
         break;
       }
@@ -363,8 +380,7 @@ public class BaseFragment extends Fragment
       if (i != keep && !pair.second.isPinned()) {
         removeCodeEditorPaneFromHistory(getSelectedCodeEditorPane(pair.second));
         binding.tablayout.removeTab(binding.tablayout.getTabAt(i));
-        binding.paneContainer.removeView(binding.paneContainer.getChildAt(i));
-        pair.second.onDestroy();
+        destroyPane(pair.second);
         removePaneTab(pair);
       }
     }
@@ -380,8 +396,7 @@ public class BaseFragment extends Fragment
         removeCodeEditorPaneFromHistory(getSelectedCodeEditorPane(pair.second));
         iterator.remove();
         binding.tablayout.removeTab(pair.first);
-        binding.paneContainer.removeView(pair.second.getView());
-        pair.second.onDestroy();
+        destroyPane(pair.second);
         removePaneTab(pair);
       }
     }
@@ -461,8 +476,7 @@ public class BaseFragment extends Fragment
         removeCodeEditorPaneFromHistory(getSelectedCodeEditorPane(pair.second));
         iterator.remove();
         binding.tablayout.removeTab(pair.first);
-        binding.paneContainer.removeView(pair.second.getView());
-        pair.second.onDestroy();
+        destroyPane(pair.second);
         removePaneTab(pair);
       }
     }
@@ -535,6 +549,18 @@ public class BaseFragment extends Fragment
    * @param select Whether to select the added pane or not
    */
   private void addPane(Pane pane, boolean select) {
+    addPane(pane, select, false);
+  }
+
+  /**
+   * Add panes into the pane tabbed editor system
+   *
+   * @param pane The pane to add
+   * @param select Whether to select the added pane or not
+   * @param lazy Whether to defer {@link Pane#createView()} until the pane is first selected, only
+   *     its tab (title, icon and pinned state) is created until then {@see #materialisePane(Pane)}
+   */
+  private void addPane(Pane pane, boolean select, boolean lazy) {
     if (pane == null) return;
 
     if (containsPane(pane)) {
@@ -543,8 +569,15 @@ public class BaseFragment extends Fragment
       return;
     }
 
-    pane.createView();
-    binding.paneContainer.addView(pane.getView());
+    if (lazy) {
+      var placeholder = new FrameLayout(requireContext());
+      mPanePlaceholders.put(pane, placeholder);
+      binding.paneContainer.addView(placeholder);
+    } else {
+      pane.createView();
+      binding.paneContainer.addView(pane.getView());
+      mTabMemoryManager.onPaneCreated(pane);
+    }
     var tab = createTab(pane);
     /**
      * Add the tab to the parent tablayout. #addTab(tab,false) is invoked with false so we do not
@@ -568,6 +601,105 @@ public class BaseFragment extends Fragment
     updateTabs();
   }
 
+  /**
+   * Creates the view of a pane added lazily {@see #addPane(Pane,boolean,boolean)} or dehydrated
+   * {@see #dehydratePanes(List)} and restores its persisted state. No-op for panes whose view
+   * already exists.
+   *
+   * @param pane The pane to materialise
+   */
+  private void materialisePane(Pane pane) {
+    var placeholder = mPanePlaceholders.get(pane);
+    if (placeholder == null || pane.hasPerformedCreateView()) return;
+
+    pane.createView();
+    placeholder.addView(pane.getView());
+    restorePaneState(pane);
+  }
+
+  /**
+   * Detaches the view of a pane (or its placeholder) and destroys it. Panes that were never
+   * materialised hold no resources and are not destroyed.
+   *
+   * @param pane The pane to destroy
+   */
+  private void destroyPane(Pane pane) {
+    mTabMemoryManager.onPaneReleased(pane);
+    var placeholder = mPanePlaceholders.remove(pane);
+    binding.paneContainer.removeView(placeholder != null ? placeholder : pane.getView());
+    if (pane.hasPerformedCreateView()) {
+      pane.onDestroy();
+    }
+  }
+
+  /**
+   * Dehydrates background panes chosen by the tab memory manager {@see TabMemoryManager}. The
+   * session is snapshot first, then the view of every pane that is still in the background and
+   * unchanged since the snapshot is released and replaced by a placeholder. The pane is
+   * rehydrated from the session store when next selected {@see #materialisePane(Pane)}.
+   *
+   * @param panes the panes to dehydrate
+   */
+  private void dehydratePanes(@NonNull List<Pane> panes) {
+    var versions = new HashMap<Pane, Long>();
+    for (Pane pane : panes) {
+      if (pane instanceof PaneSessionStore.PersistableContent) {
+        versions.put(pane, ((PaneSessionStore.PersistableContent) pane).getContentVersion());
+      }
+    }
+
+    final List<Pane> paneList = new LinkedList<>();
+    getPaneTabs().forEach(pair -> paneList.add(pair.second));
+    savePanesAsync(paneList)
+        .thenAccept(
+            isSaved ->
+                AsyncTask.runOnUiThread(
+                    () -> {
+                      if (!isSaved || binding == null) return;
+
+                      for (Pane pane : versions.keySet()) {
+                        var persistable = (PaneSessionStore.PersistableContent) pane;
+                        if (containsPane(pane)
+                            && !pane.isSelected()
+                            && pane.hasPerformedCreateView()
+                            && mSessionStore.contains(pane.getUUID())
+                            && persistable.getContentVersion() == versions.get(pane)) {
+                          releasePane(pane);
+                        }
+                      }
+                    }))
+        .exceptionally(
+            ex -> {
+              logger.e(LOG_TAG, "Exception during panes dehydration" + ex.getLocalizedMessage());
+              return null;
+            });
+  }
+
+  /**
+   * Releases the view of a persisted background pane, leaving a placeholder in its place.
+   *
+   * @param pane the pane to release
+   */
+  private void releasePane(@NonNull Pane pane) {
+    ((TabMemoryManager.Dehydratable) pane).onDehydrate();
+
+    var view = pane.getView();
+    var placeholder = mPanePlaceholders.get(pane);
+    if (placeholder != null) {
+      placeholder.removeView(view);
+    } else {
+      int index = binding.paneContainer.indexOfChild(view);
+      placeholder = new FrameLayout(requireContext());
+      mPanePlaceholders.put(pane, placeholder);
+      binding.paneContainer.removeViewAt(index);
+      binding.paneContainer.addView(placeholder, index);
+      // swapping a child may shift the displayed child
+      binding.paneContainer.setDisplayedChild(binding.tablayout.getSelectedTabPosition());
+    }
+    pane.onDestroy();
+    logger.d(LOG_TAG, "Pane dehydrated. Pane: " + pane.getTitle());
+  }
+
   /**
    * Selects the tab corresponding to the provided pane in the TabLayout and scrolls to it. This
    * method iterates through the list of pane tabs directly, which is more efficient than using
@@ -844,42 +976,40 @@ public class BaseFragment extends Fragment
   }
 
   /**
-   * Converts a list of pane to a JSON representation of a PaneState model
+   * Snapshots a list of panes into the session store {@see PaneSessionStore}
    *
    * <p>Panes must first create their view before invoking this function
    *
-   * @param cues The list of pane cues to be converted
+   * @param cues The list of pane cues to be persisted
    * @return Returns true if the pane cues were successfully written to persistent storage.
    */
   private CompletableFuture<Boolean> savePanesAsync(List<Pane> cues) {
     return CompletableFuture.supplyAsync(
         () -> {
+          if (!Wizard.isEmpty(
+              sharedPreferences.getString(SharedPreferenceKeys.KEY_PERSISTED_PANES, ""))) {
+            PreferencesUtils.clearPerference(
+                sharedPreferences, SharedPreferenceKeys.KEY_PERSISTED_PANES);
+          }
+
           if (cues == null || cues.isEmpty()) {
             return false;
           }
 
-          var editor = sharedPreferences.edit();
-          var treeMapList = new LinkedList<LinkedTreeMap<String, Object>>();
-
-          for (Pane pane : cues) {
-            var treeMap = new LinkedTreeMap<String, Object>();
-            if (pane != null) {
-              pane.persist();
-              for (var entry : pane.getArguments().entrySet()) {
-                treeMap.put(entry.getKey(), entry.getValue());
-              }
-              treeMapList.add(treeMap);
-            }
+          try {
+            return mSessionStore.save(cues);
+          } catch (IOException e) {
+            throw new CompletionException(e);
           }
-
-          String jsonString = new Gson().toJson(treeMapList);
-          editor.putString(
-              SharedPreferenceKeys.KEY_PERSISTED_PANES,
-              EncodeUtils.base64Encode2String(jsonString.getBytes()));
-          return editor.commit();
         });
   }
 
+  /**
+   * Reads panes persisted by versions prior to the session store, they were base64 encoded into
+   * the persistent panes preferences.
+   *
+   * @return the legacy persisted panes JSON, empty if none
+   */
   public String getJson() {
     var bytes =
         EncodeUtils.base64Decode(
@@ -888,26 +1018,30 @@ public class BaseFragment extends Fragment
   }
 
   private List<LinkedTreeMap<String, Object>> getPersistedPaneTree() {
+    var persisted = mSessionStore.readIndex();
+    if (!persisted.isEmpty()) {
+      return persisted;
+    }
+
+    // legacy persisted panes, dropped once the first session snapshot is written
     Gson gson = new Gson();
     var type = new TypeToken<List<LinkedTreeMap<String, Object>>>() {}.getType();
     var json = getJson();
-    if (json != null) {
+    if (!Wizard.isEmpty(json)) {
       List<LinkedTreeMap<String, Object>> linkedTreeMapList = gson.fromJson(json, type);
-      if (linkedTreeMapList != null || linkedTreeMapList.isEmpty()) return linkedTreeMapList;
+      if (linkedTreeMapList != null) return linkedTreeMapList;
     }
     return new LinkedList<LinkedTreeMap<String, Object>>();
   }
 
+  /**
+   * Checks the in-memory session index, no persisted data is parsed.
+   *
+   * @param pane the pane to look up
+   * @return true if the pane is part of the persisted session
+   */
   public boolean isPersisted(Pane pane) {
-    var isPersisted = false;
-    var linkedTreeMapList = getPersistedPaneTree();
-    for (LinkedTreeMap<String, Object> treeMap : linkedTreeMapList) {
-      if (UUID.fromString(treeMap.get("uuid").toString()).equals(pane.getUUID())) {
-        isPersisted = true;
-        break;
-      }
-    }
-    return isPersisted;
+    return mSessionStore.contains(pane.getUUID());
   }
 
   private void removePaneTab(@NonNull Pair<TabLayout.Tab, Pane> pair) {
@@ -924,22 +1058,16 @@ public class BaseFragment extends Fragment
   }
 
   private void removePersistedPane(@NonNull Pane pane) {
+    if (!isPersisted(pane)) {
+      logger.i(LOG_TAG, "Pane : " + pane + "was not persisted");
+      return;
+    }
+
+    // only this pane's record and content blob are deleted
     AsyncTask.runNonCancelable(
-        () -> {
-          if (isPersisted(pane)) {
-            var linkedTreeMapList = getPersistedPaneTree();
-            linkedTreeMapList.removeIf(
-                map -> map.get("uuid").toString().equals(pane.getUUID().toString()));
-            SharedPreferences.Editor editor = sharedPreferences.edit();
-            editor.putString(
-                SharedPreferenceKeys.KEY_PERSISTED_PANES,
-                EncodeUtils.base64Encode2String(new Gson().toJson(linkedTreeMapList).getBytes()));
-            return editor.commit();
-          }
-          return false;
-        },
+        () -> mSessionStore.remove(pane.getUUID()),
         (result, throwable) -> {
-          if (result) {
+          if (result != null && result) {
             AsyncTask.runOnUiThread(
                 () -> {
                   logger.i(
@@ -973,96 +1101,129 @@ public class BaseFragment extends Fragment
    */
   public void removePersistedPanes() {
     PreferencesUtils.clearPerference(sharedPreferences, SharedPreferenceKeys.KEY_PERSISTED_PANES);
+    AsyncTask.runNonCancelable(() -> mSessionStore.clear());
   }
 
   public void restorePersistedPanes() {
     restorePersistedPanes(loadPanes());
   }
 
+  /**
+   * Restores persisted panes as lightweight tabs. The view of a restored pane is created, and its
+   * content read, only when its tab is first selected so panes that are never visited cost no more
+   * than their tab.
+   *
+   * @param paneList the persisted panes in tab order
+   */
   private void restorePersistedPanes(List<Pane> paneList) {
-    if (paneList != null || !paneList.isEmpty()) {
+    if (paneList != null && !paneList.isEmpty()) {
       for (Pane pane : paneList) {
         if (pane != null) {
-          var textPane = getSelectedTextPane(pane);
-          var editorPane = getSelectedEditorPane(pane);
-          var webViewPane = getSelectedWebViewPane(pane);
-          var settingsPane = getSelectedSettingsPane(pane);
-          var codeEditorPane = getSelectedCodeEditorPane(pane);
-
-          addPane(pane, false);
+          addPane(pane, false, /* lazy= */ true);
 
           // select the last selected persisted pane
           if (pane.isSelected()) {
             selectPaneInTabLayout(pane);
           }
-
-          if (textPane != null) {
-            var txt = textPane.getArguments().get("content").toString();
-            textPane.setText(txt);
-          } else if (editorPane != null) {
-            var code = editorPane.getArguments().get("editor_text").toString();
-            editorPane.setText(code);
-          } else if (webViewPane != null) {
-            boolean isDeskTopMode = (boolean) webViewPane.getArguments().get("isDeskTopMode");
-            boolean isZoomable = (boolean) webViewPane.getArguments().get("isZoomAble");
-            var path = webViewPane.getArguments().get("preview_file_path").toString();
-            webViewPane.loadFile(new File(path));
-            webViewPane.setZoomable(isZoomable);
-            webViewPane.enableDeskTopMode(isDeskTopMode);
-          } else if (codeEditorPane != null) {
-            AsyncTask.runNonCancelable(
-                () -> {
-                  return codeEditorPane.getArguments().get("editor_content").toString();
-                },
-                (result) -> {
-                  // null or empty persisted content default to the read editoe file
-                  if (!Wizard.isEmpty(result)) {
-                    codeEditorPane.getEditor().setText(result);
-                    // mark persisted content as modified
-                    codeEditorPane.setModified(true);
-
-                    int left_column =
-                        (int) (double) codeEditorPane.getArguments().get("left_column");
-                    int left_line = (int) (double) codeEditorPane.getArguments().get("left_line");
-
-                    Content text = codeEditorPane.getEditor().getText();
-                    if (left_line < text.getLineCount()
-                        && left_column < text.getColumnCount(left_line)) {
-                      // set cursor position
-                      codeEditorPane.getEditor().getCursor().set(left_line, left_column);
-                    }
-                  }
-                });
-          }
           updateTabs();
         }
       }
     }
   }
 
+  /**
+   * Applies the persisted state of a restored pane, invoked once its view has been created.
+   *
+   * @param pane the restored pane
+   */
+  private void restorePaneState(@NonNull Pane pane) {
+    var textPane = getSelectedTextPane(pane);
+    var editorPane = getSelectedEditorPane(pane);
+    var webViewPane = getSelectedWebViewPane(pane);
+    var codeEditorPane = getSelectedCodeEditorPane(pane);
+
+    if (textPane != null) {
+      var txt = textPane.getArguments().get("content").toString();
+      textPane.setText(txt);
+    } else if (editorPane != null) {
+      var code = editorPane.getArguments().get("editor_text").toString();
+      editorPane.setText(code);
+    } else if (webViewPane != null) {
+      boolean isDeskTopMode = (boolean) webViewPane.getArguments().get("isDeskTopMode");
+      boolean isZoomable = (boolean) webViewPane.getArguments().get("isZoomAble");
+      var path = webViewPane.getArguments().get("preview_file_path").toString();
+      webViewPane.loadFile(new File(path));
+      webViewPane.setZoomable(isZoomable);
+      webViewPane.enableDeskTopMode(isDeskTopMode);
+    } else if (codeEditorPane != null) {
+      AsyncTask.runNonCancelable(
+          () -> readPersistedContent(codeEditorPane),
+          (result) -> {
+            int left_column = getIntArgument(codeEditorPane, "left_column");
+            int left_line = getIntArgument(codeEditorPane, "left_line");
+            // null or empty persisted content default to the read editor file
+            codeEditorPane.restoreState(
+                Wizard.isEmpty(result) ? null : result,
+                left_line,
+                left_column,
+                // the blob already holds this content
+                () ->
+                    mSessionStore.markClean(
+                        codeEditorPane.getUUID(), codeEditorPane.getContentVersion()));
+          });
+    }
+  }
+
+  /**
+   * Reads a numeric pane argument, gson parses persisted numbers as doubles while arguments of
+   * dehydrated panes still hold their original integers.
+   *
+   * @param pane the pane
+   * @param key the argument key
+   * @return the argument value, 0 if absent
+   */
+  private int getIntArgument(@NonNull Pane pane, @NonNull String key) {
+    var value = pane.getArguments().get(key);
+    return value instanceof Number ? ((Number) value).intValue() : 0;
+  }
+
+  /**
+   * Streams the unsaved content of a restored code editor pane from its session blob.
+   *
+   * @param pane the restored pane
+   * @return the persisted content, or {@code null} if the pane had no unsaved content
+   * @throws IOException if the content blob cannot be read
+   */
+  @Nullable
+  private String readPersistedContent(@NonNull CodeEditorPane pane) throws IOException {
+    // panes migrated from the legacy preferences carry their content as an argument
+    var legacyContent = pane.getArguments().remove("editor_content");
+    if (legacyContent != null) {
+      return legacyContent.toString();
+    }
+
+    if (!Boolean.TRUE.equals(pane.getArguments().get(PaneSessionStore.KEY_HAS_CONTENT))) {
+      return null;
+    }
+
+    try (var reader = mSessionStore.openContent(pane.getUUID())) {
+      return reader != null ? IOUtils.toString(reader) : null;
+    }
+  }
+
   /**
    * @return A list of loaded panes from persisted storage
    */
   public LinkedList<Pane> loadPanes() {
-    Gson gson = new Gson();
     LinkedList<Pane> loadedPanes = new LinkedList<>();
-    Type type = new TypeToken<List<LinkedTreeMap<String, Object>>>() {}.getType();
-
-    String json = getJson();
-    if (json != null) {
-      List<LinkedTreeMap<String, Object>> linkedTreeMapList = gson.fromJson(json, type);
 
-      if (linkedTreeMapList != null && !linkedTreeMapList.isEmpty()) {
-        for (LinkedTreeMap<String, Object> treeMap : linkedTreeMapList) {
-          String identifier = treeMap.get("uuid").toString();
-          String jsonArguments = new Gson().toJson(treeMap);
+    for (LinkedTreeMap<String, Object> treeMap : getPersistedPaneTree()) {
+      String identifier = treeMap.get("uuid").toString();
+      String jsonArguments = new Gson().toJson(treeMap);
 
-          loadedPanes.add(createPane(new Rap(jsonArguments, identifier)));
-        }
-      }
-      return loadedPanes;
+      loadedPanes.add(createPane(new Rap(jsonArguments, identifier)));
     }
-    return new LinkedList<Pane>();
+    return loadedPanes;
   }
 
   /**
@@ -1116,7 +1277,12 @@ public class BaseFragment extends Fragment
         codeEditorPane.setFile(new File(treeMap.get("file_path").toString()));
         codeEditorPane.addArguments("left_column", treeMap.get("left_column"));
         codeEditorPane.addArguments("left_line", treeMap.get("left_line"));
-        codeEditorPane.addArguments("editor_content", treeMap.get("editor_content").toString());
+        codeEditorPane.addArguments(
+            PaneSessionStore.KEY_HAS_CONTENT, treeMap.get(PaneSessionStore.KEY_HAS_CONTENT));
+        if (treeMap.get("editor_content") != null) {
+          // legacy persisted content
+          codeEditorPane.addArguments("editor_content", treeMap.get("editor_content").toString());
+        }
         pane = codeEditorPane;
       } else if (clazz.equals(FragmentPane.class.getSimpleName())) {
         // last use case
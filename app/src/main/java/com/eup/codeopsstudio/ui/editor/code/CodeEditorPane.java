@@ -28,6 +28,7 @@ import static com.eup.codeopsstudio.common.Constants.SharedPreferenceKeys;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.FileObserver;
 import android.text.Editable;
 import android.text.InputType;
 import android.view.LayoutInflater;
@@ -35,16 +36,17 @@ import android.view.MenuItem;
 import android.view.View;
 import androidx.appcompat.widget.PopupMenu;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import com.blankj.utilcode.util.KeyboardUtils;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.eup.codeopsstudio.common.AsyncTask;
-import com.eup.codeopsstudio.common.util.FileUtil;
 import com.eup.codeopsstudio.common.util.PreferencesUtils;
 import com.eup.codeopsstudio.common.util.TextWatcherAdapter;
 import com.eup.codeopsstudio.databinding.LayoutCodeEditorBinding;
 import com.eup.codeopsstudio.editor.ContextualCodeEditor;
 import com.eup.codeopsstudio.editor.event.IndexingEvent;
-import com.eup.codeopsstudio.editor.langs.textmate.provider.JsonLanguageInfoProvider;
+import com.eup.codeopsstudio.editor.langs.textmate.TextMateGrammarLoader;
+import com.eup.codeopsstudio.editor.langs.textmate.provider.IndexedLanguageInfoProvider;
 import com.eup.codeopsstudio.events.EditorModificationEvent;
 import com.eup.codeopsstudio.logging.Logger;
 import com.eup.codeopsstudio.pane.Pane;
@@ -52,16 +54,21 @@ import com.eup.codeopsstudio.res.R;
 import com.eup.codeopsstudio.res.databinding.LayoutDialogTextInputBinding;
 import com.eup.codeopsstudio.res.databinding.LayoutReplaceInFileBinding;
 import com.eup.codeopsstudio.ui.editor.code.breadcrumb.pane.CrumbTreePane;
-import com.eup.codeopsstudio.util.BinaryFileChecker;
+import com.eup.codeopsstudio.ui.editor.session.PaneSessionStore;
+import com.eup.codeopsstudio.ui.editor.session.TabMemoryManager;
 import com.eup.codeopsstudio.util.EncodingDetector;
+import com.eup.codeopsstudio.util.FileClassificationCache;
 import com.eup.codeopsstudio.util.Wizard;
 import io.github.rosemoe.sora.event.ContentChangeEvent;
 import io.github.rosemoe.sora.event.PublishSearchResultEvent;
 import io.github.rosemoe.sora.event.SelectionChangeEvent;
 import io.github.rosemoe.sora.langs.textmate.registry.ThemeRegistry;
+import io.github.rosemoe.sora.text.Content;
+import io.github.rosemoe.sora.text.UndoManager;
 import io.github.rosemoe.sora.widget.EditorSearcher;
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.regex.PatternSyntaxException;
 import org.apache.commons.io.FileUtils;
@@ -86,9 +93,16 @@ import org.greenrobot.eventbus.EventBus;
  * @version 0.0.1
  * @author EUP
  */
-public class CodeEditorPane extends Pane implements OnSharedPreferenceChangeListener {
+public class CodeEditorPane extends Pane
+    implements OnSharedPreferenceChangeListener,
+        PaneSessionStore.PersistableContent,
+        TabMemoryManager.Dehydratable {
 
   private static final String LOG_TAG = "CodeEditorPane";
+  // rough heap held by the editor view itself, its render caches and layout
+  private static final long EDITOR_VIEW_BYTES = 512 * 1024;
+  // rough heap held per line besides its characters, the line object and its style spans
+  private static final long LINE_OVERHEAD_BYTES = 128;
 
   private Logger logger = new Logger(Logger.LogClass.IDE);
   private PopupMenu searchMenu;
@@ -97,10 +111,27 @@ public class CodeEditorPane extends Pane implements OnSharedPreferenceChangeList
   private EditorSearcher.SearchOptions searchOptions =
       new EditorSearcher.SearchOptions(false, false);
   private int isMatchCaseSelected = -1;
-  private static final String LANG_SCOPE_PATH = "editor/textmate/language_scopes.json";
   private int selectedItem = -1;
   private boolean isModified = false;
   private boolean isStoppingSearch = false;
+  private final ModificationTracker mModificationTracker = new ModificationTracker();
+  private FileObserver mFileObserver;
+  // size and time stamp of the editor file when it was last loaded or saved by this pane
+  private long mSyncedLength = -1;
+  private long mSyncedLastModified = -1;
+  // incremented on every content change, lets the session store skip unchanged content
+  private long mContentVersion = 0;
+  // whether the editor file has been read, unsaved content is applied only on top of it
+  private boolean mFileRead = false;
+  // state of a restored pane, waiting for the editor file to be read
+  private boolean mPendingState = false;
+  private String mPendingContent;
+  private int mPendingLine;
+  private int mPendingColumn;
+  private Runnable mPendingCallback;
+  // undo history kept across dehydration and the digest of the content it was recorded against
+  private UndoManager mDehydratedUndo;
+  private long mDehydratedDigest;
 
   public CodeEditorPane(Context context, String title) {
     this(context, title, /* generate new uuid= */ true);
@@ -123,6 +154,7 @@ public class CodeEditorPane extends Pane implements OnSharedPreferenceChangeList
     PreferencesUtils.getDefaultPreferences().registerOnSharedPreferenceChangeListener(this);
 
     try {
+      TextMateGrammarLoader.getInstance().ensureThemesLoaded();
       ThemeRegistry.getInstance()
           .setTheme(binding.editor.isUIDarkMode() ? "darcula" : "quietlight");
       binding.editor.ensureTextmateTheme();
@@ -149,6 +181,7 @@ public class CodeEditorPane extends Pane implements OnSharedPreferenceChangeList
 
     readFile(mEditorFile);
     configureEditor();
+    startWatchingFile();
   }
 
   @Override
@@ -166,7 +199,12 @@ public class CodeEditorPane extends Pane implements OnSharedPreferenceChangeList
   public void onDestroy() {
     super.onDestroy();
     PreferencesUtils.getDefaultPreferences().unregisterOnSharedPreferenceChangeListener(this);
-    if (binding.editor != null && !binding.editor.isReleased()) {
+    stopWatchingFile();
+    mPendingState = false;
+    mPendingContent = null;
+    mPendingCallback = null;
+    mFileRead = false;
+    if (binding != null && binding.editor != null && !binding.editor.isReleased()) {
       binding.editor.release();
     }
     if (binding != null) {
@@ -194,12 +232,31 @@ public class CodeEditorPane extends Pane implements OnSharedPreferenceChangeList
     addArguments("left_column", cursor.getLeftColumn());
     addArguments("left_line", cursor.getLeftLine());
     addArguments("file_path", getFilePath());
-    addArguments("editor_content", binding.editor.getText().toString());
+  }
+
+  @Override
+  public boolean hasUnsavedContent() {
+    return isModified;
+  }
+
+  @Override
+  public long getContentVersion() {
+    return mContentVersion;
+  }
+
+  @Override
+  public void writeContent(@NonNull Writer writer) throws IOException {
+    Content text = binding.editor.getText();
+    for (int line = 0; line < text.getLineCount(); line++) {
+      var contentLine = text.getLine(line);
+      writer.append(contentLine);
+      writer.write(contentLine.getLineSeparator().getContent());
+    }
   }
 
   private void readFile(@NonNull File file) {
     setLoading(true);
-    Charset detectedCharset = EncodingDetector.detectFileEncoding(file);
+    Charset detectedCharset = FileClassificationCache.getInstance().getCharset(file);
     try {
       if (!EncodingDetector.isSupportedEncoding(detectedCharset) || isBinaryFile(file)) {
         logger.d(
@@ -214,16 +271,27 @@ public class CodeEditorPane extends Pane implements OnSharedPreferenceChangeList
     } catch (Exception e) {
       logger.e(LOG_TAG, e.getMessage());
     }
-    if (detectedCharset != null) readFileWithCharset(file, detectedCharset);
+    if (detectedCharset != null) {
+      readFileWithCharset(file, detectedCharset);
+    } else {
+      onFileRead();
+    }
   }
 
   private void readFileWithCharset(@NonNull File file, @NonNull Charset charset) {
     AsyncTask.runNonCancelable(
-        () -> FileUtils.readFileToString(file, charset),
+        () -> {
+          var text = FileUtils.readFileToString(file, charset);
+          prepareEditorLanguage(file);
+          return text;
+        },
         (result, throwable) -> {
           setLoading(false);
           if (result != null) {
             binding.editor.setText(result, null);
+            mModificationTracker.markSaved(binding.editor.getText());
+            recordSyncedStamp();
+            setModified(false);
             loadEditorLanguage(file);
             logger.i(
                 LOG_TAG,
@@ -239,9 +307,93 @@ public class CodeEditorPane extends Pane implements OnSharedPreferenceChangeList
                     throwable.getLocalizedMessage());
             logger.e(LOG_TAG, errorMessage);
           }
+          onFileRead();
         });
   }
 
+  private void onFileRead() {
+    mFileRead = true;
+    applyPendingContent();
+  }
+
+  /**
+   * Restores the state of a persisted or dehydrated pane. The unsaved content, if any, replaces the
+   * editor text once the editor file has been read so the file remains the baseline for
+   * modification tracking.
+   *
+   * @param content the unsaved content, {@code null} to keep the content of the editor file
+   * @param line the line to place the cursor at
+   * @param column the column to place the cursor at
+   * @param onRestored invoked on the main thread once the state is applied
+   */
+  public void restoreState(
+      @Nullable String content, int line, int column, @Nullable Runnable onRestored) {
+    mPendingState = true;
+    mPendingContent = content;
+    mPendingLine = line;
+    mPendingColumn = column;
+    mPendingCallback = onRestored;
+    if (mFileRead) applyPendingContent();
+  }
+
+  private void applyPendingContent() {
+    if (binding == null) return;
+
+    if (mPendingContent != null) {
+      binding.editor.setText(mPendingContent);
+      mPendingContent = null;
+      // a missing or unreadable file leaves no baseline to compare against
+      if (!mModificationTracker.hasBaseline()) {
+        setModified(true);
+      } else {
+        updateModified();
+      }
+    }
+    restoreUndoHistory();
+    if (!mPendingState) return;
+
+    mPendingState = false;
+    Content text = binding.editor.getText();
+    if (mPendingLine < text.getLineCount()
+        && mPendingColumn <= text.getColumnCount(mPendingLine)) {
+      binding.editor.getCursor().set(mPendingLine, mPendingColumn);
+    }
+
+    if (mPendingCallback != null) {
+      mPendingCallback.run();
+      mPendingCallback = null;
+    }
+  }
+
+  private void restoreUndoHistory() {
+    if (mDehydratedUndo == null) return;
+
+    Content text = binding.editor.getText();
+    // the history is only valid against the content it was recorded on
+    if (ModificationTracker.digest(text) == mDehydratedDigest) {
+      text.setUndoManager(mDehydratedUndo);
+    }
+    mDehydratedUndo = null;
+  }
+
+  @Override
+  public long estimateMemoryBytes() {
+    if (binding == null) return 0;
+
+    Content text = binding.editor.getText();
+    // chars are UTF-16 in memory
+    return EDITOR_VIEW_BYTES + text.length() * 2L + text.getLineCount() * LINE_OVERHEAD_BYTES;
+  }
+
+  @Override
+  public void onDehydrate() {
+    if (binding == null) return;
+
+    Content text = binding.editor.getText();
+    mDehydratedUndo = text.getUndoManager();
+    mDehydratedDigest = ModificationTracker.digest(text);
+  }
+
   private void setLoading(boolean loading) {
     binding.progressbar.setVisibility(loading ? View.VISIBLE : View.GONE);
   }
@@ -272,10 +424,22 @@ public class CodeEditorPane extends Pane implements OnSharedPreferenceChangeList
     }
   }
 
+  /**
+   * Compiles the grammar of the file if not yet done, invoked off the main thread so setting the
+   * editor language does not compile it on the main thread.
+   */
+  private void prepareEditorLanguage(File file) {
+    try {
+      TextMateGrammarLoader.getInstance().ensureLoaded(getEditorLanguagScope(file));
+    } catch (Exception e) {
+      logger.e(LOG_TAG, "Failed to prepare editor language configurations");
+    }
+  }
+
   private String getEditorLanguagScope(File file) throws IOException {
-    var is = FileUtil.openAssetFile(getContext(), LANG_SCOPE_PATH);
-    var provider = JsonLanguageInfoProvider.getInstance(getContext(), is);
-    return provider.getScope(FileUtil.getFileExtension(file));
+    return FileClassificationCache.getInstance()
+        .getLanguageScope(
+            file, any -> IndexedLanguageInfoProvider.getInstance(requireContext()).getScope(any));
   }
 
   /**
@@ -285,7 +449,7 @@ public class CodeEditorPane extends Pane implements OnSharedPreferenceChangeList
    * @return True if the file contains binary content; false if it is not binary.
    */
   private boolean isBinaryFile(File file) throws IOException {
-    return BinaryFileChecker.isBinaryFile(file);
+    return FileClassificationCache.getInstance().isBinaryFile(file);
   }
 
   private void updateAlertVisibility(boolean isAlert) {
@@ -435,34 +599,9 @@ public class CodeEditorPane extends Pane implements OnSharedPreferenceChangeList
     binding.editor.subscribeEvent(
         ContentChangeEvent.class,
         (event, data) -> {
-          binding.editor.postDelayedInLifecycle(
-              () -> {
-                if (mEditorFile != null && mEditorFile.exists()) {
-                  AsyncTask.runNonCancelable(
-                      () -> {
-                        var editorContent = binding.editor.getText().toString();
-                        var charset = EncodingDetector.detectFileEncoding(mEditorFile);
-                        var originalFileContent = FileUtils.readFileToString(mEditorFile, charset);
-                        return !originalFileContent.contentEquals(editorContent);
-                      },
-                      (isEditorModified, throwable) -> {
-                        setModified(isEditorModified);
-                        if (throwable != null) {
-                          logger.e(
-                              LOG_TAG,
-                              "Failed to read editor modification status: "
-                                  + throwable.getMessage());
-                        }
-                      });
-                } else if (mEditorFile != null && !mEditorFile.exists()) {
-                  logger.i(
-                      LOG_TAG,
-                      "Failed to read editor modification status: File does not exist - "
-                          + mEditorFile.getAbsolutePath()
-                          + " Try saving this editor");
-                }
-              },
-              /* MilliSeconds= */ 50);
+          mContentVersion++;
+          mModificationTracker.onContentChanged(event);
+          updateModified();
         });
     binding.editor.subscribeEvent(
         PublishSearchResultEvent.class,
@@ -586,6 +725,97 @@ public class CodeEditorPane extends Pane implements OnSharedPreferenceChangeList
     return isModified;
   }
 
+  /**
+   * Re-evaluates the modification status from the in-memory fingerprint of the last loaded or saved
+   * content. No file I/O is performed, the disk is only consulted when the file observer reports a
+   * change {@see #onEditorFileChanged()}.
+   */
+  private void updateModified() {
+    if (binding == null) return;
+
+    if (mModificationTracker.hasBaseline()) {
+      boolean modified = mModificationTracker.isModified(binding.editor.getText());
+      if (modified != isModified) {
+        setModified(modified);
+      }
+    } else if (mEditorFile != null && !mEditorFile.exists()) {
+      logger.i(
+          LOG_TAG,
+          "Failed to read editor modification status: File does not exist - "
+              + mEditorFile.getAbsolutePath()
+              + " Try saving this editor");
+    }
+  }
+
+  private void recordSyncedStamp() {
+    mSyncedLength = mEditorFile.length();
+    mSyncedLastModified = mEditorFile.lastModified();
+  }
+
+  private void startWatchingFile() {
+    if (mEditorFile == null || mFileObserver != null) return;
+
+    final int mask = FileObserver.CLOSE_WRITE | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+    mFileObserver =
+        new FileObserver(mEditorFile.getAbsolutePath(), mask) {
+          @Override
+          public void onEvent(int event, String path) {
+            AsyncTask.runOnUiThread(() -> onEditorFileChanged());
+          }
+        };
+    mFileObserver.startWatching();
+  }
+
+  private void stopWatchingFile() {
+    if (mFileObserver != null) {
+      mFileObserver.stopWatching();
+      mFileObserver = null;
+    }
+  }
+
+  /**
+   * Invoked when the editor file changes on disk. Writes made by this pane are recognised by their
+   * size and time stamp and skipped, any other change replaces the saved fingerprint with the one
+   * of the new disk content.
+   */
+  private void onEditorFileChanged() {
+    if (binding == null || mEditorFile == null) return;
+
+    if (!mEditorFile.exists()) {
+      // the watch died with the file, it is restarted once the editor recreates it
+      stopWatchingFile();
+      mModificationTracker.clear();
+      setModified(true);
+      return;
+    }
+
+    if (mEditorFile.length() == mSyncedLength
+        && mEditorFile.lastModified() == mSyncedLastModified) {
+      return;
+    }
+
+    final File file = mEditorFile;
+    FileClassificationCache.getInstance().invalidate(file);
+    AsyncTask.runNonCancelable(
+        () -> {
+          var charset = FileClassificationCache.getInstance().getCharset(file);
+          return ModificationTracker.fingerprint(FileUtils.readFileToString(file, charset));
+        },
+        (fingerprints, throwable) -> {
+          if (binding == null) return;
+
+          if (fingerprints != null) {
+            mModificationTracker.markSaved(fingerprints, binding.editor.getText());
+            recordSyncedStamp();
+            setModified(mModificationTracker.isModified(binding.editor.getText()));
+          }
+          if (throwable != null) {
+            logger.e(
+                LOG_TAG, "Failed to read editor modification status: " + throwable.getMessage());
+          }
+        });
+  }
+
   public void setModified(boolean modified) {
     isModified = modified;
     EventBus.getDefault().post(new EditorModificationEvent(modified));
@@ -615,23 +845,30 @@ public class CodeEditorPane extends Pane implements OnSharedPreferenceChangeList
   }
 
   /**
-   * Clear persisted content {@see BaseFragment#. } for how the {@code CodeEditorPane} contents are
-   * persisted
+   * Saves the editor content. A saved pane has no unsaved content so the next session snapshot
+   * drops its content blob {@see PaneSessionStore}
    *
    * @param recreateIfDeleted recreates the editor file incase it was deleted
    */
   public void saveEditor(boolean recreateIfDeleted) {
+    // snapshot on the ui thread so the saved fingerprint matches the written text
+    final String text = binding.editor.getText().toString();
 
     AsyncTask.runNonCancelable(
         () -> {
           if (recreateIfDeleted && !mEditorFile.exists()) mEditorFile.createNewFile();
 
-          writeEditorContentToFile();
-          return null;
+          writeEditorContentToFile(text);
+          return ModificationTracker.fingerprint(text);
         },
-        (result, throwable) -> {
+        (fingerprints, throwable) -> {
           if (throwable == null) {
-            addArguments("editor_content", ""); // persisted editor content
+            if (binding != null) {
+              mModificationTracker.markSaved(fingerprints, binding.editor.getText());
+              recordSyncedStamp();
+              updateModified();
+              startWatchingFile();
+            }
           } else {
             logger.e(
                 LOG_TAG,
@@ -643,11 +880,8 @@ public class CodeEditorPane extends Pane implements OnSharedPreferenceChangeList
         });
   }
 
-  private void writeEditorContentToFile() throws IOException {
+  private void writeEditorContentToFile(String text) throws IOException {
     FileUtils.writeStringToFile(
-        mEditorFile,
-        binding.editor.getText().toString(),
-        EncodingDetector.getEncoding(PreferencesUtils.getDefaultFileEncoding()));
-    setModified(false);
+        mEditorFile, text, EncodingDetector.getEncoding(PreferencesUtils.getDefaultFileEncoding()));
   }
 }
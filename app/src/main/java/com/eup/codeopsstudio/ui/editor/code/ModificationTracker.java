@@ -0,0 +1,245 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeopsstudio.ui.editor.code;
+
+import androidx.annotation.NonNull;
+import io.github.rosemoe.sora.event.ContentChangeEvent;
+import io.github.rosemoe.sora.text.Content;
+
+/**
+ * Tracks whether the content of an editor differs from the content last loaded from or saved to
+ * disk without touching the disk.
+ *
+ * <p>The tracker records a 64-bit fingerprint for every line of the saved content. As edits arrive
+ * it narrows two bounds, the number of leading and trailing lines that are known to be unchanged.
+ * Deciding whether the editor is modified then only needs to fingerprint the lines between those
+ * bounds, which for ordinary typing (and undoing back to the saved state) is the edited region
+ * itself.
+ *
+ * <p>This class is not thread safe, all calls are expected on the editor (main) thread.
+ *
+ * @author EUP
+ */
+public class ModificationTracker {
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  // fingerprints of the saved lines, null until a baseline is recorded
+  private long[] mSavedLines;
+
+  // number of lines in the editor content as of the last event
+  private int mLineCount;
+
+  // number of leading lines known to match the saved content
+  private int mPrefix;
+
+  // number of trailing lines known to match the saved content
+  private int mSuffix;
+
+  /**
+   * Records the given content as the saved state. The content is known to match itself so the next
+   * modification check is free.
+   *
+   * @param content the content that has just been loaded or saved
+   */
+  public void markSaved(@NonNull Content content) {
+    mSavedLines = fingerprint(content);
+    mLineCount = mSavedLines.length;
+    mPrefix = mLineCount;
+    mSuffix = 0;
+  }
+
+  /**
+   * Records the given fingerprints as the saved state. Used when the saved text was captured
+   * earlier (e.g. written on a worker thread, or changed on disk) and may no longer match the
+   * editor, the next modification check therefore verifies every line once.
+   *
+   * @param savedLines the line fingerprints of the saved text, see {@link #fingerprint(String)}
+   * @param content the current editor content
+   */
+  public void markSaved(@NonNull long[] savedLines, @NonNull Content content) {
+    mSavedLines = savedLines;
+    mLineCount = content.getLineCount();
+    mPrefix = 0;
+    mSuffix = 0;
+  }
+
+  /** Forgets the saved state, e.g. after the backing file was deleted. */
+  public void clear() {
+    mSavedLines = null;
+    mLineCount = 0;
+    mPrefix = 0;
+    mSuffix = 0;
+  }
+
+  /**
+   * @return true if a saved state has been recorded
+   */
+  public boolean hasBaseline() {
+    return mSavedLines != null;
+  }
+
+  /**
+   * Narrows the unchanged bounds for an edit. Costs O(1).
+   *
+   * @param event the content change dispatched by the editor
+   */
+  public void onContentChanged(@NonNull ContentChangeEvent event) {
+    int oldLineCount = mLineCount;
+    mLineCount = event.getEditor().getText().getLineCount();
+
+    int startLine = event.getChangeStart().line;
+    int endLine = event.getChangeEnd().line;
+
+    switch (event.getAction()) {
+      case ContentChangeEvent.ACTION_INSERT:
+        // old line [start] became new lines [start, end]
+        mPrefix = Math.min(mPrefix, startLine);
+        mSuffix = Math.min(mSuffix, oldLineCount - 1 - startLine);
+        break;
+      case ContentChangeEvent.ACTION_DELETE:
+        // old lines [start, end] became new line [start]
+        mPrefix = Math.min(mPrefix, startLine);
+        mSuffix = Math.min(mSuffix, oldLineCount - 1 - endLine);
+        break;
+      default:
+        // the whole text was replaced
+        mPrefix = 0;
+        mSuffix = 0;
+        break;
+    }
+    mPrefix = Math.max(mPrefix, 0);
+    mSuffix = Math.max(mSuffix, 0);
+  }
+
+  /**
+   * Checks whether the content differs from the saved state. Only lines between the unchanged
+   * bounds are fingerprinted and the bounds are widened as lines are found to match, so repeated
+   * checks do not repeat work.
+   *
+   * @param content the current editor content
+   * @return true if the content differs from the saved state or no saved state was recorded
+   */
+  public boolean isModified(@NonNull Content content) {
+    if (mSavedLines == null) {
+      return true;
+    }
+
+    int lineCount = content.getLineCount();
+    mLineCount = lineCount;
+    if (lineCount != mSavedLines.length) {
+      return true;
+    }
+
+    while (mPrefix < lineCount - mSuffix
+        && fingerprintLine(content.getLine(mPrefix)) == mSavedLines[mPrefix]) {
+      mPrefix++;
+    }
+    while (mPrefix + mSuffix < lineCount) {
+      int line = lineCount - 1 - mSuffix;
+      if (fingerprintLine(content.getLine(line)) != mSavedLines[line]) {
+        break;
+      }
+      mSuffix++;
+    }
+    return mPrefix + mSuffix < lineCount;
+  }
+
+  /**
+   * Computes the line fingerprints of an editor content.
+   *
+   * @param content the content to fingerprint
+   * @return one fingerprint per line
+   */
+  @NonNull
+  public static long[] fingerprint(@NonNull Content content) {
+    int lineCount = content.getLineCount();
+    long[] lines = new long[lineCount];
+    for (int i = 0; i < lineCount; i++) {
+      lines[i] = fingerprintLine(content.getLine(i));
+    }
+    return lines;
+  }
+
+  /**
+   * Computes the line fingerprints of a text, splitting lines on {@code \r\n}, {@code \n} and
+   * {@code \r} the same way the editor content does.
+   *
+   * @param text the text to fingerprint
+   * @return one fingerprint per line
+   */
+  @NonNull
+  public static long[] fingerprint(@NonNull String text) {
+    int length = text.length();
+    int lineCount = 1;
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      if (c == '\n' || (c == '\r' && (i + 1 >= length || text.charAt(i + 1) != '\n'))) {
+        lineCount++;
+      }
+    }
+
+    long[] lines = new long[lineCount];
+    int line = 0;
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      if (c == '\r' || c == '\n') {
+        if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+          i++;
+        }
+        lines[line++] = hash;
+        hash = FNV_OFFSET_BASIS;
+      } else {
+        hash = (hash ^ c) * FNV_PRIME;
+      }
+    }
+    lines[line] = hash;
+    return lines;
+  }
+
+  /**
+   * Computes a single fingerprint of a whole editor content, used to verify that a content is the
+   * one some state (e.g. an undo history) was recorded against.
+   *
+   * @param content the content to fingerprint
+   * @return the content fingerprint
+   */
+  public static long digest(@NonNull Content content) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = 0, lineCount = content.getLineCount(); i < lineCount; i++) {
+      hash = (hash ^ fingerprintLine(content.getLine(i))) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  private static long fingerprintLine(CharSequence line) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = 0, length = line.length(); i < length; i++) {
+      hash = (hash ^ line.charAt(i)) * FNV_PRIME;
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,421 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeopsstudio.ui.editor.session;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.eup.codeopsstudio.pane.Pane;
+import com.google.gson.Gson;
+import com.google.gson.internal.LinkedTreeMap;
+import com.google.gson.reflect.TypeToken;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * File backed hot-exit store for the panes of the tabbed editor system.
+ *
+ * <p>Every pane owns a small record file holding its arguments {@see Pane#getArguments()} and, if
+ * it has unsaved content {@see PersistableContent}, one gzip compressed content blob. A separate
+ * order file lists the pane uuids in tab order. All files are written to a temporary file first and
+ * renamed into place so a crash mid-write never leaves a torn session behind.
+ *
+ * <p>The records are indexed in memory by uuid, membership checks are O(1) and removing a pane only
+ * deletes its own files. A snapshot rewrites a record only if its arguments changed, a content blob
+ * only if the content version of its pane changed and the order file only if the tab order
+ * changed. Restoring a session reads the records alone, content is streamed on demand through
+ * {@link #openContent(UUID)}.
+ *
+ * <pre>
+ * files/session/
+ *   order
+ *   &lt;uuid&gt;.json
+ *   &lt;uuid&gt;.gz
+ * </pre>
+ *
+ * @author EUP
+ */
+public class PaneSessionStore {
+
+  public static final String LOG_TAG = "PaneSessionStore";
+
+  /** Record argument flagging that the pane has a content blob */
+  public static final String KEY_HAS_CONTENT = "has_content";
+
+  private static final String SESSION_DIR = "session";
+  private static final String ORDER_FILE = "order";
+  private static final String RECORD_SUFFIX = ".json";
+  private static final String CONTENT_SUFFIX = ".gz";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  /** A pane whose content is persisted in its own blob instead of its arguments. */
+  public interface PersistableContent {
+
+    /**
+     * @return true if the pane holds content that is not on disk and must survive a restart
+     */
+    boolean hasUnsavedContent();
+
+    /**
+     * A number that changes whenever the content changes, used to skip rewriting blobs.
+     *
+     * @return the content version
+     */
+    long getContentVersion();
+
+    /**
+     * Streams the content to the writer.
+     *
+     * @param writer the blob writer, buffered and closed by the store
+     * @throws IOException if writing fails
+     */
+    void writeContent(@NonNull Writer writer) throws IOException;
+  }
+
+  private interface StreamWriter {
+    void write(OutputStream out) throws IOException;
+  }
+
+  private final File mDirectory;
+  private final Gson mGson = new Gson();
+
+  // uuid -> record json as written on disk
+  private final Map<UUID, String> mRecords = new ConcurrentHashMap<>();
+
+  // uuids in tab order
+  private final List<UUID> mOrder = new ArrayList<>();
+
+  // content versions of the blobs written during this session
+  private final Map<UUID, Long> mWrittenVersions = new HashMap<>();
+
+  private volatile boolean mLoaded;
+
+  public PaneSessionStore(@NonNull Context context) {
+    mDirectory = new File(context.getFilesDir(), SESSION_DIR);
+  }
+
+  /**
+   * Snapshots the panes. Restored panes that have not yet created their view {@see
+   * Pane#hasPerformedCreateView()} are unchanged since they were restored, their record and content
+   * blob are kept as is.
+   *
+   * @param panes the panes to persist in tab order
+   * @return true if the session was written
+   * @throws IOException if the session could not be written
+   */
+  public synchronized boolean save(@NonNull List<Pane> panes) throws IOException {
+    ensureLoaded();
+    ensureDirectory();
+
+    var order = new ArrayList<UUID>(panes.size());
+    for (Pane pane : panes) {
+      if (pane == null) continue;
+
+      var uuid = pane.getUUID();
+      if (!pane.hasPerformedCreateView()) {
+        if (mRecords.containsKey(uuid)) order.add(uuid);
+        continue;
+      }
+
+      pane.persist();
+      var entry = new LinkedTreeMap<String, Object>();
+      entry.putAll(pane.getArguments());
+
+      boolean hasContent = false;
+      if (pane instanceof PersistableContent) {
+        var persistable = (PersistableContent) pane;
+        if (persistable.hasUnsavedContent()) {
+          writeContentIfChanged(uuid, persistable);
+          hasContent = true;
+        } else {
+          deleteContent(uuid);
+        }
+      }
+      entry.put(KEY_HAS_CONTENT, hasContent);
+      // dehydrated panes are restored from their own arguments
+      pane.addArguments(KEY_HAS_CONTENT, hasContent);
+
+      var json = mGson.toJson(entry);
+      if (!json.equals(mRecords.get(uuid))) {
+        writeAtomically(
+            getRecordFile(uuid), out -> out.write(json.getBytes(StandardCharsets.UTF_8)));
+        mRecords.put(uuid, json);
+      }
+      order.add(uuid);
+    }
+
+    // panes closed without going through remove(UUID)
+    var present = new HashSet<>(order);
+    for (UUID uuid : new ArrayList<>(mRecords.keySet())) {
+      if (!present.contains(uuid)) {
+        remove(uuid);
+      }
+    }
+
+    if (!order.equals(mOrder)) {
+      var builder = new StringBuilder();
+      order.forEach(uuid -> builder.append(uuid).append('\n'));
+      writeAtomically(
+          new File(mDirectory, ORDER_FILE),
+          out -> out.write(builder.toString().getBytes(StandardCharsets.UTF_8)));
+      mOrder.clear();
+      mOrder.addAll(order);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the persisted pane arguments without touching any content blob.
+   *
+   * @return the pane arguments in tab order, empty if no session was persisted
+   */
+  @NonNull
+  public synchronized List<LinkedTreeMap<String, Object>> readIndex() {
+    ensureLoaded();
+    Type type = new TypeToken<LinkedTreeMap<String, Object>>() {}.getType();
+    var index = new LinkedList<LinkedTreeMap<String, Object>>();
+    for (UUID uuid : mOrder) {
+      var json = mRecords.get(uuid);
+      if (json != null) {
+        index.add(mGson.fromJson(json, type));
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Opens the content blob of a pane for streaming.
+   *
+   * @param uuid the pane uuid
+   * @return a reader for the content, or {@code null} if the pane has no content blob
+   * @throws IOException if the blob cannot be opened
+   */
+  @Nullable
+  public Reader openContent(@NonNull UUID uuid) throws IOException {
+    var file = getContentFile(uuid);
+    if (!file.exists()) {
+      return null;
+    }
+    return new InputStreamReader(
+        new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Marks the content blob of a pane as matching the given content version, e.g. after a pane has
+   * been restored from it, so the next snapshot does not rewrite it.
+   *
+   * @param uuid the pane uuid
+   * @param version the content version of the pane
+   */
+  public synchronized void markClean(@NonNull UUID uuid, long version) {
+    if (getContentFile(uuid).exists()) {
+      mWrittenVersions.put(uuid, version);
+    }
+  }
+
+  /**
+   * Checks the in-memory index, O(1) once the session has been loaded.
+   *
+   * @param uuid the pane uuid
+   * @return true if the pane is part of the persisted session
+   */
+  public boolean contains(@NonNull UUID uuid) {
+    ensureLoaded();
+    return mRecords.containsKey(uuid);
+  }
+
+  /**
+   * Removes a pane from the persisted session, deleting only its record and content blob. The
+   * order file is left as is, uuids without a record are skipped when loading.
+   *
+   * @param uuid the pane uuid
+   * @return true if the pane was persisted
+   */
+  public synchronized boolean remove(@NonNull UUID uuid) {
+    ensureLoaded();
+    boolean removed = mRecords.remove(uuid) != null;
+    getRecordFile(uuid).delete();
+    deleteContent(uuid);
+    return removed;
+  }
+
+  /** Deletes the persisted session. */
+  public synchronized void clear() {
+    var files = mDirectory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    mRecords.clear();
+    mOrder.clear();
+    mWrittenVersions.clear();
+    mLoaded = true;
+  }
+
+  private void ensureLoaded() {
+    if (mLoaded) return;
+
+    synchronized (this) {
+      if (mLoaded) return;
+
+      var records = new LinkedHashMap<UUID, String>();
+      try {
+        var orderFile = new File(mDirectory, ORDER_FILE);
+        if (orderFile.exists()) {
+          for (String line : Files.readAllLines(orderFile.toPath(), StandardCharsets.UTF_8)) {
+            var uuid = parseUUID(line.trim());
+            if (uuid != null) {
+              records.put(uuid, null);
+            }
+          }
+        }
+        // records written by a snapshot interrupted before its order file
+        var recordFiles = mDirectory.listFiles((dir, name) -> name.endsWith(RECORD_SUFFIX));
+        if (recordFiles != null) {
+          for (File file : recordFiles) {
+            var uuid = parseUUID(file.getName(), RECORD_SUFFIX);
+            if (uuid != null && !records.containsKey(uuid)) {
+              records.put(uuid, null);
+            }
+          }
+        }
+        for (var uuid : new ArrayList<>(records.keySet())) {
+          var file = getRecordFile(uuid);
+          if (file.exists()) {
+            var json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            mRecords.put(uuid, json);
+          }
+        }
+        mOrder.clear();
+        mOrder.addAll(records.keySet());
+      } catch (IOException e) {
+        Log.e(LOG_TAG, "Failed to load session", e);
+      }
+      mLoaded = true;
+    }
+  }
+
+  private void writeContentIfChanged(UUID uuid, PersistableContent persistable)
+      throws IOException {
+    long version = persistable.getContentVersion();
+    var written = mWrittenVersions.get(uuid);
+    var file = getContentFile(uuid);
+    if (written != null && written == version && file.exists()) {
+      return;
+    }
+
+    writeAtomically(
+        file,
+        out -> {
+          var gzip = new GZIPOutputStream(out);
+          var writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8));
+          persistable.writeContent(writer);
+          writer.flush();
+          gzip.finish();
+        });
+    mWrittenVersions.put(uuid, version);
+  }
+
+  private void deleteContent(UUID uuid) {
+    mWrittenVersions.remove(uuid);
+    getContentFile(uuid).delete();
+  }
+
+  /**
+   * Writes to a temporary sibling of the target, syncs it and renames it over the target.
+   *
+   * @param target the file to replace
+   * @param writer writes the new file content
+   * @throws IOException if writing or renaming fails
+   */
+  private void writeAtomically(File target, StreamWriter writer) throws IOException {
+    var temp = new File(target.getParentFile(), target.getName() + TEMP_SUFFIX);
+    try (var out = new FileOutputStream(temp)) {
+      writer.write(out);
+      out.flush();
+      out.getFD().sync();
+    } catch (IOException e) {
+      temp.delete();
+      throw e;
+    }
+    Files.move(
+        temp.toPath(),
+        target.toPath(),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  @Nullable
+  private static UUID parseUUID(String name, String suffix) {
+    return parseUUID(name.substring(0, name.length() - suffix.length()));
+  }
+
+  @Nullable
+  private static UUID parseUUID(String value) {
+    try {
+      return UUID.fromString(value);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private File getRecordFile(UUID uuid) {
+    return new File(mDirectory, uuid.toString() + RECORD_SUFFIX);
+  }
+
+  private File getContentFile(UUID uuid) {
+    return new File(mDirectory, uuid.toString() + CONTENT_SUFFIX);
+  }
+
+  private void ensureDirectory() throws IOException {
+    if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+      throw new IOException("Unable to create session directory " + mDirectory);
+    }
+  }
+}
@@ -0,0 +1,242 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeopsstudio.ui.editor.session;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import androidx.annotation.NonNull;
+import com.eup.codeopsstudio.pane.Pane;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the memory held by open panes within a heap budget by dehydrating background panes.
+ *
+ * <p>A dehydrated pane is snapshot into the session store {@see PaneSessionStore} and its view
+ * released, leaving only its tab behind. It is rehydrated, like a lazily restored pane, when its
+ * tab is next selected.
+ *
+ * <p>Live panes are tracked in least recently selected order. Dehydration is triggered when the
+ * estimated memory of the live panes exceeds the heap budget and on {@link #onTrimMemory(int)}.
+ * The selected pane and the most recently used background panes are never dehydrated, among the
+ * rest the panes with the largest memory estimates are released first.
+ *
+ * <p>This class is not thread safe, all calls are expected on the main thread.
+ *
+ * @author EUP
+ */
+public class TabMemoryManager implements ComponentCallbacks2 {
+
+  /** A pane that can release its view and have its state rebuilt from the session store. */
+  public interface Dehydratable {
+
+    /**
+     * Estimates the heap held by the pane. It need not be exact but must be comparable across
+     * panes and cheap to compute.
+     *
+     * @return the estimated heap in bytes, 0 if the pane holds no view
+     */
+    long estimateMemoryBytes();
+
+    /**
+     * Called right before the view of the pane is released, after its state has been written to
+     * the session store. Panes may keep small state (e.g. an undo history) to restore on
+     * rehydration.
+     */
+    void onDehydrate();
+  }
+
+  /** Releases the views of panes chosen for dehydration. */
+  public interface Host {
+
+    /**
+     * Snapshots the given panes into the session store then releases their views.
+     *
+     * @param panes the panes to dehydrate, largest first
+     */
+    void dehydrate(@NonNull List<Pane> panes);
+  }
+
+  // background panes kept warm regardless of the budget, avoids thrashing when switching back
+  private static final int WARM_PANES = 1;
+
+  private final Host mHost;
+
+  // live dehydratable panes, least recently selected first
+  private final LinkedHashMap<Pane, Boolean> mLivePanes = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long mHeapBudget;
+
+  /**
+   * Creates a tab memory manager with a budget of a quarter of the maximum heap.
+   *
+   * @param host the host releasing the pane views
+   */
+  public TabMemoryManager(@NonNull Host host) {
+    this(host, Runtime.getRuntime().maxMemory() / 4);
+  }
+
+  /**
+   * @param host the host releasing the pane views
+   * @param heapBudget the heap in bytes the live panes may hold
+   */
+  public TabMemoryManager(@NonNull Host host, long heapBudget) {
+    mHost = host;
+    mHeapBudget = heapBudget;
+  }
+
+  public long getHeapBudget() {
+    return mHeapBudget;
+  }
+
+  /**
+   * Sets the heap the live panes may hold, enforced immediately.
+   *
+   * @param heapBudget the budget in bytes
+   */
+  public void setHeapBudget(long heapBudget) {
+    mHeapBudget = heapBudget;
+    trimTo(heapBudget);
+  }
+
+  /**
+   * Starts tracking a pane whose view has been created.
+   *
+   * @param pane the created pane
+   */
+  public void onPaneCreated(@NonNull Pane pane) {
+    if (pane instanceof Dehydratable) {
+      mLivePanes.put(pane, Boolean.TRUE);
+    }
+  }
+
+  /**
+   * Marks a pane most recently used and enforces the budget.
+   *
+   * @param pane the selected pane
+   */
+  public void onPaneSelected(@NonNull Pane pane) {
+    if (pane instanceof Dehydratable && pane.hasPerformedCreateView()) {
+      mLivePanes.put(pane, Boolean.TRUE);
+    }
+    trimTo(mHeapBudget);
+  }
+
+  /**
+   * Stops tracking a pane that was closed.
+   *
+   * @param pane the released pane
+   */
+  public void onPaneReleased(@NonNull Pane pane) {
+    mLivePanes.remove(pane);
+  }
+
+  /**
+   * @return the estimated heap held by all live panes in bytes
+   */
+  public long estimateMemoryBytes() {
+    long total = 0;
+    for (Pane pane : mLivePanes.keySet()) {
+      total += ((Dehydratable) pane).estimateMemoryBytes();
+    }
+    return total;
+  }
+
+  /**
+   * Returns the memory estimate of every live pane.
+   *
+   * @return the estimates in bytes, least recently selected pane first
+   */
+  @NonNull
+  public Map<Pane, Long> getMemoryEstimates() {
+    var estimates = new LinkedHashMap<Pane, Long>();
+    for (Pane pane : mLivePanes.keySet()) {
+      estimates.put(pane, ((Dehydratable) pane).estimateMemoryBytes());
+    }
+    return estimates;
+  }
+
+  @Override
+  public void onTrimMemory(int level) {
+    if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+      trimTo(0);
+    } else if (level == TRIM_MEMORY_RUNNING_LOW || level == TRIM_MEMORY_RUNNING_MODERATE) {
+      trimTo(mHeapBudget / 2);
+    }
+  }
+
+  @Override
+  public void onLowMemory() {
+    trimTo(0);
+  }
+
+  @Override
+  public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    // No-op
+  }
+
+  /**
+   * Dehydrates background panes, largest first, until the live panes fit the target.
+   *
+   * @param target the heap in bytes the live panes may hold after trimming
+   */
+  private void trimTo(long target) {
+    var estimates = getMemoryEstimates();
+    long total = 0;
+    for (long estimate : estimates.values()) {
+      total += estimate;
+    }
+    if (total <= target) return;
+
+    // walk from the most recently selected pane, the selected and the warm panes are kept
+    var candidates = new ArrayList<Pane>();
+    int warm = 0;
+    var panes = new ArrayList<>(estimates.keySet());
+    for (int i = panes.size() - 1; i >= 0; i--) {
+      var pane = panes.get(i);
+      if (pane.isSelected() || !pane.hasPerformedCreateView()) continue;
+      if (warm < WARM_PANES && target > 0) {
+        warm++;
+        continue;
+      }
+      candidates.add(pane);
+    }
+    candidates.sort(Comparator.comparingLong(pane -> -estimates.get(pane)));
+
+    var victims = new ArrayList<Pane>();
+    for (Pane pane : candidates) {
+      if (total <= target) break;
+      victims.add(pane);
+      total -= estimates.get(pane);
+    }
+    if (!victims.isEmpty()) {
+      // dehydration completes asynchronously, victims are tracked again once reselected
+      victims.forEach(mLivePanes::remove);
+      mHost.dehydrate(victims);
+    }
+  }
+}
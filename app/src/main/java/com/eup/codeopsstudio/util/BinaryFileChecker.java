@@ -23,11 +23,16 @@
 
 package com.eup.codeopsstudio.util;
 
+import androidx.annotation.NonNull;
 import com.eup.codeopsstudio.common.util.FileUtil;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.File;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
 
 /**
  * Utility class to determine whether a file contains binary data.
@@ -37,6 +42,12 @@ import java.io.InputStream;
  * including magic numbers, file extensions, content entropy, and MIME types, to accurately classify
  * files.
  *
+ * <p>The magic numbers are compiled once into a byte prefix trie. Classifying a file reads at most
+ * {@value #MAX_READ_BYTES} bytes and walks them once, matching the trie, counting control
+ * characters and updating the entropy incrementally. The outcome is written to a {@link Verdict}
+ * which also holds the scratch buffers, callers classifying many files (e.g. a file tree) should
+ * reuse one verdict per thread.
+ *
  * <p>For more information on binary files, refer to <a
  * href="https://en.wikipedia.org/wiki/Binary_file">Binary File</a>.
  *
@@ -56,6 +67,88 @@ public class BinaryFileChecker {
   private static final double ENTROPY_THRESHOLD = 8; // was 7
   private static final int MAX_SAMPLE_SIZE = 1024;
 
+  // c * log2(c) and log2(c) for every byte count a buffer can reach
+  private static final double[] COUNT_LOG_COUNT = new double[MAX_READ_BYTES + 1];
+  private static final double[] LOG2 = new double[MAX_READ_BYTES + 1];
+
+  static {
+    for (int c = 1; c <= MAX_READ_BYTES; c++) {
+      LOG2[c] = Math.log(c) / Math.log(2);
+      COUNT_LOG_COUNT[c] = c * LOG2[c];
+    }
+  }
+
+  private static final ThreadLocal<Verdict> sVerdict = ThreadLocal.withInitial(Verdict::new);
+
+  /** The reason a file was classified as binary or text. */
+  public enum Reason {
+    /** The file is empty. */
+    EMPTY,
+    /** The file starts with a known magic number. */
+    MAGIC_NUMBER,
+    /** The content entropy is above the threshold. */
+    HIGH_ENTROPY,
+    /** The content holds control characters. */
+    CONTROL_CHARACTERS,
+    /** The file has a known binary extension. */
+    BINARY_EXTENSION,
+    /** Not enough binary indicators were found. */
+    TEXT
+  }
+
+  /**
+   * The outcome of classifying a file. A verdict is reused across classifications, it holds the
+   * read buffer and byte counts so classifying does not allocate. Not thread safe.
+   */
+  public static final class Verdict {
+
+    final byte[] mBuffer = new byte[MAX_READ_BYTES];
+    final int[] mOccurrences = new int[256];
+
+    boolean mBinary;
+    Reason mReason = Reason.EMPTY;
+    // bit set of the binary indicators found, indexed by reason ordinal
+    int mIndicators;
+
+    /**
+     * @return true if the file was classified as binary
+     */
+    public boolean isBinary() {
+      return mBinary;
+    }
+
+    /**
+     * @return the strongest binary indicator found if the file is binary, otherwise {@link
+     *     Reason#TEXT} or {@link Reason#EMPTY}
+     */
+    @NonNull
+    public Reason getReason() {
+      return mReason;
+    }
+
+    /**
+     * Checks if a binary indicator was found, regardless of the final decision.
+     *
+     * @param reason the indicator
+     * @return true if the indicator was found
+     */
+    public boolean hasIndicator(@NonNull Reason reason) {
+      return (mIndicators & (1 << reason.ordinal())) != 0;
+    }
+
+    void reset() {
+      mBinary = false;
+      mReason = Reason.EMPTY;
+      mIndicators = 0;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+      return String.format("Verdict (binary=%s, reason=%s)", mBinary, mReason);
+    }
+  }
+
   private BinaryFileChecker() {
     // HC
   }
@@ -65,151 +158,254 @@ public class BinaryFileChecker {
   }
 
   public static boolean isBinaryFile(File file, boolean useFileFormat) throws IOException {
-    int binaryIndicators = 0;
-    int nonBinaryIndicators = 0;
+    return classify(file, useFileFormat, sVerdict.get()).isBinary();
+  }
 
+  /**
+   * Classifies a file into the given verdict.
+   *
+   * @param file the file to classify
+   * @param useFileFormat whether the file extension counts as an indicator
+   * @param verdict the verdict to reuse
+   * @return the given verdict
+   * @throws IOException if the file cannot be read
+   */
+  @NonNull
+  public static Verdict classify(File file, boolean useFileFormat, @NonNull Verdict verdict)
+      throws IOException {
     if (file.isDirectory()) {
       throw new IllegalArgumentException("Provided file is a directory!");
     }
 
+    int bytesRead = 0;
     try (InputStream inputStream = new FileInputStream(file)) {
-      byte[] fileContentBuffer = new byte[MAX_READ_BYTES];
-      int bytesRead = inputStream.read(fileContentBuffer, 0, MAX_READ_BYTES);
-
-      if (bytesRead < 0) {
-        // Possibly an empty file!
-        return false;
+      int read;
+      while (bytesRead < MAX_READ_BYTES
+          && (read = inputStream.read(verdict.mBuffer, bytesRead, MAX_READ_BYTES - bytesRead))
+              > 0) {
+        bytesRead += read;
       }
+    }
+    return classify(verdict.mBuffer, bytesRead, useFileFormat && isBinaryExtension(file), verdict);
+  }
 
-      if (checkForMagicNumbers(fileContentBuffer)) {
-        binaryIndicators++;
-      } else {
-        nonBinaryIndicators++;
-      }
+  /**
+   * Classifies the leading bytes of a file into the given verdict in a single pass.
+   *
+   * @param buffer the leading bytes of the file
+   * @param length the number of bytes in the buffer, at most {@value #MAX_READ_BYTES} are used
+   * @param binaryExtension whether the file extension indicates binary content, {@code null} if the
+   *     extension does not count as an indicator
+   * @param verdict the verdict to reuse
+   * @return the given verdict
+   */
+  @NonNull
+  public static Verdict classify(
+      @NonNull byte[] buffer, int length, Boolean binaryExtension, @NonNull Verdict verdict) {
+    verdict.reset();
+    length = Math.min(length, MAX_READ_BYTES);
+    if (length <= 0) {
+      // Possibly an empty file!
+      return verdict;
+    }
 
-      if (hasHighEntropy(fileContentBuffer)) {
-        binaryIndicators++;
-      } else {
-        nonBinaryIndicators++;
-      }
+    var trie = Signatures.TRIE;
+    int node = SignatureTrie.ROOT;
+    boolean magicNumber = false;
+    boolean binaryContent = false;
+    boolean highEntropy = false;
 
-      /*
-       * Not so accurate...flags all numbers as binary.
-       * TODO: Improve algorithm to know determine if number sequence is that of binary rather than flagging
-       * non-ascii chars as binary
-       */
-      if (containsBinaryContent(fileContentBuffer)) {
-        binaryIndicators++;
-      } else {
-        nonBinaryIndicators++;
-      }
+    // one-third of the total file size
+    int sampleSize = Math.max(Math.min(length / 3, MAX_SAMPLE_SIZE), 1);
+    int[] occurrences = verdict.mOccurrences;
+    Arrays.fill(occurrences, 0);
+    // sum of c * log2(c) over the byte counts, entropy = log2(n) - sum / n
+    double countLogCount = 0;
+
+    for (int i = 0; i < length; i++) {
+      byte b = buffer[i];
 
-      if (useFileFormat) {
-        if (isBinaryExtension(file)) {
-          binaryIndicators++;
-        } else {
-          nonBinaryIndicators++;
+      if (node != SignatureTrie.NONE) {
+        node = trie.next(node, b);
+        if (node != SignatureTrie.NONE && trie.isTerminal(node)) {
+          magicNumber = true;
+          node = SignatureTrie.NONE;
         }
       }
-    }
 
-    return binaryIndicators > nonBinaryIndicators;
-  }
+      // Check if the byte is within the ASCII printable character range
+      if ((b < LOWER_BOUND && b != BACKSPACE) || (b > LOWER_BOUND_EXCLUSIVE && b < UPPER_BOUND)) {
+        binaryContent = true;
+      }
 
-  private static boolean checkForMagicNumbers(byte[] buffer) {
-    for (String magicNumber : FILE_MAGIC_NUMBERS) {
-      if (containsMagicNumber(buffer, magicNumber)) {
-        return true;
+      if (!highEntropy) {
+        int count = ++occurrences[b & BYTE_MASK];
+        countLogCount += COUNT_LOG_COUNT[count] - COUNT_LOG_COUNT[count - 1];
+        int n = i + 1;
+        if (n >= sampleSize && LOG2[n] - countLogCount / n > ENTROPY_THRESHOLD) {
+          highEntropy = true;
+        }
       }
     }
-    return false;
-  }
 
-  private static boolean containsMagicNumber(byte[] buffer, String magicNumber) {
-    StringBuilder hexString = new StringBuilder();
-    for (byte b : buffer) {
-      String hex = Integer.toHexString(b & BYTE_MASK);
-      if (hex.length() == 1) {
-        hexString.append('0');
+    int binaryIndicators = 0;
+    int nonBinaryIndicators = 0;
+    if (magicNumber) {
+      binaryIndicators += indicate(verdict, Reason.MAGIC_NUMBER);
+    } else {
+      nonBinaryIndicators++;
+    }
+    if (highEntropy) {
+      binaryIndicators += indicate(verdict, Reason.HIGH_ENTROPY);
+    } else {
+      nonBinaryIndicators++;
+    }
+    /*
+     * Not so accurate...flags all numbers as binary.
+     * TODO: Improve algorithm to know determine if number sequence is that of binary rather than flagging
+     * non-ascii chars as binary
+     */
+    if (binaryContent) {
+      binaryIndicators += indicate(verdict, Reason.CONTROL_CHARACTERS);
+    } else {
+      nonBinaryIndicators++;
+    }
+    if (binaryExtension != null) {
+      if (binaryExtension) {
+        binaryIndicators += indicate(verdict, Reason.BINARY_EXTENSION);
+      } else {
+        nonBinaryIndicators++;
       }
-      hexString.append(hex);
     }
-    String contentHex = hexString.toString().toUpperCase();
-    if (contentHex.contains(magicNumber)) {
-      return true;
+
+    verdict.mBinary = binaryIndicators > nonBinaryIndicators;
+    if (!verdict.mBinary) {
+      verdict.mReason = Reason.TEXT;
     }
-    return false; // potential flat binary
+    return verdict;
   }
 
-  private static boolean containsBinaryContent(byte[] content) {
-    // Check if the byte is within the ASCII printable character range
-    for (byte b : content) {
-      if ((b < LOWER_BOUND && b != BACKSPACE) || (b > LOWER_BOUND_EXCLUSIVE && b < UPPER_BOUND)) {
-        return true;
-      }
+  private static int indicate(Verdict verdict, Reason reason) {
+    verdict.mIndicators |= 1 << reason.ordinal();
+    // indicators are recorded strongest first
+    if (verdict.mReason == Reason.EMPTY) {
+      verdict.mReason = reason;
     }
-    return false;
+    return 1;
   }
 
-  private static boolean hasHighEntropy(byte[] buffer) {
-    int totalBytes = buffer.length;
+  private static boolean isBinaryExtension(File file) {
+    String extension = FileUtil.getFileExtension(file);
+    return !Wizard.isEmpty(extension)
+        && Signatures.EXTENSIONS.contains(extension.toLowerCase(Locale.ROOT));
+  }
 
-    // one-third of the total file size
-    int sampleSize = Math.min(totalBytes / 3, MAX_SAMPLE_SIZE);
+  /**
+   * A byte prefix trie of the magic numbers. Nodes are stored in flat arrays, every node keeps its
+   * children as parallel arrays of bytes and node indexes which are scanned linearly as magic
+   * numbers rarely share more than a handful of prefixes.
+   */
+  private static final class SignatureTrie {
 
-    sampleSize = Math.max(sampleSize, 1);
+    static final int ROOT = 0;
+    static final int NONE = -1;
 
-    int[] occurrences = new int[256]; // Assuming bytes are unsigned
+    private byte[][] mChildBytes = new byte[16][];
+    private int[][] mChildNodes = new int[16][];
+    private boolean[] mTerminal = new boolean[16];
+    private int mSize = 1;
 
-    // Count occurrences of each byte in the sample
-    for (int i = 0; i < sampleSize; i++) {
-      occurrences[buffer[i] & BYTE_MASK]++;
+    SignatureTrie() {
+      mChildBytes[ROOT] = new byte[0];
+      mChildNodes[ROOT] = new int[0];
     }
 
-    // Calculate entropy based on the sampled data
-    double entropy = 0;
-    for (int count : occurrences) {
-      if (count > 0) {
-        double probability = (double) count / sampleSize;
-        entropy -= probability * Math.log(probability) / Math.log(2);
+    int next(int node, byte b) {
+      byte[] bytes = mChildBytes[node];
+      for (int i = 0; i < bytes.length; i++) {
+        if (bytes[i] == b) {
+          return mChildNodes[node][i];
+        }
       }
+      return NONE;
     }
 
-    if (entropy > ENTROPY_THRESHOLD) {
-      return true;
+    boolean isTerminal(int node) {
+      return mTerminal[node];
     }
 
-    // If entropy is below threshold, continue checking the rest of the buffer
-    for (int i = sampleSize; i < totalBytes; i++) {
-      occurrences[buffer[i] & BYTE_MASK]++;
-      entropy = 0;
-      for (int count : occurrences) {
-        if (count > 0) {
-          double probability = (double) count / (i + 1);
-          entropy -= probability * Math.log(probability) / Math.log(2);
+    void add(byte[] signature) {
+      int node = ROOT;
+      for (byte b : signature) {
+        int child = next(node, b);
+        if (child == NONE) {
+          child = newNode();
+          int count = mChildBytes[node].length;
+          mChildBytes[node] = Arrays.copyOf(mChildBytes[node], count + 1);
+          mChildNodes[node] = Arrays.copyOf(mChildNodes[node], count + 1);
+          mChildBytes[node][count] = b;
+          mChildNodes[node][count] = child;
         }
+        node = child;
       }
-      if (entropy > ENTROPY_THRESHOLD) {
-        return true;
-      }
+      mTerminal[node] = true;
     }
 
-    // No high entropy found, return false
-    return false;
+    private int newNode() {
+      if (mSize == mTerminal.length) {
+        int capacity = mSize * 2;
+        mChildBytes = Arrays.copyOf(mChildBytes, capacity);
+        mChildNodes = Arrays.copyOf(mChildNodes, capacity);
+        mTerminal = Arrays.copyOf(mTerminal, capacity);
+      }
+      mChildBytes[mSize] = new byte[0];
+      mChildNodes[mSize] = new int[0];
+      return mSize++;
+    }
   }
 
-  private static boolean isBinaryExtension(File file) {
-    String extension = FileUtil.getFileExtension(file);
-    if (!Wizard.isEmpty(extension)) {
-      for (String binaryExt : BINARY_FILE_FORMATS) {
-        if (extension.equalsIgnoreCase(binaryExt)) {
-          return true;
+  /** Compiled lookup tables, initialized on first use once the source tables below exist. */
+  private static final class Signatures {
+
+    static final SignatureTrie TRIE = new SignatureTrie();
+    static final Set<String> EXTENSIONS = new HashSet<>();
+
+    static {
+      for (String magicNumber : FILE_MAGIC_NUMBERS) {
+        byte[] signature = parseMagicNumber(magicNumber);
+        if (signature != null) {
+          TRIE.add(signature);
+        }
+      }
+      for (String extension : BINARY_FILE_FORMATS) {
+        EXTENSIONS.add(extension.toLowerCase(Locale.ROOT));
+      }
+    }
+
+    /**
+     * Parses a hex magic number, spaces between bytes are optional.
+     *
+     * @return the magic number bytes, {@code null} for placeholders (e.g. "XX XX") of formats that
+     *     have no magic number at the start of the file
+     */
+    private static byte[] parseMagicNumber(String magicNumber) {
+      String hex = magicNumber.replace(" ", "");
+      if (hex.isEmpty() || hex.length() % 2 != 0) {
+        return null;
+      }
+      byte[] signature = new byte[hex.length() / 2];
+      for (int i = 0; i < signature.length; i++) {
+        int high = Character.digit(hex.charAt(i * 2), 16);
+        int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+        if (high < 0 || low < 0) {
+          return null;
         }
+        signature[i] = (byte) ((high << 4) | low);
       }
+      return signature;
     }
-    return false;
   }
-    
+
   /**
    * File magic numbers are the first bits (HEX BASED) of a file which is used as a unique refrence
    * when identifying the type of file.
@@ -0,0 +1,130 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeopsstudio.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.eup.codeopsstudio.common.AsyncTask;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The charsets known to the runtime, indexed once.
+ *
+ * <p>{@link Charset#availableCharsets()} builds a new sorted map of every charset on each call.
+ * The registry builds it a single time, on first use or ahead of time on a worker thread {@see
+ * #prewarm()}, and indexes every canonical name and alias case-insensitively.
+ *
+ * @author EUP
+ */
+public final class CharsetRegistry {
+
+  private static volatile CharsetRegistry sInstance;
+
+  // lower case canonical names and aliases -> charset
+  private final Map<String, Charset> mCharsets = new HashMap<>();
+  private final Set<Charset> mSupportedCharsets = new HashSet<>();
+  private final List<Charset> mSupportedCharsetList;
+  private final List<String> mSupportedEncodings;
+
+  private CharsetRegistry() {
+    var supported = new ArrayList<Charset>();
+    var names = new ArrayList<String>();
+    // sorted by canonical name
+    for (Charset charset : Charset.availableCharsets().values()) {
+      mCharsets.put(charset.name().toLowerCase(Locale.ROOT), charset);
+      for (String alias : charset.aliases()) {
+        mCharsets.putIfAbsent(alias.toLowerCase(Locale.ROOT), charset);
+      }
+      if (charset.isRegistered()) {
+        mSupportedCharsets.add(charset);
+        supported.add(charset);
+        names.add(charset.name());
+      }
+    }
+    mSupportedCharsetList = Collections.unmodifiableList(supported);
+    mSupportedEncodings = Collections.unmodifiableList(names);
+  }
+
+  @NonNull
+  public static CharsetRegistry getInstance() {
+    if (sInstance == null) {
+      synchronized (CharsetRegistry.class) {
+        if (sInstance == null) {
+          sInstance = new CharsetRegistry();
+        }
+      }
+    }
+    return sInstance;
+  }
+
+  /** Builds the registry on a worker thread so the first open or save does not pay for it. */
+  public static void prewarm() {
+    if (sInstance == null) {
+      AsyncTask.runNonCancelable(CharsetRegistry::getInstance);
+    }
+  }
+
+  /**
+   * Looks up a charset by canonical name or alias, ignoring case.
+   *
+   * @param name the charset name
+   * @return the charset, or {@code null} if the runtime does not know it
+   */
+  @Nullable
+  public Charset lookup(@Nullable String name) {
+    return name == null ? null : mCharsets.get(name.trim().toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * @param charset the charset
+   * @return true if the charset is registered with IANA
+   */
+  public boolean isSupported(@Nullable Charset charset) {
+    return mSupportedCharsets.contains(charset);
+  }
+
+  /**
+   * @return the registered charsets sorted by name, unmodifiable
+   */
+  @NonNull
+  public List<Charset> getSupportedCharsets() {
+    return mSupportedCharsetList;
+  }
+
+  /**
+   * @return the names of the registered charsets sorted, unmodifiable
+   */
+  @NonNull
+  public List<String> getSupportedEncodings() {
+    return mSupportedEncodings;
+  }
+}
@@ -31,9 +31,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import org.mozilla.universalchardet.UniversalDetector;
-import java.util.stream.Collectors;
 
 /**
  * A class to detect the encoding of a file
@@ -71,30 +69,22 @@ public class EncodingDetector {
   }
 
   public static boolean isSupportedEncoding(Charset charset) {
-    return getSupportedCharsets().contains(charset);
+    return CharsetRegistry.getInstance().isSupported(charset);
   }
 
   public static List<String> getSupportedEncodings() {
-    return getSupportedCharsets().stream().map(Charset::name).collect(Collectors.toList());
+    return CharsetRegistry.getInstance().getSupportedEncodings();
   }
 
   public static Collection<Charset> getSupportedCharsets() {
-    return Charset.availableCharsets().values().stream()
-        .filter(Charset::isRegistered)
-        .collect(Collectors.toList());
+    return CharsetRegistry.getInstance().getSupportedCharsets();
   }
 
   public static Charset getEncoding(String charsetDef) {
-    var availableCharsets = Charset.availableCharsets();
-    // Iterate through the keys and perform case-insensitive comparison
-    for (Map.Entry<String, Charset> entry : availableCharsets.entrySet()) {
-      if (entry.getKey().equalsIgnoreCase(charsetDef)) {
-        Charset charset = entry.getValue();
-        if (charset.isRegistered()) {
-          Log.d(LOG_TAG, "Mapped encoding " + charsetDef + " to charset " + charset);
-          return charset;
-        }
-      }
+    var registry = CharsetRegistry.getInstance();
+    Charset charset = registry.lookup(charsetDef);
+    if (charset != null && registry.isSupported(charset)) {
+      return charset;
     }
 
     Log.d(LOG_TAG, "No matching encoding found for " + charsetDef + ". Using default charset.");
@@ -102,10 +92,9 @@ public class EncodingDetector {
   }
 
   public static Charset findEncoding(String charsetDef) {
-    try {
-      return Charset.forName(charsetDef);
-    } catch (RuntimeException e) {
-      Log.e(LOG_TAG, e.getMessage());
+    Charset charset = CharsetRegistry.getInstance().lookup(charsetDef);
+    if (charset != null) {
+      return charset;
     }
     Log.d(LOG_TAG, "No matching encoding found for " + charsetDef + ". Using default charset.");
     return StandardCharsets.UTF_8;
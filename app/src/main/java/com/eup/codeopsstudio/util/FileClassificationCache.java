@@ -0,0 +1,304 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeopsstudio.util;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memoises the classification of files: the detected charset {@see EncodingDetector}, the binary
+ * verdict {@see BinaryFileChecker} and the language scope.
+ *
+ * <p>Entries are keyed by canonical path and are only valid while the size, modification time and
+ * inode of the file are unchanged, a file replaced or rewritten in place is classified again. The
+ * cache holds at most {@value #MAX_ENTRIES} files, evicting the least recently used, and can be
+ * persisted to disk across launches {@see #setStoreFile(File)}. File watchers should {@link
+ * #invalidate(File)} files that changed so the stat check is not relied on alone.
+ *
+ * @author EUP
+ */
+public class FileClassificationCache {
+
+  public static final String LOG_TAG = "FileClassificationCache";
+  private static final int MAX_ENTRIES = 512;
+
+  /** Classifies a file on a cache miss. */
+  public interface Loader<T> {
+    T load(@NonNull File file) throws IOException;
+  }
+
+  /** The cached classification of a file, fields are {@code null} until first computed. */
+  private static final class Entry {
+    String path;
+    long size;
+    long lastModified;
+    long inode;
+    String charset;
+    Boolean binary;
+    String scope;
+
+    boolean matches(Entry stat) {
+      return size == stat.size && lastModified == stat.lastModified && inode == stat.inode;
+    }
+  }
+
+  private static volatile FileClassificationCache sInstance;
+
+  private final Gson mGson = new Gson();
+
+  // canonical path -> entry, least recently used first
+  private final LinkedHashMap<String, Entry> mEntries =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+
+  private File mStoreFile;
+  private boolean mLoaded;
+  private boolean mDirty;
+
+  private FileClassificationCache() {}
+
+  public static FileClassificationCache getInstance() {
+    if (sInstance == null) {
+      synchronized (FileClassificationCache.class) {
+        if (sInstance == null) {
+          sInstance = new FileClassificationCache();
+        }
+      }
+    }
+    return sInstance;
+  }
+
+  /**
+   * Enables persistence, the entries stored in the file are loaded on first use.
+   *
+   * @param storeFile the file to persist the cache to, {@code null} to keep it in memory only
+   */
+  public synchronized void setStoreFile(@Nullable File storeFile) {
+    mStoreFile = storeFile;
+    mLoaded = false;
+  }
+
+  /**
+   * Returns the charset of a file, detected once per file version.
+   *
+   * @param file the file
+   * @return the detected charset
+   */
+  @NonNull
+  public Charset getCharset(@NonNull File file) {
+    var entry = getEntry(file);
+    if (entry.charset == null) {
+      var charset = EncodingDetector.detectFileEncoding(file);
+      synchronized (this) {
+        entry.charset = charset.name();
+        mDirty = true;
+      }
+      return charset;
+    }
+    return EncodingDetector.findEncoding(entry.charset);
+  }
+
+  /**
+   * Returns whether a file is binary, classified once per file version.
+   *
+   * @param file the file
+   * @return true if the file is binary
+   * @throws IOException if the file cannot be read
+   */
+  public boolean isBinaryFile(@NonNull File file) throws IOException {
+    var entry = getEntry(file);
+    if (entry.binary == null) {
+      boolean binary = BinaryFileChecker.isBinaryFile(file);
+      synchronized (this) {
+        entry.binary = binary;
+        mDirty = true;
+      }
+      return binary;
+    }
+    return entry.binary;
+  }
+
+  /**
+   * Returns the language scope of a file, resolved once per file version.
+   *
+   * @param file the file
+   * @param loader resolves the scope on a cache miss
+   * @return the language scope
+   * @throws IOException if the loader fails
+   */
+  public String getLanguageScope(@NonNull File file, @NonNull Loader<String> loader)
+      throws IOException {
+    var entry = getEntry(file);
+    if (entry.scope == null) {
+      var scope = loader.load(file);
+      synchronized (this) {
+        entry.scope = scope;
+        mDirty = true;
+      }
+      return scope;
+    }
+    return entry.scope;
+  }
+
+  /**
+   * Drops the classification of a file, e.g. when a file watcher reports a change.
+   *
+   * @param file the file
+   */
+  public synchronized void invalidate(@NonNull File file) {
+    ensureLoaded();
+    if (mEntries.remove(getPath(file)) != null) {
+      mDirty = true;
+    }
+  }
+
+  /** Drops all classifications. */
+  public synchronized void clear() {
+    mEntries.clear();
+    mLoaded = true;
+    mDirty = true;
+  }
+
+  /**
+   * Writes the cache to its store file if it changed since it was last loaded or saved. No-op if
+   * persistence is not enabled. Should not be invoked on the main thread.
+   */
+  public void save() {
+    File storeFile;
+    List<Entry> entries;
+    synchronized (this) {
+      if (mStoreFile == null || !mDirty) return;
+      storeFile = mStoreFile;
+      entries = new ArrayList<>(mEntries.values());
+      mDirty = false;
+    }
+
+    var temp = new File(storeFile.getPath() + ".tmp");
+    try {
+      try (var out = new FileOutputStream(temp);
+          Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+        mGson.toJson(entries, writer);
+        writer.flush();
+        out.getFD().sync();
+      }
+      Files.move(
+          temp.toPath(),
+          storeFile.toPath(),
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      temp.delete();
+      synchronized (this) {
+        mDirty = true;
+      }
+      Log.e(LOG_TAG, "Failed to save file classifications", e);
+    }
+  }
+
+  /**
+   * Returns the entry of the current version of a file, replacing a stale one.
+   *
+   * @param file the file
+   * @return the entry, shared with the cache and only mutated while holding its lock
+   */
+  private synchronized Entry getEntry(File file) {
+    ensureLoaded();
+    var stat = stat(file);
+    var entry = mEntries.get(stat.path);
+    if (entry == null || !entry.matches(stat)) {
+      mEntries.put(stat.path, stat);
+      mDirty = true;
+      return stat;
+    }
+    return entry;
+  }
+
+  private void ensureLoaded() {
+    if (mLoaded) return;
+    mLoaded = true;
+    if (mStoreFile == null || !mStoreFile.exists()) return;
+
+    try (Reader reader =
+        new InputStreamReader(new FileInputStream(mStoreFile), StandardCharsets.UTF_8)) {
+      List<Entry> entries = mGson.fromJson(reader, new TypeToken<List<Entry>>() {}.getType());
+      if (entries != null) {
+        for (Entry entry : entries) {
+          if (entry != null && entry.path != null) {
+            mEntries.put(entry.path, entry);
+          }
+        }
+      }
+    } catch (IOException | JsonParseException e) {
+      Log.e(LOG_TAG, "Failed to load file classifications", e);
+    }
+  }
+
+  private static Entry stat(File file) {
+    var entry = new Entry();
+    entry.path = getPath(file);
+    entry.size = file.length();
+    entry.lastModified = file.lastModified();
+    try {
+      entry.inode = Os.stat(entry.path).st_ino;
+    } catch (ErrnoException e) {
+      // not available, size and modification time alone identify the file version
+      entry.inode = -1;
+    }
+    return entry;
+  }
+
+  private static String getPath(File file) {
+    try {
+      return file.getCanonicalPath();
+    } catch (IOException e) {
+      return file.getAbsolutePath();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.filters;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A trie of the literal prefixes or suffixes of patterns. Each pattern matches the strings starting
+ * or ending with its literal, followed or preceded by any run of characters, line terminators
+ * included or not.
+ */
+final class AffixTrie {
+
+  private static final class Node {
+    final Map<Character, Node> children = new HashMap<>();
+    // lowest index of the patterns ending here, whose run matches any or only non line terminators
+    int dotAllIndex = Integer.MAX_VALUE;
+    int lineIndex = Integer.MAX_VALUE;
+  }
+
+  private final boolean mSuffixes;
+  private final Node mRoot = new Node();
+
+  /**
+   * @param suffixes true to match suffixes rather than prefixes
+   */
+  AffixTrie(boolean suffixes) {
+    mSuffixes = suffixes;
+  }
+
+  void add(String affix, boolean dotAll, int index) {
+    var node = mRoot;
+    int length = affix.length();
+    for (int i = 0; i < length; i++) {
+      char c = affix.charAt(mSuffixes ? length - 1 - i : i);
+      node = node.children.computeIfAbsent(c, any -> new Node());
+    }
+    if (dotAll) {
+      node.dotAllIndex = Math.min(node.dotAllIndex, index);
+    } else {
+      node.lineIndex = Math.min(node.lineIndex, index);
+    }
+  }
+
+  /**
+   * Finds the lowest index of the patterns matching a value.
+   *
+   * @param value the value
+   * @param firstTerminator the index of the first line terminator of the value, -1 if none
+   * @param lastTerminator the index of the last line terminator of the value, -1 if none
+   * @param bound only patterns with a lower index are looked for
+   * @return the lowest index, or {@code bound} if none matches
+   */
+  int match(String value, int firstTerminator, int lastTerminator, int bound) {
+    int best = bound;
+    int length = value.length();
+    var node = mRoot;
+    for (int depth = 0; node != null; depth++) {
+      best = Math.min(best, node.dotAllIndex);
+      if (node.lineIndex < best) {
+        // the run left of a suffix or right of a prefix must not hold a line terminator
+        boolean clean =
+            mSuffixes
+                ? firstTerminator < 0 || firstTerminator >= length - depth
+                : lastTerminator < depth;
+        if (clean) {
+          best = node.lineIndex;
+        }
+      }
+      if (depth == length) break;
+
+      node = node.children.get(value.charAt(mSuffixes ? length - 1 - depth : depth));
+    }
+    return best;
+  }
+}
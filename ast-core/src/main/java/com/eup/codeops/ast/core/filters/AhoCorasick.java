@@ -0,0 +1,140 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.filters;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An Aho-Corasick automaton finding the patterns that contain a literal, preceded and followed by
+ * any run of characters, line terminators included or not. A value is scanned once whatever the
+ * number of literals.
+ */
+final class AhoCorasick {
+
+  private static final class Node {
+    final Map<Character, Node> children = new HashMap<>();
+    Node fail;
+    // the closest node on the failure chain, this one excluded, that ends literals
+    Node output;
+    int depth;
+    // lowest index of the patterns whose literal ends here, per kind of run
+    int dotAllIndex = Integer.MAX_VALUE;
+    int lineIndex = Integer.MAX_VALUE;
+
+    boolean isTerminal() {
+      return dotAllIndex != Integer.MAX_VALUE || lineIndex != Integer.MAX_VALUE;
+    }
+  }
+
+  private final Node mRoot = new Node();
+  private boolean mBuilt;
+
+  void add(String literal, boolean dotAll, int index) {
+    var node = mRoot;
+    for (int i = 0; i < literal.length(); i++) {
+      var parent = node;
+      node = node.children.computeIfAbsent(literal.charAt(i), any -> new Node());
+      node.depth = parent.depth + 1;
+    }
+    if (dotAll) {
+      node.dotAllIndex = Math.min(node.dotAllIndex, index);
+    } else {
+      node.lineIndex = Math.min(node.lineIndex, index);
+    }
+    mBuilt = false;
+  }
+
+  /** Links the failure and output transitions, breadth first. */
+  void build() {
+    if (mBuilt) return;
+
+    var queue = new ArrayDeque<Node>();
+    mRoot.fail = mRoot;
+    for (Node child : mRoot.children.values()) {
+      child.fail = mRoot;
+      child.output = mRoot.isTerminal() ? mRoot : null;
+      queue.add(child);
+    }
+    while (!queue.isEmpty()) {
+      var node = queue.poll();
+      for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+        var child = entry.getValue();
+        var fail = node.fail;
+        while (fail != mRoot && !fail.children.containsKey(entry.getKey())) {
+          fail = fail.fail;
+        }
+        var next = fail.children.get(entry.getKey());
+        child.fail = next != null && next != child ? next : mRoot;
+        child.output = child.fail.isTerminal() ? child.fail : child.fail.output;
+        queue.add(child);
+      }
+    }
+    mBuilt = true;
+  }
+
+  /**
+   * Finds the lowest index of the patterns matching a value.
+   *
+   * @param value the value
+   * @param firstTerminator the index of the first line terminator of the value, -1 if none
+   * @param lastTerminator the index of the last line terminator of the value, -1 if none
+   * @param bound only patterns with a lower index are looked for
+   * @return the lowest index, or {@code bound} if none matches
+   */
+  int match(String value, int firstTerminator, int lastTerminator, int bound) {
+    int best = matchAt(mRoot, 0, firstTerminator, lastTerminator, bound);
+    var node = mRoot;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      var next = node.children.get(c);
+      while (next == null && node != mRoot) {
+        node = node.fail;
+        next = node.children.get(c);
+      }
+      node = next != null ? next : mRoot;
+      for (var terminal = node.isTerminal() ? node : node.output;
+          terminal != null;
+          terminal = terminal.output) {
+        best = matchAt(terminal, i + 1, firstTerminator, lastTerminator, best);
+      }
+    }
+    return best;
+  }
+
+  /** Matches the literals of a node ending before {@code end}. */
+  private static int matchAt(
+      Node node, int end, int firstTerminator, int lastTerminator, int best) {
+    best = Math.min(best, node.dotAllIndex);
+    if (node.lineIndex < best) {
+      // every line terminator must be within the literal
+      int start = end - node.depth;
+      if (firstTerminator < 0 || (firstTerminator >= start && lastTerminator < end)) {
+        best = node.lineIndex;
+      }
+    }
+    return best;
+  }
+}
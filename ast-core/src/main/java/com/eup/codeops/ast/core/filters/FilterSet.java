@@ -0,0 +1,319 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.filters;
+
+import static com.eup.codeops.ast.core.filters.PatternParser.CHAR;
+import static com.eup.codeops.ast.core.filters.PatternParser.STAR;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.eup.codeops.ast.core.filters.PatternParser.Token;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A filter matching strings against many patterns at once, reporting the first pattern matched.
+ *
+ * <p>Unlike {@link RegexFilter}, patterns are not joined into a single backtracking regex. Each is
+ * sorted by its shape and matched by the cheapest engine able to:
+ *
+ * <ul>
+ *   <li>literals are looked up in a hash map,
+ *   <li>literals followed or preceded by any run, e.g. {@code build/.*} or {@code *.java}, walk a
+ *       trie of their prefixes or suffixes,
+ *   <li>literals surrounded by runs, e.g. {@code .*test.*}, are found in a single scan by an
+ *       Aho-Corasick automaton,
+ *   <li>other globs and regexes made of characters, {@code .}, {@code .*} and character classes
+ *       are matched together by a lazily built DFA,
+ *   <li>the remaining regexes are matched one by one by {@link Pattern}.
+ * </ul>
+ *
+ * <p>Regexes must match whole values, as with {@link java.util.regex.Matcher#matches()}, and
+ * {@code .} does not match line terminators. Globs match whole values as well, {@code *} and
+ * {@code ?} match any character. Values are matched per UTF-16 unit rather than per code point.
+ *
+ * <p>A filter set is immutable and thread safe.
+ *
+ * @author EUP
+ */
+public class FilterSet extends Filter<String> {
+
+  private static final int NONE = Integer.MAX_VALUE;
+
+  /** Collects the patterns of a filter set, in order. */
+  public static final class Builder {
+
+    private final List<String> mSources = new ArrayList<>();
+    // the tokens of each pattern, null for regexes matched by Pattern
+    private final List<List<Token>> mTokens = new ArrayList<>();
+    private final List<Boolean> mGlobs = new ArrayList<>();
+
+    /**
+     * @param regex a regular expression matching whole values
+     * @return this builder
+     * @throws java.util.regex.PatternSyntaxException if the regex is invalid
+     */
+    @NonNull
+    public Builder addRegex(@NonNull String regex) {
+      var tokens = PatternParser.parseRegex(regex);
+      if (tokens == null) {
+        Pattern.compile(regex); // fails early on invalid syntax
+      }
+      return add(regex, tokens, false);
+    }
+
+    /**
+     * @param glob a glob matching whole values, {@code *} matches any run of characters, {@code ?}
+     *     any character and {@code [...]} a character class, negated by a leading {@code !}
+     * @return this builder
+     */
+    @NonNull
+    public Builder addGlob(@NonNull String glob) {
+      return add(glob, PatternParser.parseGlob(glob), true);
+    }
+
+    /**
+     * @param literal a value matched exactly
+     * @return this builder
+     */
+    @NonNull
+    public Builder addLiteral(@NonNull String literal) {
+      var tokens = new ArrayList<Token>(literal.length());
+      for (int i = 0; i < literal.length(); i++) {
+        tokens.add(new Token(CHAR, literal.charAt(i), null));
+      }
+      return add(literal, tokens, true);
+    }
+
+    private Builder add(String source, List<Token> tokens, boolean glob) {
+      mSources.add(source);
+      mTokens.add(tokens);
+      mGlobs.add(glob);
+      return this;
+    }
+
+    @NonNull
+    public FilterSet build() {
+      return new FilterSet(this);
+    }
+  }
+
+  private final String[] mSources;
+  private final Map<String, Integer> mLiterals = new HashMap<>();
+  private final AffixTrie mPrefixes = new AffixTrie(false);
+  private final AffixTrie mSuffixes = new AffixTrie(true);
+  private final AhoCorasick mInfixes = new AhoCorasick();
+  private final LazyDfa mDfa = new LazyDfa();
+  private final Pattern[] mRegexes;
+  private final int[] mRegexIndexes;
+  private boolean mHasPrefixes;
+  private boolean mHasSuffixes;
+  private boolean mHasInfixes;
+
+  /**
+   * Creates a filter set of regular expressions, matching like a {@link RegexFilter} of the same
+   * expressions.
+   *
+   * @param regex the regular expressions
+   */
+  public FilterSet(@NonNull String... regex) {
+    this(addAll(new Builder(), regex));
+  }
+
+  private static Builder addAll(Builder builder, String[] regex) {
+    for (String expression : regex) {
+      builder.addRegex(expression);
+    }
+    return builder;
+  }
+
+  private FilterSet(Builder builder) {
+    int size = builder.mSources.size();
+    mSources = builder.mSources.toArray(new String[0]);
+    var regexes = new ArrayList<Pattern>();
+    var regexIndexes = new ArrayList<Integer>();
+    for (int index = 0; index < size; index++) {
+      var tokens = builder.mTokens.get(index);
+      if (tokens == null) {
+        regexes.add(Pattern.compile(mSources[index]));
+        regexIndexes.add(index);
+      } else {
+        classify(tokens, builder.mGlobs.get(index), index);
+      }
+    }
+    mRegexes = regexes.toArray(new Pattern[0]);
+    mRegexIndexes = regexIndexes.stream().mapToInt(Integer::intValue).toArray();
+    mInfixes.build();
+    mDfa.build();
+  }
+
+  /** Adds a parsed pattern to the cheapest engine matching its shape. */
+  private void classify(List<Token> tokens, boolean dotAll, int index) {
+    int size = tokens.size();
+    int stars = 0;
+    for (Token token : tokens) {
+      if (token.kind == STAR) {
+        stars++;
+      } else if (token.kind != CHAR) {
+        mDfa.add(tokens, dotAll, index);
+        return;
+      }
+    }
+    boolean leading = size > 0 && tokens.get(0).kind == STAR;
+    boolean trailing = size > 0 && tokens.get(size - 1).kind == STAR;
+    if (stars == 0) {
+      mLiterals.putIfAbsent(literal(tokens, 0, size), index);
+    } else if (stars == 1 && trailing) {
+      mPrefixes.add(literal(tokens, 0, size - 1), dotAll, index);
+      mHasPrefixes = true;
+    } else if (stars == 1) {
+      if (leading) {
+        mSuffixes.add(literal(tokens, 1, size), dotAll, index);
+        mHasSuffixes = true;
+      } else {
+        mDfa.add(tokens, dotAll, index);
+      }
+    } else if (stars == 2 && leading && trailing) {
+      mInfixes.add(literal(tokens, 1, size - 1), dotAll, index);
+      mHasInfixes = true;
+    } else {
+      mDfa.add(tokens, dotAll, index);
+    }
+  }
+
+  private static String literal(List<Token> tokens, int from, int to) {
+    var sb = new StringBuilder(to - from);
+    for (int i = from; i < to; i++) {
+      sb.append(tokens.get(i).c);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Filters the given string.
+   *
+   * @param value the string to filter
+   * @return true if any pattern matches the string
+   */
+  @Override
+  public boolean filter(String value) {
+    return value != null && match(value, true) != NONE;
+  }
+
+  /**
+   * Finds the first pattern, in the order they were added, matching a value.
+   *
+   * @param value the value
+   * @return the index of the pattern, -1 if none matches
+   */
+  public int indexOf(@Nullable String value) {
+    int index = value == null ? NONE : match(value, false);
+    return index == NONE ? -1 : index;
+  }
+
+  /**
+   * @param value the value
+   * @return the first pattern matching the value, {@code null} if none matches
+   */
+  @Nullable
+  public String getMatchingPattern(@Nullable String value) {
+    int index = indexOf(value);
+    return index < 0 ? null : mSources[index];
+  }
+
+  /**
+   * @param index the index of a pattern
+   * @return the pattern as added
+   */
+  @NonNull
+  public String getPattern(int index) {
+    return mSources[index];
+  }
+
+  /**
+   * @return the number of patterns
+   */
+  public int size() {
+    return mSources.length;
+  }
+
+  /**
+   * @param any true to stop at the first match found rather than the first pattern matching
+   * @return the index of the pattern found, {@link #NONE} if none matches
+   */
+  private int match(String value, boolean any) {
+    var literal = mLiterals.get(value);
+    int best = literal != null ? literal : NONE;
+    if (any && best != NONE) return best;
+
+    int firstTerminator = -1;
+    int lastTerminator = -1;
+    if (mHasPrefixes || mHasSuffixes || mHasInfixes) {
+      for (int i = 0; i < value.length(); i++) {
+        if (PatternParser.isLineTerminator(value.charAt(i))) {
+          if (firstTerminator < 0) {
+            firstTerminator = i;
+          }
+          lastTerminator = i;
+        }
+      }
+    }
+    if (mHasPrefixes) {
+      best = mPrefixes.match(value, firstTerminator, lastTerminator, best);
+      if (any && best != NONE) return best;
+    }
+    if (mHasSuffixes) {
+      best = mSuffixes.match(value, firstTerminator, lastTerminator, best);
+      if (any && best != NONE) return best;
+    }
+    if (mHasInfixes) {
+      best = mInfixes.match(value, firstTerminator, lastTerminator, best);
+      if (any && best != NONE) return best;
+    }
+    if (!mDfa.isEmpty()) {
+      best = mDfa.match(value, best);
+      if (any && best != NONE) return best;
+    }
+    for (int i = 0; i < mRegexes.length && mRegexIndexes[i] < best; i++) {
+      if (mRegexes[i].matcher(value).matches()) {
+        return mRegexIndexes[i];
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Returns a string representation of this filter, including the patterns.
+   *
+   * @return a string representation of this filter
+   */
+  @Override
+  public String toString() {
+    return String.format("%s%s", getClass().getSimpleName(), Arrays.toString(mSources));
+  }
+}
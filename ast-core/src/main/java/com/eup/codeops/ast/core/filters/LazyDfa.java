@@ -0,0 +1,260 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.filters;
+
+import static com.eup.codeops.ast.core.filters.PatternParser.ANY;
+import static com.eup.codeops.ast.core.filters.PatternParser.CHAR;
+import static com.eup.codeops.ast.core.filters.PatternParser.CLASS;
+import static com.eup.codeops.ast.core.filters.PatternParser.STAR;
+
+import com.eup.codeops.ast.core.filters.PatternParser.CharClass;
+import com.eup.codeops.ast.core.filters.PatternParser.Token;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A DFA matching many token patterns at once, built lazily from their combined NFA.
+ *
+ * <p>A state of the NFA is a position in a pattern. A state of the DFA is the set of positions
+ * reachable after reading a prefix of the value, it is built the first time that prefix is read
+ * and its transitions are cached, so a value is matched in a single pass after warming up. At most
+ * {@value #MAX_STATES} states are cached, further states are rebuilt on every use.
+ *
+ * <p>Matching is thread safe, states are built while holding the lock of the automaton.
+ */
+final class LazyDfa {
+
+  private static final int MAX_STATES = 4096;
+  private static final int END = -1;
+
+  /** A set of NFA positions and its cached transitions. */
+  private static final class State {
+    final int[] positions;
+    // lowest index of the patterns ending in this state
+    final int match;
+    // transitions on ASCII characters, published racily, a missed one is built again
+    final State[] ascii = new State[128];
+    // transitions on other characters, guarded by the lock of the automaton
+    final Map<Character, State> others = new HashMap<>();
+
+    State(int[] positions, int match) {
+      this.positions = positions;
+      this.match = match;
+    }
+  }
+
+  // the flattened positions of every pattern: their token, or END after the last token
+  private final List<Integer> mKinds = new ArrayList<>();
+  private final List<Character> mChars = new ArrayList<>();
+  private final List<CharClass> mClasses = new ArrayList<>();
+  // whether ANY and STAR of a position match line terminators
+  private final List<Boolean> mDotAll = new ArrayList<>();
+  // the pattern index ending at END positions
+  private final List<Integer> mIndexes = new ArrayList<>();
+  private final List<Integer> mStarts = new ArrayList<>();
+
+  private int[] mKindArray;
+  private char[] mCharArray;
+  private CharClass[] mClassArray;
+  private boolean[] mDotAllArray;
+  private int[] mIndexArray;
+
+  private final Map<Key, State> mStates = new HashMap<>();
+  private State mStart;
+
+  private static final class Key {
+    final int[] positions;
+    final int hash;
+
+    Key(int[] positions) {
+      this.positions = positions;
+      this.hash = Arrays.hashCode(positions);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Key && Arrays.equals(positions, ((Key) obj).positions);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  boolean isEmpty() {
+    return mStarts.isEmpty();
+  }
+
+  void add(List<Token> tokens, boolean dotAll, int index) {
+    mStarts.add(mKinds.size());
+    for (Token token : tokens) {
+      mKinds.add(token.kind);
+      mChars.add(token.c);
+      mClasses.add(token.charClass);
+      mDotAll.add(dotAll);
+      mIndexes.add(-1);
+    }
+    mKinds.add(END);
+    mChars.add('\0');
+    mClasses.add(null);
+    mDotAll.add(dotAll);
+    mIndexes.add(index);
+    mStart = null;
+  }
+
+  /** Flattens the positions and builds the start state. */
+  synchronized void build() {
+    if (mStart != null) return;
+
+    int size = mKinds.size();
+    mKindArray = new int[size];
+    mCharArray = new char[size];
+    mClassArray = mClasses.toArray(new CharClass[0]);
+    mDotAllArray = new boolean[size];
+    mIndexArray = new int[size];
+    for (int i = 0; i < size; i++) {
+      mKindArray[i] = mKinds.get(i);
+      mCharArray[i] = mChars.get(i);
+      mDotAllArray[i] = mDotAll.get(i);
+      mIndexArray[i] = mIndexes.get(i);
+    }
+    mStates.clear();
+    var start = new boolean[size];
+    for (int position : mStarts) {
+      close(position, start);
+    }
+    mStart = state(start);
+  }
+
+  /**
+   * Finds the lowest index of the patterns matching a value.
+   *
+   * @param value the value
+   * @param bound only patterns with a lower index are looked for
+   * @return the lowest index, or {@code bound} if none matches
+   */
+  int match(String value, int bound) {
+    var state = mStart;
+    for (int i = 0; i < value.length() && state != null; i++) {
+      char c = value.charAt(i);
+      State next;
+      if (c < 128) {
+        next = state.ascii[c];
+        if (next == null) {
+          next = step(state, c);
+        }
+      } else {
+        synchronized (this) {
+          next = state.others.get(c);
+        }
+        if (next == null) {
+          next = step(state, c);
+        }
+      }
+      state = next.positions.length == 0 ? null : next;
+    }
+    return state == null ? bound : Math.min(bound, state.match);
+  }
+
+  /** Builds and caches the transition of a state on a character. */
+  private synchronized State step(State state, char c) {
+    var reached = new boolean[mKindArray.length];
+    for (int position : state.positions) {
+      int kind = mKindArray[position];
+      if (kind == STAR) {
+        if (matchesAny(position, c)) {
+          close(position, reached);
+        }
+      } else if (consumes(position, c)) {
+        close(position + 1, reached);
+      }
+    }
+    var next = state(reached);
+    if (c < 128) {
+      state.ascii[c] = next;
+    } else {
+      state.others.put(c, next);
+    }
+    return next;
+  }
+
+  /** Whether the single character token of a position matches a character. */
+  private boolean consumes(int position, char c) {
+    switch (mKindArray[position]) {
+      case CHAR:
+        return mCharArray[position] == c;
+      case ANY:
+        return matchesAny(position, c);
+      case CLASS:
+        return mClassArray[position].matches(c);
+      default:
+        return false;
+    }
+  }
+
+  private boolean matchesAny(int position, char c) {
+    return mDotAllArray[position] || !PatternParser.isLineTerminator(c);
+  }
+
+  /** Adds a position and the positions following the runs it starts with. */
+  private void close(int position, boolean[] reached) {
+    while (!reached[position]) {
+      reached[position] = true;
+      if (mKindArray[position] != STAR) break;
+      position++;
+    }
+  }
+
+  /** Returns the cached state of a set of positions. */
+  private State state(boolean[] reached) {
+    int count = 0;
+    for (boolean r : reached) {
+      if (r) count++;
+    }
+    var positions = new int[count];
+    int match = Integer.MAX_VALUE;
+    for (int i = 0, j = 0; j < count; i++) {
+      if (reached[i]) {
+        positions[j++] = i;
+        if (mKindArray[i] == END) {
+          match = Math.min(match, mIndexArray[i]);
+        }
+      }
+    }
+
+    var key = new Key(positions);
+    var state = mStates.get(key);
+    if (state == null) {
+      state = new State(positions, match);
+      if (mStates.size() < MAX_STATES) {
+        mStates.put(key, state);
+      }
+    }
+    return state;
+  }
+}
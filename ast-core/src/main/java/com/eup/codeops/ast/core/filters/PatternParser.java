@@ -0,0 +1,223 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.filters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses the patterns of a {@link FilterSet} into sequences of simple tokens: characters, any
+ * character, character classes and any run of characters. Patterns using more of the regular
+ * expression syntax are not parsed and are matched by {@link java.util.regex.Pattern}.
+ */
+final class PatternParser {
+
+  static final int CHAR = 0;
+  static final int ANY = 1;
+  static final int CLASS = 2;
+  static final int STAR = 3;
+
+  private static final String REGEX_METACHARACTERS = "()|+?*{}^$";
+  private static final String QUANTIFIERS = "*+?{";
+
+  /** A token of a pattern. */
+  static final class Token {
+    final int kind;
+    final char c;
+    final CharClass charClass;
+
+    Token(int kind, char c, CharClass charClass) {
+      this.kind = kind;
+      this.c = c;
+      this.charClass = charClass;
+    }
+  }
+
+  /** A set of character ranges, possibly negated. */
+  static final class CharClass {
+    // inclusive bounds, sorted by lower bound
+    private final char[] mRanges;
+    private final boolean mNegated;
+
+    CharClass(char[] ranges, boolean negated) {
+      mRanges = ranges;
+      mNegated = negated;
+    }
+
+    boolean matches(char c) {
+      boolean inRange = false;
+      for (int i = 0; i < mRanges.length && mRanges[i] <= c; i += 2) {
+        if (c <= mRanges[i + 1]) {
+          inRange = true;
+          break;
+        }
+      }
+      return inRange != mNegated;
+    }
+  }
+
+  private PatternParser() {}
+
+  /**
+   * @return true if a character is a line terminator, not matched by {@code .} in a regex
+   */
+  static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  /**
+   * Parses a regular expression made of literal or escaped characters, {@code .}, {@code .*} and
+   * character classes only.
+   *
+   * @return the tokens, or {@code null} if the regex uses other syntax
+   */
+  static List<Token> parseRegex(String regex) {
+    var tokens = new ArrayList<Token>();
+    int length = regex.length();
+    for (int i = 0; i < length; ) {
+      char c = regex.charAt(i);
+      boolean quantified = false;
+      if (c == '\\') {
+        if (i + 1 == length || Character.isLetterOrDigit(regex.charAt(i + 1))) return null;
+        tokens.add(new Token(CHAR, regex.charAt(i + 1), null));
+        i += 2;
+      } else if (c == '.') {
+        if (i + 1 < length && regex.charAt(i + 1) == '*') {
+          addStar(tokens);
+          i += 2;
+        } else {
+          tokens.add(new Token(ANY, c, null));
+          i++;
+        }
+      } else if (c == '[') {
+        int end = parseClass(regex, i, false, tokens);
+        if (end < 0) return null;
+        i = end;
+      } else if (REGEX_METACHARACTERS.indexOf(c) >= 0) {
+        return null;
+      } else {
+        tokens.add(new Token(CHAR, c, null));
+        i++;
+      }
+      if (i < length && QUANTIFIERS.indexOf(regex.charAt(i)) >= 0) return null;
+    }
+    return tokens;
+  }
+
+  /**
+   * Parses a glob: {@code *} matches any run of characters, {@code ?} any character and {@code
+   * [...]} a character class, negated by a leading {@code !} or {@code ^}. A backslash escapes the
+   * next character.
+   */
+  static List<Token> parseGlob(String glob) {
+    var tokens = new ArrayList<Token>();
+    int length = glob.length();
+    for (int i = 0; i < length; ) {
+      char c = glob.charAt(i);
+      if (c == '*') {
+        addStar(tokens);
+        i++;
+      } else if (c == '?') {
+        tokens.add(new Token(ANY, c, null));
+        i++;
+      } else if (c == '[' && glob.indexOf(']', i + 2) > 0) {
+        i = parseClass(glob, i, true, tokens);
+      } else if (c == '\\' && i + 1 < length) {
+        tokens.add(new Token(CHAR, glob.charAt(i + 1), null));
+        i += 2;
+      } else {
+        tokens.add(new Token(CHAR, c, null));
+        i++;
+      }
+    }
+    return tokens;
+  }
+
+  private static void addStar(List<Token> tokens) {
+    // consecutive runs match the same strings as one
+    if (tokens.isEmpty() || tokens.get(tokens.size() - 1).kind != STAR) {
+      tokens.add(new Token(STAR, '*', null));
+    }
+  }
+
+  /**
+   * Parses a character class starting at {@code start}.
+   *
+   * @return the index following the class, or -1 if unsupported
+   */
+  private static int parseClass(String pattern, int start, boolean glob, List<Token> tokens) {
+    int length = pattern.length();
+    int i = start + 1;
+    boolean negated = false;
+    if (i < length && (pattern.charAt(i) == '^' || (glob && pattern.charAt(i) == '!'))) {
+      negated = true;
+      i++;
+    }
+    var ranges = new ArrayList<char[]>();
+    boolean first = true;
+    while (i < length) {
+      char c = pattern.charAt(i);
+      if (c == ']' && !first) {
+        tokens.add(new Token(CLASS, '[', new CharClass(merge(ranges), negated)));
+        return i + 1;
+      }
+      if (!glob && (c == '[' || c == ']' || pattern.startsWith("&&", i))) {
+        return -1;
+      }
+      if (c == '\\') {
+        if (i + 1 == length || (!glob && Character.isLetterOrDigit(pattern.charAt(i + 1)))) {
+          return -1;
+        }
+        c = pattern.charAt(++i);
+      }
+      char high = c;
+      if (i + 2 < length && pattern.charAt(i + 1) == '-' && pattern.charAt(i + 2) != ']') {
+        high = pattern.charAt(i + 2);
+        if (high == '\\' || high == '[' || high < c) return -1;
+        i += 2;
+      }
+      ranges.add(new char[] {c, high});
+      first = false;
+      i++;
+    }
+    return -1;
+  }
+
+  /** Sorts and merges ranges into the flat bounds of a {@link CharClass}. */
+  private static char[] merge(List<char[]> ranges) {
+    ranges.sort((a, b) -> Character.compare(a[0], b[0]));
+    var merged = new char[ranges.size() * 2];
+    int size = 0;
+    for (char[] range : ranges) {
+      if (size > 0 && range[0] <= merged[size - 1] + 1) {
+        merged[size - 1] = (char) Math.max(merged[size - 1], range[1]);
+      } else {
+        merged[size++] = range[0];
+        merged[size++] = range[1];
+      }
+    }
+    return Arrays.copyOf(merged, size);
+  }
+}
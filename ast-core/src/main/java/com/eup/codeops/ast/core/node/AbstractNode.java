@@ -28,18 +28,24 @@ import androidx.annotation.Nullable;
 import com.eup.codeops.ast.core.exception.InvalidRangeException;
 import com.eup.codeops.ast.core.transversal.BFS;
 import com.eup.codeops.ast.core.transversal.INext;
+import com.eup.codeops.ast.core.transversal.Order;
+import com.eup.codeops.ast.core.transversal.ParallelTraversal;
+import com.eup.codeops.ast.core.util.TreeJsonWriter;
 import com.eup.codeops.ast.core.visitors.NodeVisitor;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
-import java.util.Queue;
-import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Provides a foundational implementation of the {@link Node} interface, serving as a base class for
@@ -104,15 +110,13 @@ public abstract class AbstractNode<T> implements Node<T> {
   /** Object associated to this node */
   private T value;
 
-  /**
-   * A shared set of generated IDs to ensure uniqueness across all instances of subclasses. This set
-   * is static to allow sharing among all subclasses, and is accessed in a thread-safe manner via
-   * the {@link #generateID()} method, which synchronizes access to prevent concurrent
-   * modifications.
-   */
-  private static final Set<UUID> generatedIds = new HashSet<>();
+  /** Allocates the identifiers of new nodes, shared among all subclasses */
+  private static volatile NodeIdAllocator sIdAllocator = SequentialIdAllocator.getInstance();
 
-  /** The unique identifier for this node */
+  /** The unique identifier for this node, {@link NodeIdAllocator#NO_ID} if none */
+  private long id = NodeIdAllocator.NO_ID;
+
+  /** The UUID of this node, derived from {@link #id} when first asked for unless set */
   public UUID mUUID;
 
   /**
@@ -124,12 +128,98 @@ public abstract class AbstractNode<T> implements Node<T> {
   /** Parent of this node not necessarily the root */
   private Node<T> parent;
 
-  /** Child nodes of this node */
+  /** Child nodes of this node, copied on write once the tree is concurrent {@see ConcurrentTree} */
   private List<Node<T>> children;
 
   /** Position of node accross the tree */
   private int index;
 
+  /** Number of nodes from the root to this node, maintained whenever the node is attached */
+  private int depth = 1;
+
+  /** The labels shared by all nodes of the tree this node is in, null until first needed */
+  private TreeLabels tree;
+
+  /** Pre-order entry and exit labels of this node, valid while labelVersion is current */
+  private int enter;
+
+  private int exit;
+  private int labelVersion = -1;
+
+  /**
+   * The structural hash of the subtree of this node, valid while structuralHashValid. Whenever the
+   * hash of a node is invalid so are the hashes of its ancestors.
+   */
+  private long structuralHash;
+
+  private boolean structuralHashValid;
+
+  /** Above this depth difference, ancestor tests relabel a stale tree rather than walk parents */
+  private static final int MAX_WALK_DISTANCE = 32;
+
+  /**
+   * The Euler-tour interval labels of a tree, shared by all its nodes. A node is an ancestor of
+   * another if its interval contains the interval of the other.
+   *
+   * <p>Structural changes only bump the version, the tree is relabelled lazily by the next ancestor
+   * test that needs it.
+   */
+  private static final class TreeLabels {
+
+    /** The root of the tree, null if the tree contains foreign nodes */
+    final AbstractNode<?> root;
+
+    int version;
+    int labelledVersion = -1;
+
+    /** The index of the tree, kept by the root while it stays a root */
+    NodeIndex<?> index;
+
+    /** The lock of the tree if it is concurrent, kept by the root like the index */
+    ConcurrentTree<?> concurrent;
+
+    /** The change bus of the tree, kept by the root like the index */
+    TreeChangeBus<?> changes;
+
+    TreeLabels(AbstractNode<?> root) {
+      this.root = root;
+    }
+
+    boolean isLabelled() {
+      return labelledVersion == version;
+    }
+
+    /** Labels every node reachable from the root in a single iterative pre-order pass. */
+    void relabel() {
+      // read once, a concurrent write bumping the version leaves the labels stale
+      int labelling = version;
+      int counter = 0;
+      var stack = new ArrayDeque<AbstractNode<?>>();
+      var iterators = new ArrayDeque<Iterator<? extends Node<?>>>();
+      root.enter = counter++;
+      root.labelVersion = labelling;
+      stack.push(root);
+      iterators.push(root.children.iterator());
+      while (!stack.isEmpty()) {
+        var children = iterators.peek();
+        if (children.hasNext()) {
+          var child = children.next();
+          if (child instanceof AbstractNode) {
+            var node = (AbstractNode<?>) child;
+            node.enter = counter++;
+            node.labelVersion = labelling;
+            stack.push(node);
+            iterators.push(node.children.iterator());
+          }
+        } else {
+          iterators.pop();
+          stack.pop().exit = counter++;
+        }
+      }
+      labelledVersion = labelling;
+    }
+  }
+
   /** Attributed to invalid "index, size, level, depth, position" */
   private static final int INVALID_LOCATION = -1;
 
@@ -189,7 +279,17 @@ public abstract class AbstractNode<T> implements Node<T> {
     if (level == UNDEFINED_LEVEL && parent == null) {
       level = 0;
     }
+    T previous = this.value;
     this.value = value;
+    invalidateStructuralHash();
+    var index = (NodeIndex<T>) getTreeIndex();
+    if (index != null) {
+      index.updateValue(this, previous);
+    }
+    var changes = (TreeChangeBus<T>) getChangeBus();
+    if (changes != null && !Objects.equals(previous, value)) {
+      changes.onValueChanged(this);
+    }
     return this;
   }
 
@@ -198,16 +298,195 @@ public abstract class AbstractNode<T> implements Node<T> {
     return parent;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The depth and tree of this node and its descendants are updated, as are the levels of its
+   * descendants, in a single pass over the subtree of this node.
+   */
   @Override
-  public Node<T> setParent(@NonNull Node<T> parent) {
-    if (level == UNDEFINED_LEVEL) {
-      level = parent.getLevel() + 1;
-      updateChildrenLevels();
+  public Node<T> setParent(@Nullable Node<T> parent) {
+    var leaving = beginChange();
+    var entering = parent instanceof AbstractNode ? ((AbstractNode<T>) parent).beginChange() : null;
+    try {
+      if (level == UNDEFINED_LEVEL && parent != null) {
+        level = parent.getLevel() + 1;
+      }
+      var previousParent = this.parent;
+      this.parent = parent;
+      relink(previousParent);
+    } finally {
+      endChange(entering);
+      endChange(leaving);
     }
-    this.parent = parent;
     return this;
   }
 
+  /**
+   * Updates the depth, tree and descendant levels of the subtree of this node after a move. The
+   * subtree leaves the index of the tree it leaves and enters the index of the tree it enters, the
+   * change buses of both trees are told.
+   */
+  private void relink(@Nullable Node<T> previousParent) {
+    var previous = tree;
+    if (previous != null) {
+      previous.version++; // the tree this node leaves
+    }
+    TreeLabels labels;
+    if (parent == null) {
+      labels = new TreeLabels(this);
+      if (previous != null && previous.root == this) {
+        labels.index = previous.index; // still the root
+        labels.concurrent = previous.concurrent;
+        labels.changes = previous.changes;
+      }
+      depth = 1;
+    } else if (parent instanceof AbstractNode) {
+      labels = ((AbstractNode<T>) parent).labels();
+      labels.version++;
+      depth = parent.getDepth() + 1;
+    } else {
+      labels = new TreeLabels(null);
+      depth = parent.getDepth() + 1;
+    }
+    tree = labels;
+    labelVersion = -1;
+
+    var leaving = previous == null ? null : (NodeIndex<T>) previous.index;
+    var entering = (NodeIndex<T>) labels.index;
+    boolean reindex = leaving != entering;
+    if (reindex) {
+      reindex(leaving, entering);
+    }
+    notifyRelinked(previous, labels, previousParent);
+
+    boolean concurrent = labels.concurrent != null;
+    var stack = new ArrayDeque<AbstractNode<T>>();
+    stack.push(this);
+    while (!stack.isEmpty()) {
+      var node = stack.pop();
+      if (concurrent) {
+        node.copyChildrenOnWrite();
+      }
+      for (Node<T> child : node.children) {
+        child.setLevel(node.level + 1);
+        if (child instanceof AbstractNode) {
+          var descendant = (AbstractNode<T>) child;
+          descendant.depth = node.depth + 1;
+          descendant.tree = labels;
+          descendant.labelVersion = -1;
+          if (reindex) {
+            descendant.reindex(leaving, entering);
+          }
+          stack.push(descendant);
+        } else {
+          child.updateChildrenLevels();
+        }
+      }
+    }
+  }
+
+  private void notifyRelinked(
+      @Nullable TreeLabels previous, TreeLabels labels, @Nullable Node<T> previousParent) {
+    if (previousParent == parent) return;
+
+    var leaving = previous == null ? null : (TreeChangeBus<T>) previous.changes;
+    var entering = (TreeChangeBus<T>) labels.changes;
+    // a root attached elsewhere takes its tree along rather than leaving it
+    if (leaving != null && previousParent != null) {
+      leaving.onDetached(this, previousParent);
+    }
+    if (entering != null && entering != leaving) {
+      entering.onInserted(this);
+    }
+  }
+
+  private void reindex(@Nullable NodeIndex<T> leaving, @Nullable NodeIndex<T> entering) {
+    if (leaving != null) {
+      leaving.remove(this);
+    }
+    if (entering != null) {
+      entering.add(this);
+    }
+  }
+
+  /** The index of the tree this node is in {@see NodeIndex}. */
+  @Nullable
+  NodeIndex<?> getTreeIndex() {
+    return tree == null ? null : tree.index;
+  }
+
+  /** Attaches an index to the tree this node is the root of. */
+  void setTreeIndex(@Nullable NodeIndex<T> index) {
+    labels().index = index;
+  }
+
+  /** The lock of the tree this node is in if the tree is concurrent {@see ConcurrentTree}. */
+  @Nullable
+  ConcurrentTree<?> getConcurrentTree() {
+    return tree == null ? null : tree.concurrent;
+  }
+
+  /** Makes the tree this node is the root of concurrent, or no longer concurrent if null. */
+  void setConcurrentTree(@Nullable ConcurrentTree<T> concurrent) {
+    labels().concurrent = concurrent;
+  }
+
+  /**
+   * Keeps the children of this node in a copy-on-write list, so readers iterate a snapshot while
+   * writers publish a new one. The list of a detached node is kept, it is merely slower to change.
+   */
+  void copyChildrenOnWrite() {
+    if (!(children instanceof CopyOnWriteArrayList)) {
+      children = new CopyOnWriteArrayList<>(children);
+    }
+  }
+
+  /** The change bus of the tree this node is in {@see TreeChangeBus}. */
+  @Nullable
+  TreeChangeBus<?> getChangeBus() {
+    return tree == null ? null : tree.changes;
+  }
+
+  /** Attaches a change bus to the tree this node is the root of. */
+  void setChangeBus(@Nullable TreeChangeBus<T> changes) {
+    labels().changes = changes;
+  }
+
+  /**
+   * Defers the delivery of changes to the tree of this node until {@link
+   * #endChange(TreeChangeBus)}, so listeners never see a change half made.
+   */
+  @Nullable
+  private TreeChangeBus<T> beginChange() {
+    var changes = (TreeChangeBus<T>) getChangeBus();
+    if (changes != null) {
+      changes.begin();
+    }
+    return changes;
+  }
+
+  private static void endChange(@Nullable TreeChangeBus<?> changes) {
+    if (changes != null) {
+      changes.end();
+    }
+  }
+
+  private void notifyReordered() {
+    var changes = (TreeChangeBus<T>) getChangeBus();
+    if (changes != null) {
+      changes.onReordered(this);
+    }
+  }
+
+  private TreeLabels labels() {
+    if (tree == null) {
+      // never attached, this node is the root of its own tree
+      tree = new TreeLabels(this);
+    }
+    return tree;
+  }
+
   @Override
   public Node<T> addChild(Node<T> child) {
     addChild(child, null);
@@ -216,18 +495,29 @@ public abstract class AbstractNode<T> implements Node<T> {
 
   @Override
   public Node<T> addChild(Node<T> child, int index) {
-    updateChildProps(child);
-    children.add(index, child);
+    var changes = beginChange();
+    try {
+      updateChildProps(child);
+      children.add(index, child);
+    } finally {
+      endChange(changes);
+    }
     return this;
   }
 
   @Override
   public Node<T> addChild(@NonNull Node<T> child, @Nullable Comparator<Node<T>> comparator) {
-    updateChildProps(child);
-    children.add(child);
-
-    if (comparator != null) {
-      children.sort(comparator);
+    var changes = beginChange();
+    try {
+      updateChildProps(child);
+      children.add(child);
+
+      if (comparator != null) {
+        children.sort(comparator);
+        notifyReordered();
+      }
+    } finally {
+      endChange(changes);
     }
     return this;
   }
@@ -240,17 +530,29 @@ public abstract class AbstractNode<T> implements Node<T> {
 
   @Override
   public Node<T> addChildren(Node<T>[] children) {
-    for (Node<T> child : children) {
-      addChild(child);
-    }
+    addChildren(Arrays.asList(children), null);
     return this;
   }
 
   @Override
   public Node<T> addChildren(
       @NonNull List<Node<T>> children, @Nullable Comparator<Node<T>> comparator) {
-    for (Node<T> child : children) {
-      addChild(child, comparator);
+    var changes = beginChange();
+    try {
+      int index = this.children.size();
+      for (Node<T> child : children) {
+        updateChildProps(child);
+        child.setIndex(index++);
+      }
+      // added at once, a copy-on-write list is copied once rather than once per child
+      this.children.addAll(children);
+      // sorted once rather than after every child
+      if (comparator != null) {
+        this.children.sort(comparator);
+        notifyReordered();
+      }
+    } finally {
+      endChange(changes);
     }
     return this;
   }
@@ -258,13 +560,20 @@ public abstract class AbstractNode<T> implements Node<T> {
   @Override
   public Node<T> sortChildren(@NonNull Comparator<Node<T>> comparator) {
     children.sort(comparator);
+    invalidateStructuralHash();
+    notifyReordered();
     return this;
   }
 
   @Override
   public Node<T> updateChildren(List<Node<T>> children, @Nullable Comparator<Node<T>> comparator) {
-    removeAllChildren();
-    addChildren(children, comparator);
+    var changes = beginChange();
+    try {
+      removeAllChildren();
+      addChildren(children, comparator);
+    } finally {
+      endChange(changes);
+    }
     return this;
   }
 
@@ -288,8 +597,14 @@ public abstract class AbstractNode<T> implements Node<T> {
   public int removeChild(Node<T> child) {
     int index = children.indexOf(child);
     if (index >= 0) {
-      children.remove(index);
-      child.setParent(null);
+      var changes = beginChange();
+      try {
+        children.remove(index);
+        child.setParent(null);
+        invalidateStructuralHash();
+      } finally {
+        endChange(changes);
+      }
       return index;
     }
     return INVALID_LOCATION; // child not found
@@ -298,11 +613,16 @@ public abstract class AbstractNode<T> implements Node<T> {
   @Override
   public int removeAllChildren() {
     int numChildren = children.size();
-    Iterator<Node<T>> iterator = children.iterator();
-    while (iterator.hasNext()) {
-      Node<T> child = iterator.next();
-      child.setParent(null); // Update child's parent reference
-      iterator.remove();
+    var changes = beginChange();
+    try {
+      for (Node<T> child : children) {
+        child.setParent(null); // Update child's parent reference
+      }
+      // cleared at once, copy-on-write iterators do not remove
+      children.clear();
+      invalidateStructuralHash();
+    } finally {
+      endChange(changes);
     }
     return numChildren;
   }
@@ -324,13 +644,6 @@ public abstract class AbstractNode<T> implements Node<T> {
 
   @Override
   public int getDepth() {
-    int depth = 0;
-
-    Node<T> root = this;
-    while (root != null) {
-      depth++;
-      root = root.getParent();
-    }
     return depth;
   }
 
@@ -360,10 +673,9 @@ public abstract class AbstractNode<T> implements Node<T> {
 
   @Override
   public int getBreadth() {
-    final int[] breadth = {0};
     INext<T> next = node -> node.hasChildren();
-    new BFS<T>().traverse(this, nv -> breadth[0]++, next);
-    return breadth[0] - 1; // breadth = exclusion of parent
+    long breadth = new ParallelTraversal<T>().count(this, node -> true, next);
+    return (int) breadth - 1; // breadth = exclusion of parent
   }
 
   /**
@@ -372,14 +684,7 @@ public abstract class AbstractNode<T> implements Node<T> {
    * @return the node level
    */
   public int getApparentLevel() {
-    int depth = 0; // Plausible root location, +1 per ancestor
-
-    Node parent = this.getParent();
-    while (parent != null) {
-      depth++;
-      parent = parent.getParent();
-    }
-    return depth;
+    return depth - 1; // Plausible root location, +1 per ancestor
   }
 
   @Override
@@ -415,13 +720,19 @@ public abstract class AbstractNode<T> implements Node<T> {
 
   @Override
   public String getAncestorPath() {
-    StringBuilder path = new StringBuilder();
-    Node<T> node = this;
+    // collected leaf to root then appended in reverse, inserting at the front is quadratic
+    int[] levels = new int[depth];
+    int count = 0;
+    for (Node<T> node = this; node != null; node = node.getParent()) {
+      if (count == levels.length) {
+        levels = Arrays.copyOf(levels, count * 2);
+      }
+      levels[count++] = node.getLevel();
+    }
 
-    while (node.getParent() != null) {
-      path.insert(
-          0, NODE_SEPARATOR + node.getParent().getLevel() + NODE_SEPARATOR + node.getLevel());
-      node = node.getParent();
+    StringBuilder path = new StringBuilder();
+    for (int i = count - 1; i > 0; i--) {
+      path.append(NODE_SEPARATOR).append(levels[i]).append(NODE_SEPARATOR).append(levels[i - 1]);
     }
     return path.toString();
   }
@@ -432,7 +743,13 @@ public abstract class AbstractNode<T> implements Node<T> {
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   public Node<T> getRoot() {
+    var labels = labels();
+    if (labels.root != null) {
+      return (Node<T>) labels.root;
+    }
+
     Node<T> currentNode = this;
     while (currentNode.getParent() != null) {
       currentNode = currentNode.getParent();
@@ -487,6 +804,10 @@ public abstract class AbstractNode<T> implements Node<T> {
   @Nullable
   @Override
   public UUID getID() {
+    // racing threads derive equal UUIDs
+    if (mUUID == null) {
+      mUUID = SequentialIdAllocator.toUUID(id);
+    }
     return mUUID;
   }
 
@@ -495,6 +816,11 @@ public abstract class AbstractNode<T> implements Node<T> {
     this.mUUID = id;
   }
 
+  @Override
+  public long getNumericID() {
+    return id;
+  }
+
   @Override
   public int getIndex() {
     return index;
@@ -508,8 +834,13 @@ public abstract class AbstractNode<T> implements Node<T> {
 
   @Override
   public List<Node<T>> listNeighbours(boolean includeNode) {
-    // No-op
-    return null;
+    List<Node<T>> neighbours = new ArrayList<>();
+    Iterator<Node<T>> iterator = iterator(Order.PRE);
+    if (!includeNode) {
+      iterator.next();
+    }
+    iterator.forEachRemaining(neighbours::add);
+    return neighbours;
   }
 
   /**
@@ -534,21 +865,64 @@ public abstract class AbstractNode<T> implements Node<T> {
     }
   }
 
-  /** Generates a unique UUID for the node */
-  protected synchronized void generateID() {
-    UUID id;
-    do {
-      id = UUID.randomUUID();
-    } while (generatedIds.contains(id));
-    generatedIds.add(id);
-    mUUID = id;
+  /** Allocates a unique identifier for the node, its UUID is derived lazily {@see #getID()} */
+  protected void generateID() {
+    id = sIdAllocator.allocate();
+    mUUID = null;
+  }
+
+  /**
+   * Sets the allocator of the identifiers of nodes created from now on, e.g. a {@link
+   * BlockIdAllocator} while building a tree on several threads.
+   *
+   * @param allocator the allocator
+   */
+  public static void setIdAllocator(@NonNull NodeIdAllocator allocator) {
+    sIdAllocator = Objects.requireNonNull(allocator);
+  }
+
+  /**
+   * @return the allocator of the identifiers of new nodes
+   */
+  @NonNull
+  public static NodeIdAllocator getIdAllocator() {
+    return sIdAllocator;
   }
 
   public boolean isSameNode(Node<T> other) {
     return this == other;
   }
 
+  /**
+   * Checks if this node is the node or an ancestor of the node.
+   *
+   * <p>Nodes of different trees are told apart in constant time. Within a tree the interval labels
+   * of the nodes are compared, the tree is relabelled first if it changed since it was last
+   * labelled and the nodes are too far apart to just walk up.
+   *
+   * @param node the node
+   * @return true if this node is the node or one of its ancestors
+   */
   public boolean isParentOf(Node<T> node) {
+    if (node == this) return true;
+
+    if (node instanceof AbstractNode) {
+      var other = (AbstractNode<T>) node;
+      var labels = labels();
+      if (labels.root != null) {
+        if (other.labels() != labels || other.depth <= depth) return false;
+
+        if (!labels.isLabelled() && other.depth - depth > MAX_WALK_DISTANCE) {
+          labels.relabel();
+        }
+        if (labels.isLabelled()
+            && labelVersion == labels.version
+            && other.labelVersion == labels.version) {
+          return enter < other.enter && other.exit < exit;
+        }
+      }
+    }
+
     Node<T> other = node;
     while (other != null) {
       if (other == this) {
@@ -565,10 +939,53 @@ public abstract class AbstractNode<T> implements Node<T> {
   }
 
   protected void updateChildProps(Node<T> child) {
-    child.setParent(this);
     child.setLevel(level + 1);
     child.setIndex(children.size());
-    child.updateChildrenLevels();
+    // abstract nodes update the levels of their subtree while relinking it
+    child.setParent(this);
+    if (!(child instanceof AbstractNode)) {
+      child.updateChildrenLevels();
+    }
+    invalidateStructuralHash();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The hash is cached and only recomputed, for the changed nodes only, once this node or a
+   * descendant changed. Caching assumes descendants are abstract nodes, changes made to other nodes
+   * are not seen.
+   */
+  @Override
+  public long getStructuralHash() {
+    return structuralHashValid ? structuralHash : StructuralHash.of(this);
+  }
+
+  boolean hasStructuralHash() {
+    return structuralHashValid;
+  }
+
+  void cacheStructuralHash(long hash) {
+    var concurrent = getConcurrentTree();
+    if (concurrent != null && !concurrent.isWriteLockedByCurrentThread()) {
+      return; // a reader could cache the hash of a subtree being changed
+    }
+    structuralHash = hash;
+    structuralHashValid = true;
+  }
+
+  /**
+   * Drops the cached structural hash of this node and its ancestors. Subclasses must call it when
+   * changing state the hash depends on.
+   */
+  protected void invalidateStructuralHash() {
+    Node<T> node = this;
+    while (node instanceof AbstractNode) {
+      var abstractNode = (AbstractNode<T>) node;
+      if (!abstractNode.structuralHashValid) break; // so are its ancestors
+      abstractNode.structuralHashValid = false;
+      node = abstractNode.parent;
+    }
   }
 
   static IndexOutOfBoundsException throwIndexOutOfBoundsException(int index, int size) {
@@ -589,46 +1006,56 @@ public abstract class AbstractNode<T> implements Node<T> {
     return result;
   }
 
-  @SuppressWarnings("unchecked")
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Nodes are equal if they have the same identifier, value, parent identifier, level, index and
+   * equal children. Nodes with different identifiers or structural hashes are told apart without
+   * walking their subtrees, a match is confirmed by an iterative walk of both subtrees.
+   */
   @Override
   public final boolean equals(Object object) {
     if (this == object) return true;
-    if (object instanceof Node) {
-
-      Node<T> other = (Node<T>) object;
-
-      if (!Objects.equals(mUUID, other.getID())) return false;
-      if (childrenSize() != other.childrenSize()) return false;
-      if (!Objects.equals(value, other.getValue())) return false;
-      if (!Objects.equals(parent, other.getParent())) return false;
-      if (!Objects.equals(level, other.getLevel())) return false;
-      if (!Objects.equals(index, other.getIndex())) return false;
-
-      try {
-        List<Node<T>> thisList = getChildren();
-        List<Node<T>> otherList = other.getChildren();
-
-        for (int i = 0; i < thisList.size(); i++) {
-          Node<?> thisChild = thisList.get(i);
-          Node<?> otherChild = otherList.get(i);
-
-          if (thisChild == otherChild) {
-            continue;
-          } else if (thisChild == null || otherChild == null) {
-            return false;
-          }
-
-          // recursively check child generation
-          if (!thisChild.equals(otherChild)) {
-            return false;
-          }
+    if (!(object instanceof Node)) return false;
+
+    Node<?> other = (Node<?>) object;
+    if (!isSameNode(this, other)) return false;
+    if (!Objects.equals(getParentID(this), getParentID(other))) return false;
+    if (getStructuralHash() != other.getStructuralHash()) return false;
+
+    var pending = new ArrayDeque<Node<?>>();
+    pending.push(this);
+    pending.push(other);
+    while (!pending.isEmpty()) {
+      Node<?> otherNode = pending.pop();
+      Node<?> thisNode = pending.pop();
+      Iterator<? extends Node<?>> thisChildren = thisNode.getChildren().iterator();
+      Iterator<? extends Node<?>> otherChildren = otherNode.getChildren().iterator();
+      while (thisChildren.hasNext() && otherChildren.hasNext()) {
+        Node<?> thisChild = thisChildren.next();
+        Node<?> otherChild = otherChildren.next();
+        if (thisChild == otherChild) continue;
+        if (thisChild == null || otherChild == null || !isSameNode(thisChild, otherChild)) {
+          return false;
         }
-      } catch (NullPointerException ignored) {
-        return false;
+        pending.push(thisChild);
+        pending.push(otherChild);
       }
-      return true;
     }
-    return false;
+    return true;
+  }
+
+  /** Compares the properties of two nodes, not their subtrees. */
+  private static boolean isSameNode(Node<?> node, Node<?> other) {
+    return Objects.equals(node.getID(), other.getID())
+        && node.childrenSize() == other.childrenSize()
+        && Objects.equals(node.getValue(), other.getValue())
+        && node.getLevel() == other.getLevel()
+        && node.getIndex() == other.getIndex();
+  }
+
+  private static UUID getParentID(Node<?> node) {
+    return node.getParent() == null ? null : node.getParent().getID();
   }
 
   @Override
@@ -636,17 +1063,8 @@ public abstract class AbstractNode<T> implements Node<T> {
     int leafCount = 0;
 
     if (includeDescendants) {
-      Queue<Node<T>> queue = new LinkedList<>();
-      queue.add(this);
-
-      while (!queue.isEmpty()) {
-        Node<T> currentNode = queue.poll();
-        if (currentNode.isLeaf()) {
-          leafCount++;
-        } else {
-          queue.addAll(currentNode.getChildren());
-        }
-      }
+      INext<T> next = node -> node.hasChildren();
+      leafCount = (int) new ParallelTraversal<T>().count(this, Node::isLeaf, next);
     } else {
       for (Node<T> child : this.getChildren()) {
         if (child.isLeaf()) {
@@ -661,18 +1079,12 @@ public abstract class AbstractNode<T> implements Node<T> {
   /**
    * {@inheritDoc}
    *
-   * <p>This implementation iterates its children, summing the hashcodes of its child nodes.
+   * <p>This implementation combines the identifier of this node with its cached structural hash
+   * {@see #getStructuralHash()} rather than hashing its children and parent on every call.
    */
   @Override
   public int hashCode() {
-    int result = 1;
-    Iterator<Node<T>> it = children.iterator();
-    while (it.hasNext()) {
-      Object object = it.next();
-      result = (31 * result) + (object == null ? 0 : object.hashCode());
-    }
-    result = getHash(result, mUUID, value, parent);
-    return result;
+    return getHash(Long.hashCode(getStructuralHash()), getID());
   }
 
   @Override
@@ -682,7 +1094,7 @@ public abstract class AbstractNode<T> implements Node<T> {
         getClass().getSimpleName(),
         Integer.toHexString(System.identityHashCode(this)),
         hashCode(),
-        mUUID.toString(),
+        getID(),
         value,
         level,
         index,
@@ -690,33 +1102,20 @@ public abstract class AbstractNode<T> implements Node<T> {
         isRoot());
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The braces of the object of this node are left to subclasses, its descendants are written
+   * as complete objects in a single iterative pass {@see TreeJsonWriter}.
+   */
   @Override
   public String toJsonString(int indent) {
-    String indentStr = "\t".repeat(indent);
-    StringBuilder sb = new StringBuilder();
-    List<Node<T>> children = getChildren();
-    int level = getLevel();
-
-    // Start JSON in sub-class -> {
-    sb.append(indentStr).append("\t\"value\": \"").append(value).append("\",\n");
-    sb.append(indentStr).append("\t\"level\": ").append(level).append(",\n");
-    sb.append(indentStr).append("\t\"depth\": ").append(getDepth()).append(",\n");
-    sb.append(indentStr)
-        .append("\t\"parent\": ")
-        .append(parent != null ? "\"" + parent.getValue() + "\"" : "null")
-        .append(",\n");
-
-    sb.append(indentStr).append("\t\"children\": [\n");
-
-    for (int i = 0; i < children.size(); i++) {
-      sb.append(children.get(i).toJsonString(indent + 1));
-      if (i < children.size() - 1) {
-        sb.append(",\n");
-      }
+    var sb = new StringBuilder();
+    try {
+      new TreeJsonWriter(sb).writeMembers(this, indent);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // never thrown by a StringBuilder
     }
-
-    sb.append("\n").append(indentStr).append("\t]\n");
-    // Close JSON in sub-class -> }
     return sb.toString();
   }
 }
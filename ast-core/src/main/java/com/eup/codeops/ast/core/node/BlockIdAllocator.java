@@ -0,0 +1,67 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.node;
+
+/**
+ * A {@link NodeIdAllocator} for builders creating nodes on several threads.
+ *
+ * <p>Each thread reserves a block of identifiers from the {@link SequentialIdAllocator} then
+ * allocates from it without touching shared state, so threads only contend once per block.
+ * Identifiers are unique but only increasing per thread.
+ *
+ * @author EUP
+ */
+public final class BlockIdAllocator implements NodeIdAllocator {
+
+  public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+  private final int mBlockSize;
+
+  // {next, end} of the block of the current thread
+  private final ThreadLocal<long[]> mBlocks = ThreadLocal.withInitial(() -> new long[2]);
+
+  public BlockIdAllocator() {
+    this(DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * @param blockSize the number of identifiers a thread reserves at once, positive
+   */
+  public BlockIdAllocator(int blockSize) {
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("Invalid block size: " + blockSize);
+    }
+    mBlockSize = blockSize;
+  }
+
+  @Override
+  public long allocate() {
+    long[] block = mBlocks.get();
+    if (block[0] == block[1]) {
+      block[0] = SequentialIdAllocator.getInstance().allocateBlock(mBlockSize);
+      block[1] = block[0] + mBlockSize;
+    }
+    return block[0]++;
+  }
+}
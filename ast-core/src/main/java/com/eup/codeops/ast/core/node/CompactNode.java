@@ -0,0 +1,452 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.node;
+
+import static com.eup.codeops.ast.core.node.CompactTree.NO_NODE;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.eup.codeops.ast.core.exception.InvalidRangeException;
+import com.eup.codeops.ast.core.util.TreeJsonWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A flyweight {@link Node} view of a node of a {@link CompactTree}, holding only the tree and the
+ * index of the node. Every call reads or writes the columns of the tree.
+ *
+ * <p>Nodes of other backends added to a view are copied into the tree, {@link #getChildren()}
+ * returns an unmodifiable snapshot and {@link #getIndex()} is the position of the node among its
+ * siblings.
+ *
+ * @param <T> the type of data stored in the node
+ * @author EUP
+ */
+final class CompactNode<T> implements Node<T> {
+
+  final CompactTree<T> mTree;
+  final int mIndex;
+
+  CompactNode(CompactTree<T> tree, int index) {
+    mTree = tree;
+    mIndex = index;
+  }
+
+  private Node<T> view(int node) {
+    return node == NO_NODE ? null : new CompactNode<>(mTree, node);
+  }
+
+  /** Returns the index of a node of this tree, copying nodes of other backends detached. */
+  private int adopt(Node<T> child) {
+    int index = mTree.indexOf(child);
+    if (index == NO_NODE) {
+      return mTree.copy(child, NO_NODE);
+    }
+    if (mTree.isAncestor(index, mIndex)) {
+      throw new IllegalArgumentException("A node cannot be added to its own subtree");
+    }
+    mTree.detach(index);
+    return index;
+  }
+
+  @Override
+  public T getValue() {
+    return mTree.getValue(mIndex);
+  }
+
+  @Override
+  public Node<T> setValue(T value) {
+    mTree.setValue(mIndex, value);
+    return this;
+  }
+
+  @Override
+  public Node<T> getParent() {
+    return view(mTree.getParent(mIndex));
+  }
+
+  @Override
+  public Node<T> setParent(@Nullable Node<T> parent) {
+    if (parent == null) {
+      mTree.detach(mIndex);
+    } else {
+      int index = mTree.indexOf(parent);
+      if (index == NO_NODE) {
+        throw new IllegalArgumentException("The parent must be a node of the same tree");
+      }
+      mTree.detach(mIndex);
+      mTree.attach(index, mIndex, mTree.getChildCount(index));
+    }
+    return this;
+  }
+
+  @Override
+  public Node<T> addChild(Node<T> child) {
+    return addChild(child, null);
+  }
+
+  @Override
+  public Node<T> addChild(Node<T> child, int index) {
+    mTree.attach(mIndex, adopt(child), index);
+    return this;
+  }
+
+  @Override
+  public Node<T> addChild(@NonNull Node<T> child, @Nullable Comparator<Node<T>> comparator) {
+    mTree.attach(mIndex, adopt(child), mTree.getChildCount(mIndex));
+    if (comparator != null) {
+      mTree.sortChildren(mIndex, comparator);
+    }
+    return this;
+  }
+
+  @Override
+  public Node<T> addChildren(List<Node<T>> children) {
+    return addChildren(children, null);
+  }
+
+  @Override
+  public Node<T> addChildren(Node<T>[] children) {
+    for (Node<T> child : children) {
+      addChild(child);
+    }
+    return this;
+  }
+
+  @Override
+  public Node<T> addChildren(
+      @NonNull List<Node<T>> children, @Nullable Comparator<Node<T>> comparator) {
+    for (Node<T> child : children) {
+      mTree.attach(mIndex, adopt(child), mTree.getChildCount(mIndex));
+    }
+    // sorted once rather than after every child
+    if (comparator != null) {
+      mTree.sortChildren(mIndex, comparator);
+    }
+    return this;
+  }
+
+  @Override
+  public Node<T> sortChildren(@NonNull Comparator<Node<T>> comparator) {
+    mTree.sortChildren(mIndex, comparator);
+    return this;
+  }
+
+  @Override
+  public Node<T> updateChildren(
+      @NonNull List<Node<T>> children, @Nullable Comparator<Node<T>> comparator) {
+    removeAllChildren();
+    return addChildren(children, comparator);
+  }
+
+  @Override
+  public List<Node<T>> getChildren() {
+    int count = mTree.getChildCount(mIndex);
+    if (count == 0) return Collections.emptyList();
+
+    var children = new ArrayList<Node<T>>(count);
+    for (int child = mTree.getFirstChild(mIndex);
+        child != NO_NODE;
+        child = mTree.getNextSibling(child)) {
+      children.add(new CompactNode<>(mTree, child));
+    }
+    return Collections.unmodifiableList(children);
+  }
+
+  @Override
+  public Node<T> getChild(int index) {
+    return view(mTree.getChildAt(mIndex, index));
+  }
+
+  @Override
+  public int removeChild(Node<T> child) {
+    int index = mTree.indexOf(child);
+    if (index == NO_NODE || mTree.getParent(index) != mIndex) return -1;
+    return mTree.detach(index);
+  }
+
+  @Override
+  public int removeAllChildren() {
+    int count = mTree.getChildCount(mIndex);
+    int child = mTree.getFirstChild(mIndex);
+    while (child != NO_NODE) {
+      int next = mTree.getNextSibling(child);
+      mTree.detach(child);
+      child = next;
+    }
+    return count;
+  }
+
+  @Override
+  public boolean isLeaf() {
+    return mTree.getChildCount(mIndex) == 0;
+  }
+
+  @Override
+  public boolean hasChildren() {
+    return mTree.getChildCount(mIndex) > 0;
+  }
+
+  @Override
+  public int childrenSize() {
+    return mTree.getChildCount(mIndex);
+  }
+
+  @Override
+  public int getDepth() {
+    int depth = 0;
+    for (int node = mIndex; node != NO_NODE; node = mTree.getParent(node)) {
+      depth++;
+    }
+    return depth;
+  }
+
+  @Override
+  public int getApparentDepth() {
+    return getLevel() + mTree.getPosition(mIndex);
+  }
+
+  @Override
+  public int getBreadth() {
+    return mTree.getSubtreeSize(mIndex) - 1;
+  }
+
+  @Override
+  public int getLevel() {
+    return mTree.getLevel(mIndex);
+  }
+
+  @Override
+  public Node<T> setLevel(int level) {
+    mTree.setLevel(mIndex, level);
+    return this;
+  }
+
+  @Override
+  public Node<T> updateChildrenLevels() {
+    mTree.updateLevels(mIndex, getLevel());
+    return this;
+  }
+
+  @Override
+  public Node<T> updateDirectChildrenLevels(int level) {
+    for (int child = mTree.getFirstChild(mIndex);
+        child != NO_NODE;
+        child = mTree.getNextSibling(child)) {
+      mTree.setLevel(child, level + 1);
+    }
+    return this;
+  }
+
+  @Override
+  public String getAncestorPath() {
+    var path = new StringBuilder();
+    for (int node = mIndex; mTree.getParent(node) != NO_NODE; node = mTree.getParent(node)) {
+      path.insert(
+          0,
+          NODE_SEPARATOR
+              + mTree.getLevel(mTree.getParent(node))
+              + NODE_SEPARATOR
+              + mTree.getLevel(node));
+    }
+    return path.toString();
+  }
+
+  @Override
+  public boolean isRoot() {
+    return mTree.getParent(mIndex) == NO_NODE;
+  }
+
+  @Override
+  public Node<T> getRoot() {
+    int node = mIndex;
+    while (mTree.getParent(node) != NO_NODE) {
+      node = mTree.getParent(node);
+    }
+    return view(node);
+  }
+
+  @Override
+  public boolean isLastChild() {
+    return !isRoot() && mTree.getNextSibling(mIndex) == NO_NODE;
+  }
+
+  @Override
+  public boolean isFirstChild() {
+    return !isRoot() && mTree.getFirstChild(mTree.getParent(mIndex)) == mIndex;
+  }
+
+  @Override
+  public Node<T> getLastChildNode() {
+    return view(mTree.getLastChild(mIndex));
+  }
+
+  @Override
+  public Node<T> getFirstChildNode() {
+    return view(mTree.getFirstChild(mIndex));
+  }
+
+  @Override
+  public Node<T> getLastSibling() {
+    int parent = mTree.getParent(mIndex);
+    return parent == NO_NODE ? null : view(mTree.getLastChild(parent));
+  }
+
+  @Override
+  public Node<T> getFirstSibling() {
+    int parent = mTree.getParent(mIndex);
+    return parent == NO_NODE ? null : view(mTree.getFirstChild(parent));
+  }
+
+  @Override
+  public String toJsonString(int indent) {
+    return TreeJsonWriter.toJsonString(this, indent);
+  }
+
+  /** {@inheritDoc} The index of a compact node is derived from its position among its siblings. */
+  @Override
+  public int getIndex() {
+    return mTree.getPosition(mIndex);
+  }
+
+  /** No-op, the index of a compact node is derived from its position among its siblings. */
+  @Override
+  public Node<T> setIndex(int index) {
+    return this;
+  }
+
+  @Override
+  public List<Node<T>> listNeighbours(boolean includeNode) {
+    var neighbours = new ArrayList<Node<T>>();
+    int node = mIndex;
+    while (true) {
+      if (node != mIndex || includeNode) {
+        neighbours.add(new CompactNode<>(mTree, node));
+      }
+      int child = mTree.getFirstChild(node);
+      if (child != NO_NODE) {
+        node = child;
+        continue;
+      }
+      while (node != mIndex && mTree.getNextSibling(node) == NO_NODE) {
+        node = mTree.getParent(node);
+      }
+      if (node == mIndex) return neighbours;
+      node = mTree.getNextSibling(node);
+    }
+  }
+
+  @Override
+  public void removeRange(int fromIndex, int toIndex) {
+    int s = childrenSize();
+
+    if (s <= 0 || fromIndex >= s || toIndex > s || fromIndex > toIndex) {
+      throw InvalidRangeException.throwException(fromIndex, toIndex, s);
+    }
+
+    int child = mTree.getChildAt(mIndex, fromIndex);
+    for (int i = fromIndex; i < toIndex; i++) {
+      int next = mTree.getNextSibling(child);
+      mTree.detach(child);
+      child = next;
+    }
+  }
+
+  @Nullable
+  @Override
+  public UUID getID() {
+    return mTree.getID(mIndex);
+  }
+
+  @Override
+  public long getNumericID() {
+    return mTree.getNumericID(mIndex);
+  }
+
+  @Override
+  public int getLeafCount(boolean includeDescendants) {
+    int leafCount = 0;
+    if (includeDescendants) {
+      int node = mIndex;
+      while (true) {
+        int child = mTree.getFirstChild(node);
+        if (child != NO_NODE) {
+          node = child;
+          continue;
+        }
+        leafCount++;
+        while (node != mIndex && mTree.getNextSibling(node) == NO_NODE) {
+          node = mTree.getParent(node);
+        }
+        if (node == mIndex) return leafCount;
+        node = mTree.getNextSibling(node);
+      }
+    }
+    for (int child = mTree.getFirstChild(mIndex);
+        child != NO_NODE;
+        child = mTree.getNextSibling(child)) {
+      if (mTree.getChildCount(child) == 0) {
+        leafCount++;
+      }
+    }
+    return leafCount;
+  }
+
+  @Override
+  public void setID(UUID id) {
+    mTree.setID(mIndex, id);
+  }
+
+  /** Views are equal if they are views of the same node of the same tree. */
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) return true;
+    if (!(object instanceof CompactNode)) return false;
+
+    var other = (CompactNode<?>) object;
+    return mTree == other.mTree && mIndex == other.mIndex;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * System.identityHashCode(mTree) + mIndex;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s@%s (index=%d, uuid=%s, value=%s, level=%s, leaf=%s, root=%s)",
+        getClass().getSimpleName(),
+        Integer.toHexString(System.identityHashCode(mTree)),
+        mIndex,
+        getID(),
+        getValue(),
+        getLevel(),
+        isLeaf(),
+        isRoot());
+  }
+}
@@ -0,0 +1,511 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.node;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A compact backend for large trees, e.g. syntax outlines of hundreds of thousands of nodes.
+ *
+ * <p>Instead of one object per node, the structure of the tree is kept in primitive columns indexed
+ * by node: parent, first child, last child, next sibling, child count, level and value index. The
+ * columns grow in fixed size chunks so growing never copies existing nodes. Values are kept in a
+ * separate table the value index points into, equal values may share one slot {@see
+ * #CompactTree(boolean)}.
+ *
+ * <p>Nodes are handed out as flyweight {@link Node} views {@see #getNode(int)} holding only the
+ * tree and the node index, so existing traversals, visitors and filters work on a compact tree
+ * unchanged. Two views of the same node are equal. Performance sensitive code may instead walk the
+ * columns directly through the index based accessors.
+ *
+ * <pre>
+ * CompactTree&lt;String&gt; tree = new CompactTree&lt;&gt;();
+ * int root = tree.add(CompactTree.NO_NODE, "Root");
+ * int child = tree.add(root, "Child 1");
+ * tree.add(root, "Child 2");
+ *
+ * Node&lt;String&gt; node = tree.getNode(root);
+ * new DFS&lt;String&gt;().traverse(node, visitor, next);
+ * </pre>
+ *
+ * <p>Nodes removed from their parent stay in the tree as detached roots, their slots are not
+ * reused. This class is not thread safe.
+ *
+ * @param <T> the type of data stored in the nodes
+ * @author EUP
+ */
+public final class CompactTree<T> {
+
+  /** The index of a missing node, e.g. the parent of a root. */
+  public static final int NO_NODE = -1;
+
+  // the value index of a null value
+  private static final int NO_VALUE = -1;
+
+  private final IntColumn mParents = new IntColumn();
+  private final IntColumn mFirstChildren = new IntColumn();
+  private final IntColumn mLastChildren = new IntColumn();
+  private final IntColumn mNextSiblings = new IntColumn();
+  private final IntColumn mChildCounts = new IntColumn();
+  private final IntColumn mLevels = new IntColumn();
+  private final IntColumn mValueIndexes = new IntColumn();
+  private final LongColumn mIds = new LongColumn();
+
+  private final List<T> mValues = new ArrayList<>();
+  // value -> value index, null if values are not shared
+  private final Map<T, Integer> mInternedValues;
+  // UUIDs set explicitly, all others are derived from the node identifier
+  private final Map<Integer, UUID> mUUIDs = new HashMap<>();
+
+  private int mSize;
+
+  /** Creates a tree where every node has its own value slot. */
+  public CompactTree() {
+    this(false);
+  }
+
+  /**
+   * @param internValues true to store equal values once, e.g. repeated token kinds. Values must
+   *     then be immutable and implement {@code equals} and {@code hashCode}.
+   */
+  public CompactTree(boolean internValues) {
+    mInternedValues = internValues ? new HashMap<>() : null;
+  }
+
+  /**
+   * Copies a tree of any backend into a new compact tree.
+   *
+   * @param root the root of the tree to copy
+   * @return the compact copy, its root is the node at index 0
+   */
+  @NonNull
+  public static <T> CompactTree<T> copyOf(@NonNull Node<T> root) {
+    var tree = new CompactTree<T>();
+    tree.copy(root, NO_NODE);
+    return tree;
+  }
+
+  /**
+   * @return the number of nodes, including detached ones
+   */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * Adds a node, appended to the children of its parent.
+   *
+   * @param parent the index of the parent, or {@link #NO_NODE} to add a root
+   * @param value the value of the node
+   * @return the index of the new node
+   */
+  public int add(int parent, @Nullable T value) {
+    if (parent != NO_NODE) {
+      checkIndex(parent);
+    }
+    int node = mSize++;
+    mParents.set(node, NO_NODE);
+    mFirstChildren.set(node, NO_NODE);
+    mLastChildren.set(node, NO_NODE);
+    mNextSiblings.set(node, NO_NODE);
+    mChildCounts.set(node, 0);
+    mLevels.set(node, AbstractNode.ROOT_LEVEL);
+    mValueIndexes.set(node, NO_VALUE);
+    mIds.set(node, AbstractNode.getIdAllocator().allocate());
+    setValue(node, value);
+    if (parent != NO_NODE) {
+      attach(parent, node, mChildCounts.get(parent));
+    }
+    return node;
+  }
+
+  /**
+   * Creates a detached root node.
+   *
+   * @param value the value of the node
+   * @return the view of the new node
+   */
+  @NonNull
+  public Node<T> createNode(@Nullable T value) {
+    return getNode(add(NO_NODE, value));
+  }
+
+  /**
+   * Returns a view of a node. Views are cheap and not cached, a new one is returned by every call.
+   *
+   * @param node the index of the node
+   * @return the view
+   */
+  @NonNull
+  public Node<T> getNode(int node) {
+    checkIndex(node);
+    return new CompactNode<>(this, node);
+  }
+
+  /**
+   * @param node a node of any backend
+   * @return the index of the node if it is a view of this tree, {@link #NO_NODE} otherwise
+   */
+  public int indexOf(@Nullable Node<?> node) {
+    if (node instanceof CompactNode && ((CompactNode<?>) node).mTree == this) {
+      return ((CompactNode<?>) node).mIndex;
+    }
+    return NO_NODE;
+  }
+
+  public int getParent(int node) {
+    return mParents.get(node);
+  }
+
+  public int getFirstChild(int node) {
+    return mFirstChildren.get(node);
+  }
+
+  public int getLastChild(int node) {
+    return mLastChildren.get(node);
+  }
+
+  public int getNextSibling(int node) {
+    return mNextSiblings.get(node);
+  }
+
+  public int getChildCount(int node) {
+    return mChildCounts.get(node);
+  }
+
+  public int getLevel(int node) {
+    return mLevels.get(node);
+  }
+
+  /**
+   * @param node the index of the node
+   * @return the index of the value in the value table, -1 for a {@code null} value
+   */
+  public int getValueIndex(int node) {
+    return mValueIndexes.get(node);
+  }
+
+  @Nullable
+  public T getValue(int node) {
+    int valueIndex = mValueIndexes.get(node);
+    return valueIndex == NO_VALUE ? null : mValues.get(valueIndex);
+  }
+
+  public void setValue(int node, @Nullable T value) {
+    int valueIndex = mValueIndexes.get(node);
+    if (value == null) {
+      valueIndex = NO_VALUE;
+    } else if (mInternedValues != null) {
+      valueIndex =
+          mInternedValues.computeIfAbsent(
+              value,
+              any -> {
+                mValues.add(value);
+                return mValues.size() - 1;
+              });
+    } else if (valueIndex == NO_VALUE) {
+      mValues.add(value);
+      valueIndex = mValues.size() - 1;
+    } else {
+      // the slot is owned by this node
+      mValues.set(valueIndex, value);
+    }
+    mValueIndexes.set(node, valueIndex);
+  }
+
+  void setLevel(int node, int level) {
+    mLevels.set(node, level);
+  }
+
+  long getNumericID(int node) {
+    return mIds.get(node);
+  }
+
+  UUID getID(int node) {
+    var uuid = mUUIDs.get(node);
+    return uuid != null ? uuid : SequentialIdAllocator.toUUID(mIds.get(node));
+  }
+
+  void setID(int node, UUID uuid) {
+    mUUIDs.put(node, uuid);
+  }
+
+  /**
+   * Returns the child at a position.
+   *
+   * @throws IndexOutOfBoundsException if the position is out of bounds
+   */
+  int getChildAt(int parent, int position) {
+    int count = mChildCounts.get(parent);
+    if (position < 0 || position >= count) {
+      throw new IndexOutOfBoundsException("Invalid index: " + position + ", size is " + count);
+    }
+    int child = mFirstChildren.get(parent);
+    for (int i = 0; i < position; i++) {
+      child = mNextSiblings.get(child);
+    }
+    return child;
+  }
+
+  /**
+   * @return the position of a node among its siblings, 0 for a root
+   */
+  int getPosition(int node) {
+    int parent = mParents.get(node);
+    if (parent == NO_NODE) return 0;
+
+    int position = 0;
+    for (int child = mFirstChildren.get(parent); child != node; child = mNextSiblings.get(child)) {
+      position++;
+    }
+    return position;
+  }
+
+  boolean isAncestor(int ancestor, int node) {
+    for (int current = node; current != NO_NODE; current = mParents.get(current)) {
+      if (current == ancestor) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Inserts a detached node among the children of a parent and updates the levels of its subtree.
+   *
+   * @param position the position of the node among the children, at most the child count
+   */
+  void attach(int parent, int node, int position) {
+    int count = mChildCounts.get(parent);
+    if (position < 0 || position > count) {
+      throw new IndexOutOfBoundsException("Invalid index: " + position + ", size is " + count);
+    }
+    if (isAncestor(node, parent)) {
+      throw new IllegalArgumentException("A node cannot be added to its own subtree");
+    }
+    if (position == 0) {
+      mNextSiblings.set(node, mFirstChildren.get(parent));
+      mFirstChildren.set(parent, node);
+    } else {
+      int previous = getChildAt(parent, position - 1);
+      mNextSiblings.set(node, mNextSiblings.get(previous));
+      mNextSiblings.set(previous, node);
+    }
+    if (mNextSiblings.get(node) == NO_NODE) {
+      mLastChildren.set(parent, node);
+    }
+    mParents.set(node, parent);
+    mChildCounts.set(parent, count + 1);
+    updateLevels(node, mLevels.get(parent) + 1);
+  }
+
+  /**
+   * Removes a node from the children of its parent, the node keeps its subtree and level.
+   *
+   * @return the former position of the node, or -1 if it was a root
+   */
+  int detach(int node) {
+    int parent = mParents.get(node);
+    if (parent == NO_NODE) return -1;
+
+    int position = 0;
+    int previous = NO_NODE;
+    for (int child = mFirstChildren.get(parent); child != node; child = mNextSiblings.get(child)) {
+      previous = child;
+      position++;
+    }
+    int next = mNextSiblings.get(node);
+    if (previous == NO_NODE) {
+      mFirstChildren.set(parent, next);
+    } else {
+      mNextSiblings.set(previous, next);
+    }
+    if (mLastChildren.get(parent) == node) {
+      mLastChildren.set(parent, previous);
+    }
+    mChildCounts.set(parent, mChildCounts.get(parent) - 1);
+    mParents.set(node, NO_NODE);
+    mNextSiblings.set(node, NO_NODE);
+    return position;
+  }
+
+  /** Reorders the children of a node. */
+  void sortChildren(int parent, Comparator<Node<T>> comparator) {
+    int count = mChildCounts.get(parent);
+    if (count < 2) return;
+
+    var children = new ArrayList<Node<T>>(count);
+    for (int child = mFirstChildren.get(parent);
+        child != NO_NODE;
+        child = mNextSiblings.get(child)) {
+      children.add(new CompactNode<>(this, child));
+    }
+    children.sort(comparator);
+
+    int previous = NO_NODE;
+    for (Node<T> view : children) {
+      int child = ((CompactNode<T>) view).mIndex;
+      if (previous == NO_NODE) {
+        mFirstChildren.set(parent, child);
+      } else {
+        mNextSiblings.set(previous, child);
+      }
+      previous = child;
+    }
+    mNextSiblings.set(previous, NO_NODE);
+    mLastChildren.set(parent, previous);
+  }
+
+  /**
+   * Sets the level of a node and the levels of its descendants from it, without recursion.
+   *
+   * @param node the root of the subtree
+   * @param level the level of the node
+   */
+  void updateLevels(int node, int level) {
+    mLevels.set(node, level);
+    int current = node;
+    while (true) {
+      int child = mFirstChildren.get(current);
+      if (child != NO_NODE) {
+        mLevels.set(child, mLevels.get(current) + 1);
+        current = child;
+        continue;
+      }
+      while (current != node && mNextSiblings.get(current) == NO_NODE) {
+        current = mParents.get(current);
+      }
+      if (current == node) return;
+      current = mNextSiblings.get(current);
+      mLevels.set(current, mLevels.get(mParents.get(current)) + 1);
+    }
+  }
+
+  /**
+   * @return the number of nodes in the subtree rooted at a node, including it
+   */
+  int getSubtreeSize(int node) {
+    int size = 0;
+    int current = node;
+    while (true) {
+      size++;
+      int child = mFirstChildren.get(current);
+      if (child != NO_NODE) {
+        current = child;
+        continue;
+      }
+      while (current != node && mNextSiblings.get(current) == NO_NODE) {
+        current = mParents.get(current);
+      }
+      if (current == node) return size;
+      current = mNextSiblings.get(current);
+    }
+  }
+
+  /**
+   * Copies a tree of any backend, without recursion.
+   *
+   * @param root the root of the tree to copy
+   * @param parent the index of the parent of the copy, or {@link #NO_NODE}
+   * @return the index of the copy of the root
+   */
+  int copy(Node<T> root, int parent) {
+    int copy = add(parent, root.getValue());
+    var pending = new ArrayDeque<Object[]>();
+    pending.push(new Object[] {root, copy});
+    while (!pending.isEmpty()) {
+      var entry = pending.pop();
+      @SuppressWarnings("unchecked")
+      var node = (Node<T>) entry[0];
+      int index = (int) entry[1];
+      for (Node<T> child : node.getChildren()) {
+        pending.push(new Object[] {child, add(index, child.getValue())});
+      }
+    }
+    return copy;
+  }
+
+  private void checkIndex(int node) {
+    if (node < 0 || node >= mSize) {
+      throw new IndexOutOfBoundsException("Invalid node: " + node + ", size is " + mSize);
+    }
+  }
+
+  /** A column of ints growing in chunks, existing chunks are never copied. */
+  private static final class IntColumn {
+
+    private static final int SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << SHIFT;
+    private static final int MASK = CHUNK_SIZE - 1;
+
+    private int[][] mChunks = new int[1][];
+
+    int get(int index) {
+      return mChunks[index >>> SHIFT][index & MASK];
+    }
+
+    void set(int index, int value) {
+      int chunk = index >>> SHIFT;
+      if (chunk >= mChunks.length) {
+        mChunks = Arrays.copyOf(mChunks, Math.max(chunk + 1, mChunks.length * 2));
+      }
+      if (mChunks[chunk] == null) {
+        mChunks[chunk] = new int[CHUNK_SIZE];
+      }
+      mChunks[chunk][index & MASK] = value;
+    }
+  }
+
+  /** A column of longs growing in chunks, existing chunks are never copied. */
+  private static final class LongColumn {
+
+    private static final int SHIFT = 11;
+    private static final int CHUNK_SIZE = 1 << SHIFT;
+    private static final int MASK = CHUNK_SIZE - 1;
+
+    private long[][] mChunks = new long[1][];
+
+    long get(int index) {
+      return mChunks[index >>> SHIFT][index & MASK];
+    }
+
+    void set(int index, long value) {
+      int chunk = index >>> SHIFT;
+      if (chunk >= mChunks.length) {
+        mChunks = Arrays.copyOf(mChunks, Math.max(chunk + 1, mChunks.length * 2));
+      }
+      if (mChunks[chunk] == null) {
+        mChunks[chunk] = new long[CHUNK_SIZE];
+      }
+      mChunks[chunk][index & MASK] = value;
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+package com.eup.codeops.ast.core.node;
+
+import androidx.annotation.NonNull;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Shares a tree of {@link AbstractNode}s between reader and writer threads, e.g. a file tree read
+ * by the UI while a watcher updates it.
+ *
+ * <p>The children of the nodes of a concurrent tree are kept in copy-on-write lists, so readers
+ * never block: a traversal iterates the children a node had when it reached it and never throws
+ * {@link java.util.ConcurrentModificationException}. Subtrees attached to the tree are converted
+ * while they are relinked.
+ *
+ * <p>Writers change the tree in {@link #write(Consumer)}, one at a time. Readers needing a
+ * consistent view across several nodes, e.g. a parent and the depths of its children, read in
+ * {@link #read(Function)}: the reader runs optimistically without locking and only runs again
+ * under a read lock if a write interleaved. Structural hashes are only cached by writers.
+ *
+ * <p>Descendants of other node implementations keep their own children and are not protected.
+ *
+ * @param <T> the type of data stored in the nodes
+ * @author EUP
+ */
+public final class ConcurrentTree<T> {
+
+  /** Optimistic runs of a reader before it takes the read lock */
+  private static final int MAX_OPTIMISTIC_READS = 2;
+
+  private final AbstractNode<T> mRoot;
+  private final StampedLock mLock = new StampedLock();
+  // the thread holding the write lock, a stamped lock has no owner
+  private volatile Thread mWriter;
+
+  private ConcurrentTree(AbstractNode<T> root) {
+    mRoot = root;
+  }
+
+  /**
+   * Makes a tree concurrent. The tree should not be shared yet, or only through this method.
+   *
+   * @param root the root of the tree
+   * @return the concurrent tree, the existing one if already concurrent
+   * @throws IllegalArgumentException if the node is not a root
+   */
+  @NonNull
+  @SuppressWarnings("unchecked")
+  public static <T> ConcurrentTree<T> of(@NonNull AbstractNode<T> root) {
+    if (root.getParent() != null) {
+      throw new IllegalArgumentException("Only the root of a tree can be made concurrent");
+    }
+    var existing = (ConcurrentTree<T>) root.getConcurrentTree();
+    if (existing != null) return existing;
+
+    var concurrent = new ConcurrentTree<>(root);
+    concurrent.write(
+        node -> {
+          var stack = new ArrayDeque<AbstractNode<T>>();
+          stack.push(root);
+          while (!stack.isEmpty()) {
+            var next = stack.pop();
+            next.copyChildrenOnWrite();
+            for (Node<T> child : next.getChildren()) {
+              if (child instanceof AbstractNode) {
+                stack.push((AbstractNode<T>) child);
+              }
+            }
+          }
+          root.setConcurrentTree(concurrent);
+        });
+    return concurrent;
+  }
+
+  @NonNull
+  public Node<T> getRoot() {
+    return mRoot;
+  }
+
+  /**
+   * Reads the tree consistently. The reader may run more than once, and while the tree changes on
+   * all but its last run, so it must not have side effects; exceptions thrown by such a run are
+   * ignored.
+   *
+   * @param reader the reader, given the root
+   * @return the result of the last run of the reader
+   */
+  public <R> R read(@NonNull Function<? super Node<T>, R> reader) {
+    for (int i = 0; i < MAX_OPTIMISTIC_READS; i++) {
+      long stamp = mLock.tryOptimisticRead();
+      if (stamp == 0) break; // being written
+      try {
+        R result = reader.apply(mRoot);
+        if (mLock.validate(stamp)) return result;
+      } catch (RuntimeException e) {
+        if (mLock.validate(stamp)) throw e;
+      }
+    }
+
+    long stamp = mLock.readLock();
+    try {
+      return reader.apply(mRoot);
+    } finally {
+      mLock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Changes the tree exclusively. Readers see the change once it is complete. Writes are not
+   * reentrant, a writer must not write again.
+   *
+   * @param writer the writer, given the root
+   */
+  public void write(@NonNull Consumer<? super Node<T>> writer) {
+    writeAndGet(
+        root -> {
+          writer.accept(root);
+          return null;
+        });
+  }
+
+  /**
+   * Changes the tree exclusively and returns a result. The structural hashes of the changed nodes
+   * are recomputed before the write lock is released so readers find them cached.
+   *
+   * @param writer the writer, given the root
+   * @return the result of the writer
+   */
+  public <R> R writeAndGet(@NonNull Function<? super Node<T>, R> writer) {
+    long stamp = mLock.writeLock();
+    mWriter = Thread.currentThread();
+    try {
+      R result = writer.apply(mRoot);
+      mRoot.getStructuralHash();
+      return result;
+    } finally {
+      mWriter = null;
+      mLock.unlockWrite(stamp);
+    }
+  }
+
+  /** Whether the current thread is writing this tree. */
+  boolean isWriteLockedByCurrentThread() {
+    return mWriter == Thread.currentThread();
+  }
+}
@@ -25,9 +25,13 @@ package com.eup.codeops.ast.core.node;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import com.eup.codeops.ast.core.transversal.Order;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Represents a node in a tree data structure.
@@ -431,6 +435,55 @@ public interface Node<T> {
    */
   List<Node<T>> listNeighbours(boolean includeNode);
 
+  /**
+   * Returns a lazy iterator over this node and its descendants.
+   *
+   * @param order the order to iterate the nodes in
+   * @return the iterator
+   */
+  default Iterator<Node<T>> iterator(@NonNull Order order) {
+    return order.iterator(this, node -> true);
+  }
+
+  /**
+   * Returns a lazy sequential stream of this node and its descendants. Short-circuiting operations
+   * such as {@code findFirst} or {@code anyMatch} stop without visiting the rest of the tree, a
+   * {@link Order#PRE} order stream split in {@link Stream#parallel() parallel} at subtree
+   * boundaries.
+   *
+   * @param order the order to stream the nodes in
+   * @return the stream
+   */
+  default Stream<Node<T>> stream(@NonNull Order order) {
+    return StreamSupport.stream(order.spliterator(this, node -> true), false);
+  }
+
+  /**
+   * Returns the structural hash of the subtree rooted at this node, combining the values of its
+   * nodes and its shape. Identifiers, levels and indices are not part of it.
+   *
+   * <p>Comparing the hash with one taken earlier tells whether the subtree changed, comparing the
+   * hashes of two nodes whether their subtrees are likely structurally equal. Implementations may
+   * cache the hash, the default implementation computes it on every call.
+   *
+   * @return the 64-bit structural hash
+   */
+  default long getStructuralHash() {
+    return StructuralHash.of(this);
+  }
+
+  /**
+   * Checks whether the subtree rooted at this node and the one rooted at another node have the
+   * same structural hash {@see #getStructuralHash()}. Equal subtrees always match, different ones
+   * collide with negligible probability.
+   *
+   * @param other the other node
+   * @return true if both subtrees are structurally equal
+   */
+  default boolean isStructurallyEqual(@NonNull Node<?> other) {
+    return getStructuralHash() == other.getStructuralHash();
+  }
+
   /**
    * Removes the nodes in the specified range from the start to the end index minus one.
    *
@@ -449,6 +502,14 @@ public interface Node<T> {
   @Nullable
   public UUID getID();
 
+  /**
+   * Returns the numeric identifier of this node, allocated by a {@link NodeIdAllocator}. Unlike
+   * {@link #getID()} it never allocates.
+   *
+   * @return the node identifier, or {@link NodeIdAllocator#NO_ID} if the node has none
+   */
+  long getNumericID();
+
   /**
    * Calculates the total number of leaf nodes rooted at this node.
    *
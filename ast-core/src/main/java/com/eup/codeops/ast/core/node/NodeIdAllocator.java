@@ -0,0 +1,49 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.node;
+
+/**
+ * Allocates the identifiers of nodes.
+ *
+ * <p>Identifiers are positive 64-bit numbers, unique within the process. No record of allocated
+ * identifiers is kept, uniqueness follows from the allocation scheme alone. {@link #NO_ID} is never
+ * allocated and marks a node created without an identifier.
+ *
+ * @see SequentialIdAllocator
+ * @see BlockIdAllocator
+ * @see AbstractNode#setIdAllocator(NodeIdAllocator)
+ * @author EUP
+ */
+public interface NodeIdAllocator {
+
+  /** The identifier of a node created without one. */
+  long NO_ID = 0;
+
+  /**
+   * Allocates a new identifier. Implementations must be safe to call from multiple threads.
+   *
+   * @return a positive identifier never returned before in this process
+   */
+  long allocate();
+}
@@ -0,0 +1,242 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.node;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Indexes the nodes of a tree by identifier and by value, so a node is found without traversing the
+ * tree, e.g. to reveal or remove the node of a file.
+ *
+ * <p>An index is attached to a root {@see #attach(AbstractNode)} and kept up to date as nodes are
+ * attached and detached through {@link Node#setParent(Node)}, {@link Node#removeChild(Node)} and
+ * {@link Node#removeAllChildren()}, while the subtree of the moved node is relinked, and as values
+ * are set. A node detached from the tree leaves the index with its subtree, a subtree attached to
+ * it enters the index. If the root is attached to another tree the index is emptied.
+ *
+ * <p>Only abstract nodes are indexed, descendants of other node implementations are not seen. Like
+ * the nodes, the index is not thread safe.
+ *
+ * @param <T> the type of data stored in the nodes
+ * @author EUP
+ */
+public final class NodeIndex<T> {
+
+  private final AbstractNode<T> mRoot;
+  private final Map<Long, AbstractNode<T>> mNodes = new HashMap<>();
+  // nodes sharing a value are listed in the order they entered the index
+  private final Map<T, List<AbstractNode<T>>> mValues = new HashMap<>();
+
+  private NodeIndex(AbstractNode<T> root) {
+    mRoot = root;
+  }
+
+  /**
+   * Attaches an index to a root, indexing its current subtree.
+   *
+   * @param root the root of the tree
+   * @return the index of the tree, the existing one if already attached
+   * @throws IllegalArgumentException if the node is not a root
+   */
+  @NonNull
+  public static <T> NodeIndex<T> attach(@NonNull AbstractNode<T> root) {
+    if (root.getParent() != null) {
+      throw new IllegalArgumentException("Index must be attached to a root");
+    }
+    NodeIndex<T> index = of(root);
+    if (index == null) {
+      index = new NodeIndex<>(root);
+      var stack = new ArrayDeque<AbstractNode<T>>();
+      stack.push(root);
+      while (!stack.isEmpty()) {
+        var node = stack.pop();
+        index.add(node);
+        for (Node<T> child : node.getChildren()) {
+          if (child instanceof AbstractNode) {
+            stack.push((AbstractNode<T>) child);
+          }
+        }
+      }
+      root.setTreeIndex(index);
+    }
+    return index;
+  }
+
+  /**
+   * @param node any node
+   * @return the index of the tree the node is in, {@code null} if it has none
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public static <T> NodeIndex<T> of(@NonNull Node<T> node) {
+    if (node instanceof AbstractNode) {
+      return (NodeIndex<T>) ((AbstractNode<T>) node).getTreeIndex();
+    }
+    return null;
+  }
+
+  /** Detaches this index from its root, it is no longer updated. */
+  public void detach() {
+    if (of(mRoot) == this) {
+      mRoot.setTreeIndex(null);
+    }
+    mNodes.clear();
+    mValues.clear();
+  }
+
+  @NonNull
+  public Node<T> getRoot() {
+    return mRoot;
+  }
+
+  /**
+   * @return the number of indexed nodes
+   */
+  public int size() {
+    return mNodes.size();
+  }
+
+  /**
+   * @param node a node
+   * @return true if the node is in the indexed tree
+   */
+  public boolean contains(@Nullable Node<?> node) {
+    return node != null && mNodes.get(node.getNumericID()) == node;
+  }
+
+  /**
+   * @param id the numeric identifier of a node {@see Node#getNumericID()}
+   * @return the node, {@code null} if not in the tree
+   */
+  @Nullable
+  public Node<T> findNode(long id) {
+    return mNodes.get(id);
+  }
+
+  /**
+   * @param id the identifier of a node {@see Node#getID()}
+   * @return the node, {@code null} if not in the tree
+   */
+  @Nullable
+  public Node<T> findNode(@Nullable UUID id) {
+    long numericID = SequentialIdAllocator.toNumericID(id);
+    return numericID == NodeIdAllocator.NO_ID ? null : mNodes.get(numericID);
+  }
+
+  /**
+   * @param value a value
+   * @return the first node indexed with the value, {@code null} if none
+   */
+  @Nullable
+  public Node<T> findNodeByValue(@Nullable T value) {
+    var nodes = mValues.get(value);
+    return nodes == null ? null : nodes.get(0);
+  }
+
+  /**
+   * @param value a value
+   * @return the nodes with the value, empty if none
+   */
+  @NonNull
+  public List<Node<T>> findNodesByValue(@Nullable T value) {
+    var nodes = mValues.get(value);
+    return nodes == null ? Collections.emptyList() : Collections.unmodifiableList(nodes);
+  }
+
+  /**
+   * Returns the nodes to expand to reveal a node.
+   *
+   * @param id the identifier of the node
+   * @return the nodes from the root to the node included, empty if not in the tree
+   */
+  @NonNull
+  public List<Node<T>> getPath(@Nullable UUID id) {
+    var node = findNode(id);
+    if (node == null) {
+      return Collections.emptyList();
+    }
+    var path = new ArrayList<Node<T>>(node.getDepth());
+    for (Node<T> current = node; current != null; current = current.getParent()) {
+      path.add(current);
+    }
+    Collections.reverse(path);
+    return path;
+  }
+
+  /**
+   * Removes a node and its subtree from the tree.
+   *
+   * @param id the identifier of the node
+   * @return true if the node was in the tree and is not its root
+   */
+  public boolean removeNode(@Nullable UUID id) {
+    var node = findNode(id);
+    if (node == null || node.getParent() == null) {
+      return false;
+    }
+    return node.getParent().removeChild(node) >= 0;
+  }
+
+  void add(AbstractNode<T> node) {
+    mNodes.put(node.getNumericID(), node);
+    mValues.computeIfAbsent(node.getValue(), any -> new ArrayList<>(1)).add(node);
+  }
+
+  void remove(AbstractNode<T> node) {
+    if (mNodes.remove(node.getNumericID(), node)) {
+      removeValue(node, node.getValue());
+    }
+  }
+
+  void updateValue(AbstractNode<T> node, T previous) {
+    if (mNodes.get(node.getNumericID()) == node) {
+      removeValue(node, previous);
+      mValues.computeIfAbsent(node.getValue(), any -> new ArrayList<>(1)).add(node);
+    }
+  }
+
+  private void removeValue(AbstractNode<T> node, T value) {
+    var nodes = mValues.get(value);
+    if (nodes == null) return;
+
+    // by identity, node equality compares subtrees
+    for (int i = 0; i < nodes.size(); i++) {
+      if (nodes.get(i) == node) {
+        nodes.remove(i);
+        break;
+      }
+    }
+    if (nodes.isEmpty()) {
+      mValues.remove(value);
+    }
+  }
+}
@@ -0,0 +1,646 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.node;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.eup.codeops.ast.core.exception.InvalidRangeException;
+import com.eup.codeops.ast.core.transversal.Order;
+import com.eup.codeops.ast.core.util.TreeJsonWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable node of a persistent tree. Mutations leave the node unchanged and return the new
+ * version of the node in a new snapshot of the tree, which shares every subtree that did not
+ * change with the previous snapshot: only the path from the node to the root is copied, so a
+ * snapshot costs O(depth) rather than O(n).
+ *
+ * <pre>
+ * PersistentNode&lt;String&gt; v1 = PersistentNode.copyOf(liveRoot); // O(n), once
+ * Node&lt;String&gt; renamed = v1.getChild(0).setValue("renamed"); // the child in a new snapshot
+ * Node&lt;String&gt; v2 = renamed.getRoot(); // v1 is unchanged
+ * </pre>
+ *
+ * <p>Snapshots are immutable and can be handed to other threads without synchronization. Every
+ * snapshot has a version {@see #getVersion()}, and {@link #isUnchangedSince(PersistentNode)} tells
+ * in constant time whether a subtree is shared between two snapshots, so work on unchanged subtrees
+ * can be skipped.
+ *
+ * <p>A node is a view of its subtree together with its parent in its snapshot, views are created
+ * as the tree is navigated. The level of a node is derived from its depth, the level and index
+ * setters are no-ops. {@link #setParent(Node)}, {@link #removeChild(Node)}, {@link
+ * #removeAllChildren()}, {@link #removeRange(int, int)} and {@link #setID(UUID)} cannot return the
+ * new snapshot and throw {@link UnsupportedOperationException}, {@link #withoutChild(int)}, {@link
+ * #withoutChildren()} and {@link #remove()} are their persistent counterparts. Persistent nodes
+ * cannot be attached to mutable trees.
+ *
+ * @param <T> the type of data stored in the node
+ * @author EUP
+ */
+public final class PersistentNode<T> implements Node<T> {
+
+  private static final AtomicLong sVersions = new AtomicLong();
+
+  /** The immutable content of a subtree, shared between snapshots. */
+  private static final class Data<T> {
+    final T value;
+    final Data<T>[] children;
+    final long id;
+    final long hash;
+    // number of nodes of the subtree
+    final int size;
+
+    Data(T value, Data<T>[] children, long id) {
+      this.value = value;
+      this.children = children;
+      this.id = id;
+      var childHashes = new long[children.length];
+      int size = 1;
+      for (int i = 0; i < children.length; i++) {
+        childHashes[i] = children[i].hash;
+        size += children[i].size;
+      }
+      this.hash = StructuralHash.of(value, childHashes);
+      this.size = size;
+    }
+
+    Data<T> withValue(T value) {
+      return new Data<>(value, children, id);
+    }
+
+    Data<T> withChildren(Data<T>[] children) {
+      return new Data<>(value, children, id);
+    }
+
+    Data<T> withChild(int position, Data<T> child) {
+      var copy = children.clone();
+      copy[position] = child;
+      return withChildren(copy);
+    }
+  }
+
+  private static final Data<?>[] NO_CHILDREN = new Data<?>[0];
+
+  private final PersistentNode<T> mParent;
+  private final PersistentNode<T> mRoot;
+  private final Data<T> mData;
+  // position among the siblings and depth of the node in its snapshot
+  private final int mPosition;
+  private final int mDepth;
+  private final long mVersion;
+
+  private PersistentNode(
+      @Nullable PersistentNode<T> parent, Data<T> data, int position, long version) {
+    mParent = parent;
+    mRoot = parent == null ? this : parent.mRoot;
+    mData = data;
+    mPosition = position;
+    mDepth = parent == null ? 1 : parent.mDepth + 1;
+    mVersion = version;
+  }
+
+  /**
+   * Creates the root of a new persistent tree.
+   *
+   * @param value the value of the root
+   * @return the root, without children
+   */
+  @NonNull
+  public static <T> PersistentNode<T> of(@Nullable T value) {
+    return new PersistentNode<>(null, leaf(value), 0, sVersions.incrementAndGet());
+  }
+
+  /**
+   * Snapshots a tree into a new persistent tree. Persistent subtrees are shared, not copied.
+   *
+   * @param root the root of the subtree to copy
+   * @return the root of the persistent tree
+   */
+  @NonNull
+  public static <T> PersistentNode<T> copyOf(@NonNull Node<T> root) {
+    if (root instanceof PersistentNode && root.isRoot()) {
+      return (PersistentNode<T>) root;
+    }
+    return new PersistentNode<>(null, toData(root), 0, sVersions.incrementAndGet());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Data<T> leaf(T value) {
+    return new Data<>(value, (Data<T>[]) NO_CHILDREN, AbstractNode.getIdAllocator().allocate());
+  }
+
+  /** Copies a subtree bottom-up with an explicit stack, sharing persistent subtrees. */
+  @SuppressWarnings("unchecked")
+  private static <T> Data<T> toData(Node<T> root) {
+    if (root instanceof PersistentNode) {
+      return ((PersistentNode<T>) root).mData;
+    }
+    var nodes = new ArrayDeque<Node<T>>();
+    var iterators = new ArrayDeque<Iterator<Node<T>>>();
+    var built = new ArrayDeque<List<Data<T>>>();
+    nodes.push(root);
+    iterators.push(root.getChildren().iterator());
+    built.push(new ArrayList<>(root.childrenSize()));
+    while (true) {
+      var children = iterators.peek();
+      if (children.hasNext()) {
+        var child = children.next();
+        if (child instanceof PersistentNode) {
+          built.peek().add(((PersistentNode<T>) child).mData);
+        } else {
+          nodes.push(child);
+          iterators.push(child.getChildren().iterator());
+          built.push(new ArrayList<>(child.childrenSize()));
+        }
+        continue;
+      }
+
+      var node = nodes.pop();
+      iterators.pop();
+      var data =
+          new Data<>(
+              node.getValue(),
+              built.pop().toArray((Data<T>[]) NO_CHILDREN),
+              AbstractNode.getIdAllocator().allocate());
+      if (nodes.isEmpty()) return data;
+      built.peek().add(data);
+    }
+  }
+
+  /**
+   * Returns the new version of this node once its content is replaced, in a new snapshot where
+   * the path to the root is copied.
+   */
+  @SuppressWarnings("unchecked")
+  private PersistentNode<T> replace(Data<T> data) {
+    var path = new PersistentNode[mDepth];
+    var datas = new Data[mDepth];
+    int i = 0;
+    for (var node = this; node != null; node = node.mParent) {
+      path[i] = node;
+      datas[i] = i == 0 ? data : node.mData.withChild(path[i - 1].mPosition, datas[i - 1]);
+      i++;
+    }
+
+    long version = sVersions.incrementAndGet();
+    PersistentNode<T> view = null;
+    for (i = mDepth - 1; i >= 0; i--) {
+      view = new PersistentNode<>(view, (Data<T>) datas[i], path[i].mPosition, version);
+    }
+    return view;
+  }
+
+  private PersistentNode<T> view(int position) {
+    return new PersistentNode<>(this, mData.children[position], position, mVersion);
+  }
+
+  /** Inserts subtrees at a position and optionally sorts the children. */
+  @SuppressWarnings("unchecked")
+  private PersistentNode<T> insert(
+      int index, List<? extends Node<T>> children, @Nullable Comparator<Node<T>> comparator) {
+    int count = mData.children.length;
+    if (index < 0 || index > count) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+    }
+    var copy = (Data<T>[]) new Data<?>[count + children.size()];
+    System.arraycopy(mData.children, 0, copy, 0, index);
+    for (int i = 0; i < children.size(); i++) {
+      copy[index + i] = toData(children.get(i));
+    }
+    System.arraycopy(mData.children, index, copy, index + children.size(), count - index);
+    if (comparator != null) {
+      sort(copy, comparator);
+    }
+    return replace(mData.withChildren(copy));
+  }
+
+  /** Sorts subtrees, stable, comparing views of them as children of this node. */
+  private void sort(Data<T>[] children, Comparator<Node<T>> comparator) {
+    var views = new ArrayList<PersistentNode<T>>(children.length);
+    for (int i = 0; i < children.length; i++) {
+      views.add(new PersistentNode<>(this, children[i], i, mVersion));
+    }
+    views.sort(comparator);
+    for (int i = 0; i < children.length; i++) {
+      children[i] = views.get(i).mData;
+    }
+  }
+
+  /**
+   * @return the version of the snapshot of this node, unique to the snapshot
+   */
+  public long getVersion() {
+    return mVersion;
+  }
+
+  /**
+   * Tells in constant time whether the subtree of this node is the subtree of another node,
+   * typically the same node in an older snapshot.
+   *
+   * @param other a node of a persistent tree
+   * @return true if both nodes share their subtree
+   */
+  public boolean isUnchangedSince(@NonNull PersistentNode<T> other) {
+    return mData == other.mData;
+  }
+
+  /**
+   * @param index the position of the child to remove
+   * @return the new version of this node without the child and its subtree
+   */
+  @NonNull
+  @SuppressWarnings("unchecked")
+  public PersistentNode<T> withoutChild(int index) {
+    int count = mData.children.length;
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+    }
+    var copy = (Data<T>[]) new Data<?>[count - 1];
+    System.arraycopy(mData.children, 0, copy, 0, index);
+    System.arraycopy(mData.children, index + 1, copy, index, count - index - 1);
+    return replace(mData.withChildren(copy));
+  }
+
+  /**
+   * @return the new version of this node without children
+   */
+  @NonNull
+  @SuppressWarnings("unchecked")
+  public PersistentNode<T> withoutChildren() {
+    return replace(mData.withChildren((Data<T>[]) NO_CHILDREN));
+  }
+
+  /**
+   * Removes this node and its subtree.
+   *
+   * @return the new version of the parent of this node
+   * @throws IllegalStateException if this node is a root
+   */
+  @NonNull
+  public PersistentNode<T> remove() {
+    if (mParent == null) {
+      throw new IllegalStateException("A root cannot be removed");
+    }
+    return mParent.withoutChild(mPosition);
+  }
+
+  @Override
+  public T getValue() {
+    return mData.value;
+  }
+
+  /** {@inheritDoc} Returns the new version of this node. */
+  @Override
+  public Node<T> setValue(T value) {
+    return replace(mData.withValue(value));
+  }
+
+  @Override
+  public Node<T> getParent() {
+    return mParent;
+  }
+
+  /** Unsupported, nodes are added to a parent through {@link #addChild(Node)}. */
+  @Override
+  public Node<T> setParent(@Nullable Node<T> parent) {
+    throw new UnsupportedOperationException("Persistent nodes are added with addChild");
+  }
+
+  /** {@inheritDoc} Returns the new version of this node, the child is copied or shared. */
+  @Override
+  public Node<T> addChild(Node<T> child) {
+    return insert(mData.children.length, List.of(child), null);
+  }
+
+  /** {@inheritDoc} Returns the new version of this node, the child is copied or shared. */
+  @Override
+  public Node<T> addChild(Node<T> child, int index) {
+    return insert(index, List.of(child), null);
+  }
+
+  /** {@inheritDoc} Returns the new version of this node, the child is copied or shared. */
+  @Override
+  public Node<T> addChild(@NonNull Node<T> child, @Nullable Comparator<Node<T>> comparator) {
+    return insert(mData.children.length, List.of(child), comparator);
+  }
+
+  /** {@inheritDoc} Returns the new version of this node, the children are copied or shared. */
+  @Override
+  public Node<T> addChildren(List<Node<T>> children) {
+    return insert(mData.children.length, children, null);
+  }
+
+  /** {@inheritDoc} Returns the new version of this node, the children are copied or shared. */
+  @Override
+  public Node<T> addChildren(Node<T>[] children) {
+    return insert(mData.children.length, Arrays.asList(children), null);
+  }
+
+  /** {@inheritDoc} Returns the new version of this node, the children are copied or shared. */
+  @Override
+  public Node<T> addChildren(
+      @NonNull List<Node<T>> children, @Nullable Comparator<Node<T>> comparator) {
+    return insert(mData.children.length, children, comparator);
+  }
+
+  /** {@inheritDoc} Returns the new version of this node. */
+  @Override
+  public Node<T> sortChildren(@NonNull Comparator<Node<T>> comparator) {
+    var copy = mData.children.clone();
+    sort(copy, comparator);
+    return replace(mData.withChildren(copy));
+  }
+
+  /** {@inheritDoc} Returns the new version of this node, the children are copied or shared. */
+  @Override
+  public Node<T> updateChildren(
+      @NonNull List<Node<T>> children, @Nullable Comparator<Node<T>> comparator) {
+    return ((PersistentNode<T>) withoutChildren()).insert(0, children, comparator);
+  }
+
+  @Override
+  public List<Node<T>> getChildren() {
+    int count = mData.children.length;
+    if (count == 0) return Collections.emptyList();
+
+    var children = new ArrayList<Node<T>>(count);
+    for (int i = 0; i < count; i++) {
+      children.add(view(i));
+    }
+    return Collections.unmodifiableList(children);
+  }
+
+  @Override
+  public Node<T> getChild(int index) {
+    int count = mData.children.length;
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+    }
+    return view(index);
+  }
+
+  /** Unsupported, see {@link #withoutChild(int)}. */
+  @Override
+  public int removeChild(Node<T> child) {
+    throw new UnsupportedOperationException("Persistent nodes are removed with withoutChild");
+  }
+
+  /** Unsupported, see {@link #withoutChildren()}. */
+  @Override
+  public int removeAllChildren() {
+    throw new UnsupportedOperationException("Persistent nodes are removed with withoutChildren");
+  }
+
+  @Override
+  public boolean isLeaf() {
+    return mData.children.length == 0;
+  }
+
+  @Override
+  public boolean hasChildren() {
+    return mData.children.length > 0;
+  }
+
+  @Override
+  public int childrenSize() {
+    return mData.children.length;
+  }
+
+  @Override
+  public int getDepth() {
+    return mDepth;
+  }
+
+  @Override
+  public int getApparentDepth() {
+    return getLevel() + mPosition;
+  }
+
+  @Override
+  public int getBreadth() {
+    return mData.size - 1;
+  }
+
+  /** {@inheritDoc} The level of a persistent node is derived from its depth. */
+  @Override
+  public int getLevel() {
+    return mDepth - 1;
+  }
+
+  /** No-op, the level of a persistent node is derived from its depth. */
+  @Override
+  public Node<T> setLevel(int level) {
+    return this;
+  }
+
+  /** No-op, the level of a persistent node is derived from its depth. */
+  @Override
+  public Node<T> updateChildrenLevels() {
+    return this;
+  }
+
+  /** No-op, the level of a persistent node is derived from its depth. */
+  @Override
+  public Node<T> updateDirectChildrenLevels(int level) {
+    return this;
+  }
+
+  @Override
+  public String getAncestorPath() {
+    var path = new StringBuilder();
+    for (int level = 1; level < mDepth; level++) {
+      path.append(NODE_SEPARATOR).append(level - 1).append(NODE_SEPARATOR).append(level);
+    }
+    return path.toString();
+  }
+
+  @Override
+  public boolean isRoot() {
+    return mParent == null;
+  }
+
+  /** {@inheritDoc} The root of the snapshot of this node. */
+  @Override
+  public Node<T> getRoot() {
+    return mRoot;
+  }
+
+  @Override
+  public boolean isLastChild() {
+    return mParent != null && mPosition == mParent.mData.children.length - 1;
+  }
+
+  @Override
+  public boolean isFirstChild() {
+    return mParent != null && mPosition == 0;
+  }
+
+  @Override
+  public Node<T> getLastChildNode() {
+    return isLeaf() ? null : view(mData.children.length - 1);
+  }
+
+  @Override
+  public Node<T> getFirstChildNode() {
+    return isLeaf() ? null : view(0);
+  }
+
+  @Override
+  public Node<T> getLastSibling() {
+    return mParent == null ? null : mParent.getLastChildNode();
+  }
+
+  @Override
+  public Node<T> getFirstSibling() {
+    return mParent == null ? null : mParent.getFirstChildNode();
+  }
+
+  @Override
+  public String toJsonString(int indent) {
+    return TreeJsonWriter.toJsonString(this, indent);
+  }
+
+  /** {@inheritDoc} The index of a persistent node is its position among its siblings. */
+  @Override
+  public int getIndex() {
+    return mPosition;
+  }
+
+  /** No-op, the index of a persistent node is its position among its siblings. */
+  @Override
+  public Node<T> setIndex(int index) {
+    return this;
+  }
+
+  @Override
+  public List<Node<T>> listNeighbours(boolean includeNode) {
+    var neighbours = new ArrayList<Node<T>>(includeNode ? mData.size : mData.size - 1);
+    var iterator = iterator(Order.PRE);
+    if (!includeNode) {
+      iterator.next();
+    }
+    iterator.forEachRemaining(neighbours::add);
+    return neighbours;
+  }
+
+  /** Unsupported, see {@link #withoutChild(int)}. */
+  @Override
+  public void removeRange(int fromIndex, int toIndex) {
+    int s = childrenSize();
+    if (s <= 0 || fromIndex >= s || toIndex > s || fromIndex > toIndex) {
+      throw InvalidRangeException.throwException(fromIndex, toIndex, s);
+    }
+    throw new UnsupportedOperationException("Persistent nodes are removed with withoutChild");
+  }
+
+  @Override
+  public UUID getID() {
+    return SequentialIdAllocator.toUUID(mData.id);
+  }
+
+  @Override
+  public long getNumericID() {
+    return mData.id;
+  }
+
+  @Override
+  public int getLeafCount(boolean includeDescendants) {
+    int leafCount = 0;
+    if (!includeDescendants) {
+      for (Data<T> child : mData.children) {
+        if (child.children.length == 0) {
+          leafCount++;
+        }
+      }
+      return leafCount;
+    }
+    var stack = new ArrayDeque<Data<T>>();
+    stack.push(mData);
+    while (!stack.isEmpty()) {
+      var data = stack.pop();
+      if (data.children.length == 0) {
+        leafCount++;
+      }
+      for (Data<T> child : data.children) {
+        stack.push(child);
+      }
+    }
+    return leafCount;
+  }
+
+  /** Unsupported, identifiers of persistent nodes are kept across versions. */
+  @Override
+  public void setID(UUID id) {
+    throw new UnsupportedOperationException("Identifiers of persistent nodes are immutable");
+  }
+
+  /** {@inheritDoc} Computed once when the subtree is created. */
+  @Override
+  public long getStructuralHash() {
+    return mData.hash;
+  }
+
+  /** Views are equal if they are views of the same subtree at the same place of a snapshot. */
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) return true;
+    if (!(object instanceof PersistentNode)) return false;
+
+    var other = (PersistentNode<?>) object;
+    var node = this;
+    while (node != null && other != null) {
+      if (node.mData != other.mData || node.mPosition != other.mPosition) return false;
+      node = node.mParent;
+      other = other.mParent;
+    }
+    return node == null && other == null;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * System.identityHashCode(mData) + mPosition;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s@%s (version=%d, uuid=%s, value=%s, level=%s, leaf=%s, root=%s)",
+        getClass().getSimpleName(),
+        Integer.toHexString(System.identityHashCode(mData)),
+        mVersion,
+        getID(),
+        getValue(),
+        getLevel(),
+        isLeaf(),
+        isRoot());
+  }
+}
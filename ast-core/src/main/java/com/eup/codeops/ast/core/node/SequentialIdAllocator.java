@@ -0,0 +1,98 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.node;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The default {@link NodeIdAllocator}, a lock-free process wide counter.
+ *
+ * <p>Every allocator of the module draws from the single counter of {@link #getInstance()} so
+ * identifiers never collide, even when the allocator is switched while nodes are being created.
+ *
+ * <p>Identifiers are mapped to {@link UUID}s only when one is asked for {@see #toUUID(long)}, the
+ * most significant bits are random per process and the least significant bits are the identifier.
+ *
+ * @author EUP
+ */
+public final class SequentialIdAllocator implements NodeIdAllocator {
+
+  private static final SequentialIdAllocator sInstance = new SequentialIdAllocator();
+
+  // drawn once, UUIDs of different processes differ with overwhelming probability
+  private static final long PROCESS_BITS = UUID.randomUUID().getMostSignificantBits();
+
+  private final AtomicLong mNext = new AtomicLong(NO_ID + 1);
+
+  private SequentialIdAllocator() {}
+
+  @NonNull
+  public static SequentialIdAllocator getInstance() {
+    return sInstance;
+  }
+
+  @Override
+  public long allocate() {
+    return mNext.getAndIncrement();
+  }
+
+  /**
+   * Reserves a contiguous block of identifiers.
+   *
+   * @param size the number of identifiers to reserve, positive
+   * @return the first identifier of the block
+   */
+  public long allocateBlock(int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Invalid block size: " + size);
+    }
+    return mNext.getAndAdd(size);
+  }
+
+  /**
+   * Maps an identifier to a UUID. The same identifier always maps to the same UUID within a
+   * process.
+   *
+   * @param id the identifier
+   * @return the UUID, or {@code null} for {@link #NO_ID}
+   */
+  public static UUID toUUID(long id) {
+    return id == NO_ID ? null : new UUID(PROCESS_BITS, id);
+  }
+
+  /**
+   * Maps a UUID back to its identifier {@see #toUUID(long)}.
+   *
+   * @param uuid the UUID
+   * @return the identifier, or {@link #NO_ID} if the UUID was not mapped from one in this process
+   */
+  public static long toNumericID(@Nullable UUID uuid) {
+    return uuid == null || uuid.getMostSignificantBits() != PROCESS_BITS
+        ? NO_ID
+        : uuid.getLeastSignificantBits();
+  }
+}
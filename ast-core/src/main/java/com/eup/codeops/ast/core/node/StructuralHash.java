@@ -0,0 +1,126 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.node;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * Computes the structural hash of a subtree bottom-up, as in a Merkle tree: the hash of a node
+ * combines its value with the hashes of its children in order. Identifiers, levels and indices are
+ * not part of it, so equal structures built separately, e.g. two parses of the same file, hash
+ * alike.
+ *
+ * <p>Subtrees of {@link AbstractNode}s with a cached hash and of {@link PersistentNode}s are not
+ * descended into, the hashes computed for abstract nodes are cached. The walk uses an explicit
+ * stack.
+ *
+ * @author EUP
+ */
+final class StructuralHash {
+
+  private static final long SEED = 0x9E3779B97F4A7C15L;
+
+  private StructuralHash() {}
+
+  static long of(Node<?> root) {
+    if (isCached(root)) return root.getStructuralHash();
+
+    var nodes = new ArrayDeque<Node<?>>();
+    var iterators = new ArrayDeque<Iterator<? extends Node<?>>>();
+    // partial hashes indexed by stack depth
+    long[] partials = new long[16];
+
+    nodes.push(root);
+    iterators.push(root.getChildren().iterator());
+    partials[0] = start(root);
+    while (true) {
+      int top = nodes.size() - 1;
+      var children = iterators.peek();
+      if (children.hasNext()) {
+        var child = children.next();
+        if (isCached(child)) {
+          partials[top] = combine(partials[top], child.getStructuralHash());
+        } else {
+          if (top + 1 == partials.length) {
+            partials = Arrays.copyOf(partials, partials.length * 2);
+          }
+          nodes.push(child);
+          iterators.push(child.getChildren().iterator());
+          partials[top + 1] = start(child);
+        }
+        continue;
+      }
+
+      var node = nodes.pop();
+      iterators.pop();
+      long hash = finish(partials[top], node.childrenSize());
+      if (node instanceof AbstractNode) {
+        ((AbstractNode<?>) node).cacheStructuralHash(hash);
+      }
+      if (top == 0) return hash;
+      partials[top - 1] = combine(partials[top - 1], hash);
+    }
+  }
+
+  /**
+   * Hashes a node from its value and the hashes of its children, for nodes keeping their hash.
+   *
+   * @param value the value of the node
+   * @param childHashes the hashes of its children in order
+   */
+  static long of(Object value, long[] childHashes) {
+    long partial = mix(SEED ^ Objects.hashCode(value));
+    for (long childHash : childHashes) {
+      partial = combine(partial, childHash);
+    }
+    return finish(partial, childHashes.length);
+  }
+
+  private static boolean isCached(Node<?> node) {
+    return node instanceof PersistentNode
+        || (node instanceof AbstractNode && ((AbstractNode<?>) node).hasStructuralHash());
+  }
+
+  private static long start(Node<?> node) {
+    return mix(SEED ^ Objects.hashCode(node.getValue()));
+  }
+
+  private static long combine(long partial, long childHash) {
+    return partial * SEED + childHash;
+  }
+
+  private static long finish(long partial, int childCount) {
+    return mix(partial ^ childCount);
+  }
+
+  /** The SplitMix64 finalizer. */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
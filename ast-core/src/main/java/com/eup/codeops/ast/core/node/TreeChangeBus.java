@@ -0,0 +1,409 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+package com.eup.codeops.ast.core.node;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.eup.codeops.ast.core.transversal.Observer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Notifies listeners of the changes made to a tree of {@link AbstractNode}s, so a view updates the
+ * rows of the changed nodes rather than rebuilding.
+ *
+ * <p>A bus is attached to a root {@see #attach(AbstractNode, Executor)} and kept by the tree like
+ * a {@link NodeIndex}. Nodes report the subtrees inserted, removed and moved through {@link
+ * Node#setParent(Node)} and the methods adding and removing children, the values set and the
+ * children sorted. Changes are coalesced per node until delivered: a node inserted then removed is
+ * not reported, a node removed then inserted elsewhere is reported moved, and changes within an
+ * inserted or removed subtree are reported as the change of its root only.
+ *
+ * <p>The first change schedules a delivery on the executor of the bus, e.g. the posting of a
+ * runnable to the main thread, and every change made until it runs is delivered with it as one
+ * {@link ChangeSet}. Changes made in {@link #batch(Runnable)}, and those of a single call to a node
+ * method, are not delivered before the batch completes.
+ *
+ * <p>Like the nodes, the bus is not thread safe, changes should be made on the thread the executor
+ * delivers on.
+ *
+ * @param <T> the type of data stored in the nodes
+ * @author EUP
+ */
+public final class TreeChangeBus<T> {
+
+  /**
+   * Receives the changes made to a tree.
+   *
+   * @param <T> the type of data stored in the nodes
+   */
+  public interface Listener<T> {
+
+    /**
+     * Called once per delivery with the coalesced changes, never with an empty change set.
+     *
+     * @param changes the changes made since the last delivery
+     */
+    void onChanges(@NonNull ChangeSet<T> changes);
+  }
+
+  /**
+   * The coalesced changes made to a tree between two deliveries. Nodes are listed in the order
+   * they first changed.
+   *
+   * @param <T> the type of data stored in the nodes
+   */
+  public static final class ChangeSet<T> {
+
+    private final List<Node<T>> mInserted = new ArrayList<>();
+    private final List<Node<T>> mRemoved = new ArrayList<>();
+    private final List<Node<T>> mMoved = new ArrayList<>();
+    private final List<Node<T>> mUpdated = new ArrayList<>();
+    private final List<Node<T>> mReordered = new ArrayList<>();
+    private final Map<Node<T>, Node<T>> mPreviousParents = new IdentityHashMap<>();
+    private final Set<Node<T>> mChanged = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private ChangeSet() {}
+
+    /** The roots of the subtrees inserted into the tree. */
+    @NonNull
+    public List<Node<T>> getInserted() {
+      return Collections.unmodifiableList(mInserted);
+    }
+
+    /** The roots of the subtrees removed from the tree {@see #getPreviousParent(Node)}. */
+    @NonNull
+    public List<Node<T>> getRemoved() {
+      return Collections.unmodifiableList(mRemoved);
+    }
+
+    /** The nodes that stayed in the tree under another parent {@see #getPreviousParent(Node)}. */
+    @NonNull
+    public List<Node<T>> getMoved() {
+      return Collections.unmodifiableList(mMoved);
+    }
+
+    /** The nodes that stayed in the tree whose value changed. */
+    @NonNull
+    public List<Node<T>> getUpdated() {
+      return Collections.unmodifiableList(mUpdated);
+    }
+
+    /** The nodes that stayed in the tree whose children were sorted. */
+    @NonNull
+    public List<Node<T>> getReordered() {
+      return Collections.unmodifiableList(mReordered);
+    }
+
+    /**
+     * @param node a removed or moved node
+     * @return the parent of the node before the changes, null if the node is neither
+     */
+    @Nullable
+    public Node<T> getPreviousParent(@NonNull Node<T> node) {
+      return mPreviousParents.get(node);
+    }
+
+    public boolean isEmpty() {
+      return size() == 0;
+    }
+
+    /** The number of changes, a node moved and updated counts twice. */
+    public int size() {
+      return mInserted.size()
+          + mRemoved.size()
+          + mMoved.size()
+          + mUpdated.size()
+          + mReordered.size();
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "ChangeSet (inserted=%d, removed=%d, moved=%d, updated=%d, reordered=%d)",
+          mInserted.size(), mRemoved.size(), mMoved.size(), mUpdated.size(), mReordered.size());
+    }
+  }
+
+  /** What a node was before its first change since the last delivery, and how it changed since. */
+  private static final class Record<T> {
+    final AbstractNode<T> node;
+    final boolean wasAttached;
+    final Node<T> previousParent;
+    boolean valueChanged;
+    boolean reordered;
+
+    Record(AbstractNode<T> node, boolean wasAttached, Node<T> previousParent) {
+      this.node = node;
+      this.wasAttached = wasAttached;
+      this.previousParent = previousParent;
+    }
+  }
+
+  private final AbstractNode<T> mRoot;
+  private final Executor mExecutor;
+  private final List<Listener<T>> mListeners = new CopyOnWriteArrayList<>();
+  private final List<Observer<Node<T>>> mObservers = new CopyOnWriteArrayList<>();
+  // records in the order the nodes first changed, looked up by identity as equality is structural
+  private List<Record<T>> mRecords = new ArrayList<>();
+  private Map<AbstractNode<T>, Record<T>> mRecordsByNode = new IdentityHashMap<>();
+  private int mBatchDepth;
+  private boolean mScheduled;
+
+  private TreeChangeBus(AbstractNode<T> root, Executor executor) {
+    mRoot = root;
+    mExecutor = executor;
+  }
+
+  /**
+   * Attaches a bus to a root.
+   *
+   * @param root the root of the tree
+   * @param executor runs the deliveries, e.g. posting them to the next frame
+   * @return the bus of the tree, the existing one if already attached
+   * @throws IllegalArgumentException if the node is not a root
+   */
+  @NonNull
+  @SuppressWarnings("unchecked")
+  public static <T> TreeChangeBus<T> attach(
+      @NonNull AbstractNode<T> root, @NonNull Executor executor) {
+    if (root.getParent() != null) {
+      throw new IllegalArgumentException("Change bus must be attached to a root");
+    }
+    var bus = (TreeChangeBus<T>) root.getChangeBus();
+    if (bus == null) {
+      bus = new TreeChangeBus<>(root, Objects.requireNonNull(executor));
+      root.setChangeBus(bus);
+    }
+    return bus;
+  }
+
+  /**
+   * @param node any node
+   * @return the bus of the tree the node is in, {@code null} if it has none
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public static <T> TreeChangeBus<T> of(@NonNull Node<T> node) {
+    if (node instanceof AbstractNode) {
+      return (TreeChangeBus<T>) ((AbstractNode<T>) node).getChangeBus();
+    }
+    return null;
+  }
+
+  /** Detaches this bus from its root, pending changes are dropped. */
+  public void detach() {
+    if (of(mRoot) == this) {
+      mRoot.setChangeBus(null);
+    }
+    mRecords = new ArrayList<>();
+    mRecordsByNode = new IdentityHashMap<>();
+  }
+
+  @NonNull
+  public Node<T> getRoot() {
+    return mRoot;
+  }
+
+  public void addListener(@NonNull Listener<T> listener) {
+    mListeners.add(Objects.requireNonNull(listener));
+  }
+
+  public void removeListener(@NonNull Listener<T> listener) {
+    mListeners.remove(listener);
+  }
+
+  /**
+   * Adds an observer notified once per delivery of every changed node, after the listeners.
+   *
+   * @param observer the observer
+   */
+  public void addObserver(@NonNull Observer<Node<T>> observer) {
+    mObservers.add(Objects.requireNonNull(observer));
+  }
+
+  public void removeObserver(@NonNull Observer<Node<T>> observer) {
+    mObservers.remove(observer);
+  }
+
+  /**
+   * Makes changes delivered together once the outermost batch completes. Batches nest.
+   *
+   * @param changes makes the changes
+   */
+  public void batch(@NonNull Runnable changes) {
+    begin();
+    try {
+      changes.run();
+    } finally {
+      end();
+    }
+  }
+
+  /** Delivers the pending changes now, unless within a batch. */
+  public void flush() {
+    mScheduled = false;
+    if (mBatchDepth > 0 || mRecords.isEmpty()) return;
+
+    var records = mRecords;
+    mRecords = new ArrayList<>();
+    mRecordsByNode = new IdentityHashMap<>();
+    var changes = coalesce(records);
+    if (changes.isEmpty()) return;
+
+    for (Listener<T> listener : mListeners) {
+      listener.onChanges(changes);
+    }
+    if (!mObservers.isEmpty()) {
+      for (Record<T> record : records) {
+        if (changes.mChanged.contains(record.node)) {
+          for (Observer<Node<T>> observer : mObservers) {
+            observer.onChange(record.node);
+          }
+        }
+      }
+    }
+  }
+
+  private ChangeSet<T> coalesce(List<Record<T>> records) {
+    var changes = new ChangeSet<T>();
+    Set<Node<T>> inserted = Collections.newSetFromMap(new IdentityHashMap<>());
+    Set<Node<T>> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Record<T> record : records) {
+      boolean attached = record.node.getChangeBus() == this;
+      if (!record.wasAttached) {
+        if (attached) inserted.add(record.node);
+      } else if (!attached) {
+        removed.add(record.node);
+      }
+    }
+
+    for (Record<T> record : records) {
+      var node = record.node;
+      if (inserted.contains(node)) {
+        if (!hasAncestorIn(node, inserted)) changes.mInserted.add(node);
+      } else if (removed.contains(node)) {
+        // a node removed with its previous parent or an ancestor is part of their subtree
+        if (!removed.contains(record.previousParent) && !hasAncestorIn(node, removed)) {
+          changes.mRemoved.add(node);
+          changes.mPreviousParents.put(node, record.previousParent);
+        }
+      } else if (record.wasAttached) {
+        if (node.getParent() != record.previousParent) {
+          changes.mMoved.add(node);
+          changes.mPreviousParents.put(node, record.previousParent);
+        }
+        // the subtree of an inserted node is reported as inserted
+        if (hasAncestorIn(node, inserted)) continue;
+        if (record.valueChanged) changes.mUpdated.add(node);
+        if (record.reordered) changes.mReordered.add(node);
+      }
+    }
+    changes.mChanged.addAll(changes.mInserted);
+    changes.mChanged.addAll(changes.mRemoved);
+    changes.mChanged.addAll(changes.mMoved);
+    changes.mChanged.addAll(changes.mUpdated);
+    changes.mChanged.addAll(changes.mReordered);
+    return changes;
+  }
+
+  private static <T> boolean hasAncestorIn(Node<T> node, Set<Node<T>> nodes) {
+    for (Node<T> parent = node.getParent(); parent != null; parent = parent.getParent()) {
+      if (nodes.contains(parent)) return true;
+    }
+    return false;
+  }
+
+  /** Defers deliveries until the matching {@link #end()}. */
+  void begin() {
+    mBatchDepth++;
+  }
+
+  void end() {
+    if (--mBatchDepth == 0 && !mRecords.isEmpty()) {
+      schedule();
+    }
+  }
+
+  private void schedule() {
+    if (mBatchDepth == 0 && !mScheduled) {
+      mScheduled = true;
+      mExecutor.execute(this::flush);
+    }
+  }
+
+  /**
+   * Returns the record of a node, created if new with the parent the node had in the tree before
+   * this change. The node was in the tree since the last delivery unless an ancestor was inserted
+   * since.
+   */
+  private Record<T> record(AbstractNode<T> node, @Nullable Node<T> previousParent) {
+    var record = mRecordsByNode.get(node);
+    if (record == null) {
+      boolean wasAttached = true;
+      for (Node<T> parent = previousParent; parent != null; parent = parent.getParent()) {
+        var parentRecord = parent instanceof AbstractNode ? mRecordsByNode.get(parent) : null;
+        if (parentRecord != null && !parentRecord.wasAttached) {
+          wasAttached = false;
+          break;
+        }
+      }
+      record = new Record<>(node, wasAttached, previousParent);
+      mRecordsByNode.put(node, record);
+      mRecords.add(record);
+    }
+    return record;
+  }
+
+  void onInserted(AbstractNode<T> node) {
+    if (!mRecordsByNode.containsKey(node)) {
+      var record = new Record<>(node, false, null);
+      mRecordsByNode.put(node, record);
+      mRecords.add(record);
+    }
+    schedule();
+  }
+
+  /** The node left its parent, to be removed or attached to another parent of this tree. */
+  void onDetached(AbstractNode<T> node, Node<T> previousParent) {
+    record(node, previousParent);
+    schedule();
+  }
+
+  void onValueChanged(AbstractNode<T> node) {
+    record(node, node.getParent()).valueChanged = true;
+    schedule();
+  }
+
+  void onReordered(AbstractNode<T> node) {
+    record(node, node.getParent()).reordered = true;
+    schedule();
+  }
+}
@@ -26,16 +26,13 @@ package com.eup.codeops.ast.core.transversal;
 import androidx.annotation.NonNull;
 import com.eup.codeops.ast.core.node.Node;
 import com.eup.codeops.ast.core.visitors.NodeVisitor;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.ArrayDeque;
 import java.util.Queue;
-import java.util.concurrent.CompletableFuture;
 
 /**
  * Implements a Breadth-First Search (BFS) traversal strategy for visiting nodes in a data
- * structure. This class offers both iterative and asynchronous traversal methods, with a
- * configurable breadth threshold to manage memory usage effectively.
+ * structure. Nodes are visited in level order on the calling thread, large trees can be traversed
+ * across cores with {@link ParallelTraversal}.
  *
  * <p>Usage example:
  *
@@ -78,16 +75,9 @@ import java.util.concurrent.CompletableFuture;
  */
 public class BFS<T> implements Traversable<T> {
 
-  /** Safe breadth threshold to prevent excessive memory usage. */
-  static final int SAFE_BREADTH_THRESHOLD = 500;
-
   @Override
   public Node<T> traverse(@NonNull Node<T> node, NodeVisitor<T> visitor, INext<T> next) {
-    if (node.getDepth() >= SAFE_BREADTH_THRESHOLD) {
-      traverseAsync(node, visitor, next);
-    } else {
-      traverseIterative(node, visitor, next);
-    }
+    traverseIterative(node, visitor, next);
     return node;
   }
 
@@ -99,7 +89,7 @@ public class BFS<T> implements Traversable<T> {
    * @param next the strategy for determining the next nodes to visit
    */
   private void traverseIterative(Node<T> node, NodeVisitor<T> visitor, INext<T> next) {
-    Queue<Node<T>> queue = new LinkedList<>();
+    Queue<Node<T>> queue = new ArrayDeque<>();
     queue.add(node);
     while (!queue.isEmpty()) {
       Node<T> currentNode = queue.poll();
@@ -112,47 +102,4 @@ public class BFS<T> implements Traversable<T> {
       }
     }
   }
-
-  /**
-   * Performs an asynchronous BFS traversal, using a queue to store nodes to visit and
-   * CompletableFuture to process nodes concurrently.
-   *
-   * @param node the node to start the traversal from
-   * @param visitor the visitor to apply to each node
-   * @param next the strategy for determining the next nodes to visit
-   */
-  private void traverseAsync(Node<T> node, NodeVisitor<T> visitor, INext<T> next) {
-    Queue<Node<T>> queue = new LinkedList<>();
-    queue.add(node);
-    while (!queue.isEmpty()) {
-      List<CompletableFuture<Void>> futures = new ArrayList<>();
-      int levelSize = queue.size();
-      for (int i = 0; i < levelSize; i++) {
-        Node<T> currentNode = queue.poll();
-        CompletableFuture<Void> future =
-            CompletableFuture.runAsync(() -> processNode(currentNode, visitor, next, queue));
-        futures.add(future);
-      }
-      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-    }
-  }
-
-  /**
-   * Processes a single node, visiting it and adding its children to the queue if necessary.
-   *
-   * @param node the node to process
-   * @param visitor the visitor to apply to the node
-   * @param next the strategy for determining the next nodes to visit
-   * @param queue the queue of nodes to visit
-   */
-  private void processNode(
-      Node<T> node, NodeVisitor<T> visitor, INext<T> next, Queue<Node<T>> queue) {
-
-    visitor.visit(node);
-    if (next.hasNext(node)) {
-      for (Node<T> child : node.getChildren()) {
-        queue.add(child);
-      }
-    }
-  }
 }
@@ -0,0 +1,175 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.transversal;
+
+import com.eup.codeops.ast.core.node.Node;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy iterators for each {@link Order}, walking the tree with an explicit stack or queue so deep
+ * trees do not overflow the call stack. The children of a node are only read once the iteration
+ * moves past it.
+ *
+ * @author EUP
+ */
+final class NodeIterators {
+
+  private NodeIterators() {}
+
+  /** Iterates a node then its descendants, depth first. */
+  static final class PreOrder<T> implements Iterator<Node<T>> {
+
+    private final INext<T> mNext;
+    // iterators over the pending children of each ancestor of the next node
+    private final ArrayDeque<Iterator<Node<T>>> mStack = new ArrayDeque<>();
+    private Node<T> mNextNode;
+    // the children of the last returned node are not yet pushed
+    private Node<T> mLastNode;
+
+    PreOrder(Node<T> root, INext<T> next) {
+      mNext = next;
+      mNextNode = root;
+    }
+
+    @Override
+    public boolean hasNext() {
+      advance();
+      return mNextNode != null;
+    }
+
+    @Override
+    public Node<T> next() {
+      advance();
+      if (mNextNode == null) {
+        throw new NoSuchElementException();
+      }
+      mLastNode = mNextNode;
+      mNextNode = null;
+      return mLastNode;
+    }
+
+    private void advance() {
+      if (mLastNode == null) return;
+
+      if (mNext.hasNext(mLastNode) && mLastNode.hasChildren()) {
+        mStack.push(mLastNode.getChildren().iterator());
+      }
+      mLastNode = null;
+      while (!mStack.isEmpty()) {
+        var children = mStack.peek();
+        if (children.hasNext()) {
+          mNextNode = children.next();
+          return;
+        }
+        mStack.pop();
+      }
+    }
+  }
+
+  /** Iterates the descendants of a node then the node, depth first. */
+  static final class PostOrder<T> implements Iterator<Node<T>> {
+
+    private final INext<T> mNext;
+    // the ancestors of the next node and iterators over their pending children
+    private final ArrayDeque<Node<T>> mNodes = new ArrayDeque<>();
+    private final ArrayDeque<Iterator<Node<T>>> mChildren = new ArrayDeque<>();
+    private Node<T> mNextNode;
+
+    PostOrder(Node<T> root, INext<T> next) {
+      mNext = next;
+      push(root);
+    }
+
+    private void push(Node<T> node) {
+      mNodes.push(node);
+      mChildren.push(
+          mNext.hasNext(node) && node.hasChildren()
+              ? node.getChildren().iterator()
+              : Collections.<Node<T>>emptyIterator());
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (mNextNode == null && !mNodes.isEmpty()) {
+        // descend to the first leaf not yet returned
+        while (mChildren.peek().hasNext()) {
+          push(mChildren.peek().next());
+        }
+        mChildren.pop();
+        mNextNode = mNodes.pop();
+      }
+      return mNextNode != null;
+    }
+
+    @Override
+    public Node<T> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      var node = mNextNode;
+      mNextNode = null;
+      return node;
+    }
+  }
+
+  /** Iterates a node then its descendants, level by level. */
+  static final class LevelOrder<T> implements Iterator<Node<T>> {
+
+    private final INext<T> mNext;
+    private final ArrayDeque<Node<T>> mQueue = new ArrayDeque<>();
+    // the children of the last returned node are not yet queued
+    private Node<T> mLastNode;
+
+    LevelOrder(Node<T> root, INext<T> next) {
+      mNext = next;
+      mQueue.add(root);
+    }
+
+    @Override
+    public boolean hasNext() {
+      advance();
+      return !mQueue.isEmpty();
+    }
+
+    @Override
+    public Node<T> next() {
+      advance();
+      if (mQueue.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      mLastNode = mQueue.poll();
+      return mLastNode;
+    }
+
+    private void advance() {
+      if (mLastNode != null && mNext.hasNext(mLastNode)) {
+        mQueue.addAll(mLastNode.getChildren());
+      }
+      mLastNode = null;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.transversal;
+
+import com.eup.codeops.ast.core.node.Node;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A lazy {@link Order#PRE} order spliterator splitting at subtree boundaries.
+ *
+ * <p>Pending subtrees are kept on an explicit stack, the next one on top. A split hands the top
+ * half of the stack, the subtrees encountered first, to the new spliterator. When a single subtree
+ * is pending its root and first half of children are split off instead.
+ *
+ * @param <T> the type of data stored in the nodes
+ * @author EUP
+ */
+final class NodeSpliterator<T> implements Spliterator<Node<T>> {
+
+  private final INext<T> mNext;
+  private final ArrayDeque<Node<T>> mStack;
+  // a node encountered before the stack whose children were split off, null if none
+  private Node<T> mHead;
+
+  NodeSpliterator(Node<T> root, INext<T> next) {
+    mNext = next;
+    mStack = new ArrayDeque<>();
+    mStack.push(root);
+  }
+
+  private NodeSpliterator(Node<T> head, ArrayDeque<Node<T>> stack, INext<T> next) {
+    mNext = next;
+    mStack = stack;
+    mHead = head;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super Node<T>> action) {
+    if (mHead != null) {
+      var head = mHead;
+      mHead = null;
+      action.accept(head);
+      return true;
+    }
+    if (mStack.isEmpty()) return false;
+
+    var node = mStack.pop();
+    if (mNext.hasNext(node) && node.hasChildren()) {
+      List<Node<T>> children = node.getChildren();
+      // pushed in reverse so the first child is on top
+      ListIterator<Node<T>> iterator = children.listIterator(children.size());
+      while (iterator.hasPrevious()) {
+        mStack.push(iterator.previous());
+      }
+    }
+    action.accept(node);
+    return true;
+  }
+
+  @Override
+  public Spliterator<Node<T>> trySplit() {
+    if (mHead != null || mStack.isEmpty()) return null;
+
+    var prefix = new ArrayDeque<Node<T>>();
+    if (mStack.size() > 1) {
+      for (int i = mStack.size() / 2; i > 0; i--) {
+        prefix.addLast(mStack.pop());
+      }
+      return new NodeSpliterator<>(null, prefix, mNext);
+    }
+
+    var node = mStack.peek();
+    if (!mNext.hasNext(node) || node.childrenSize() < 2) return null;
+
+    mStack.pop();
+    List<Node<T>> children = node.getChildren();
+    int half = children.size() / 2;
+    ListIterator<Node<T>> iterator = children.listIterator();
+    while (iterator.nextIndex() < half) {
+      prefix.addLast(iterator.next());
+    }
+    while (iterator.hasNext()) {
+      mStack.addLast(iterator.next());
+    }
+    return new NodeSpliterator<>(node, prefix, mNext);
+  }
+
+  @Override
+  public long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | DISTINCT | NONNULL;
+  }
+}
@@ -0,0 +1,95 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.transversal;
+
+import androidx.annotation.NonNull;
+import com.eup.codeops.ast.core.node.Node;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * The order nodes are iterated in.
+ *
+ * <pre>
+ * Optional&lt;Node&lt;String&gt;&gt; match =
+ *     root.stream(Order.PRE).filter(node -&gt; "main".equals(node.getValue())).findFirst();
+ * </pre>
+ *
+ * <p>Iteration is lazy, children are only read once the iteration reaches their parent, so
+ * short-circuiting operations stop without visiting the rest of the tree.
+ *
+ * @see Node#stream(Order)
+ * @see Node#iterator(Order)
+ * @author EUP
+ */
+public enum Order {
+
+  /** Depth first, a node before its descendants. */
+  PRE,
+
+  /** Depth first, a node after its descendants. */
+  POST,
+
+  /** Breadth first, level by level. */
+  LEVEL;
+
+  private static final int CHARACTERISTICS =
+      Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+
+  /**
+   * Returns an iterator over a subtree.
+   *
+   * @param root the root of the subtree, iterated first in {@link #PRE} and {@link #LEVEL} order
+   * @param next the strategy for determining whether the children of a node are iterated
+   * @return the lazy iterator
+   */
+  @NonNull
+  public <T> Iterator<Node<T>> iterator(@NonNull Node<T> root, @NonNull INext<T> next) {
+    switch (this) {
+      case POST:
+        return new NodeIterators.PostOrder<>(root, next);
+      case LEVEL:
+        return new NodeIterators.LevelOrder<>(root, next);
+      default:
+        return new NodeIterators.PreOrder<>(root, next);
+    }
+  }
+
+  /**
+   * Returns a spliterator over a subtree. {@link #PRE} order spliterators split at subtree
+   * boundaries, the others split by batches.
+   *
+   * @param root the root of the subtree
+   * @param next the strategy for determining whether the children of a node are iterated
+   * @return the lazy spliterator
+   */
+  @NonNull
+  public <T> Spliterator<Node<T>> spliterator(@NonNull Node<T> root, @NonNull INext<T> next) {
+    if (this == PRE) {
+      return new NodeSpliterator<>(root, next);
+    }
+    return Spliterators.spliteratorUnknownSize(iterator(root, next), CHARACTERISTICS);
+  }
+}
@@ -0,0 +1,316 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.transversal;
+
+import androidx.annotation.NonNull;
+import com.eup.codeops.ast.core.node.Node;
+import com.eup.codeops.ast.core.visitors.ConcurrentNodeVisitor;
+import com.eup.codeops.ast.core.visitors.NodeVisitor;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Implements a parallel traversal strategy on a {@link ForkJoinPool}.
+ *
+ * <p>Each task walks its part of the tree depth first with a local stack. Once a task has visited
+ * a grain of nodes and the pool has idle workers, it splits off the half of its pending nodes
+ * closest to the root, which carry the largest unvisited subtrees, into a new task. Subtrees
+ * smaller than a grain are therefore never split and small trees are walked on the calling thread
+ * without touching the pool.
+ *
+ * <p>Nodes are visited in no particular order, except that a node is always visited before its
+ * descendants. Visitors implementing {@link ConcurrentNodeVisitor} are called concurrently, the
+ * calls to other visitors are serialized. The tree must not be modified during the traversal.
+ *
+ * <p>Aggregates such as leaf counts run across cores with {@link #traverseAndReduce} or {@link
+ * #count}:
+ *
+ * <pre>
+ * long leaves = new ParallelTraversal&lt;String&gt;().count(root, Node::isLeaf, node -&gt; true);
+ * </pre>
+ *
+ * @param <T> the type of data stored in the nodes
+ * @author EUP
+ */
+public class ParallelTraversal<T> implements Traversable<T> {
+
+  /** Nodes a task visits before it considers splitting. */
+  public static final int DEFAULT_GRAIN = 1024;
+
+  // tasks already queued and not yet stolen, above which splitting further only adds overhead
+  private static final int MAX_SURPLUS_TASKS = 2;
+
+  private final ForkJoinPool mPool;
+  private final int mGrain;
+
+  /** Creates a parallel traversal on the common pool. */
+  public ParallelTraversal() {
+    this(ForkJoinPool.commonPool(), DEFAULT_GRAIN);
+  }
+
+  /**
+   * @param pool the pool to run the traversal on
+   * @param grain the nodes a task visits before it considers splitting, positive
+   */
+  public ParallelTraversal(@NonNull ForkJoinPool pool, int grain) {
+    if (grain <= 0) {
+      throw new IllegalArgumentException("Invalid grain: " + grain);
+    }
+    mPool = pool;
+    mGrain = grain;
+  }
+
+  /** {@inheritDoc Traversable#traverse} */
+  @Override
+  public Node<T> traverse(
+      @NonNull Node<T> node, @NonNull NodeVisitor<T> visitor, @NonNull INext<T> next) {
+    NodeVisitor<T> safeVisitor;
+    if (visitor instanceof ConcurrentNodeVisitor) {
+      safeVisitor = visitor;
+    } else {
+      safeVisitor =
+          child -> {
+            synchronized (visitor) {
+              visitor.visit(child);
+            }
+          };
+    }
+    run(node, new VisitSink<>(safeVisitor), next);
+    return node;
+  }
+
+  /**
+   * Maps every visited node and combines the results.
+   *
+   * @param node the node to start the traversal from
+   * @param identity the identity of the combiner
+   * @param mapper maps a node to a result, called concurrently
+   * @param combiner combines two results, must be associative and commutative
+   * @param next the strategy for determining the next nodes to visit
+   * @return the combined result, {@code identity} if no node is visited
+   */
+  public <R> R traverseAndReduce(
+      @NonNull Node<T> node,
+      R identity,
+      @NonNull Function<? super Node<T>, ? extends R> mapper,
+      @NonNull BinaryOperator<R> combiner,
+      @NonNull INext<T> next) {
+    var sink = new ReduceSink<T, R>(identity, mapper, combiner);
+    run(node, sink, next);
+    return sink.mResult;
+  }
+
+  /**
+   * Counts the visited nodes matching a predicate, without boxing.
+   *
+   * @param node the node to start the traversal from
+   * @param predicate the nodes to count, called concurrently
+   * @param next the strategy for determining the next nodes to visit
+   * @return the number of matching nodes
+   */
+  public long count(
+      @NonNull Node<T> node,
+      @NonNull Predicate<? super Node<T>> predicate,
+      @NonNull INext<T> next) {
+    var sink = new CountSink<T>(predicate);
+    run(node, sink, next);
+    return sink.mCount;
+  }
+
+  private void run(Node<T> node, Sink<T> sink, INext<T> next) {
+    var pending = new ArrayDeque<Node<T>>();
+    pending.push(node);
+    var walk = new Walk(pending, sink, next);
+    if (ForkJoinTask.inForkJoinPool()) {
+      // nested in another task, split from the start
+      walk.invoke();
+      return;
+    }
+    walk.visit(mGrain);
+    if (!pending.isEmpty()) {
+      mPool.invoke(walk);
+    }
+  }
+
+  /** Walks a part of the tree, splitting off pending subtrees when workers are idle. */
+  private final class Walk extends RecursiveAction {
+
+    private final ArrayDeque<Node<T>> mPending;
+    private final Sink<T> mSink;
+    private final INext<T> mNext;
+
+    Walk(ArrayDeque<Node<T>> pending, Sink<T> sink, INext<T> next) {
+      mPending = pending;
+      mSink = sink;
+      mNext = next;
+    }
+
+    @Override
+    protected void compute() {
+      List<Walk> forks = null;
+      while (!mPending.isEmpty()) {
+        visit(mGrain);
+        if (mPending.size() > 1 && getSurplusQueuedTaskCount() <= MAX_SURPLUS_TASKS) {
+          var split = new ArrayDeque<Node<T>>();
+          for (int i = mPending.size() / 2; i > 0; i--) {
+            // the bottom of the stack holds the nodes closest to the root
+            split.push(mPending.removeLast());
+          }
+          var fork = new Walk(split, mSink.split(), mNext);
+          fork.fork();
+          if (forks == null) {
+            forks = new ArrayList<>();
+          }
+          forks.add(fork);
+        }
+      }
+      if (forks != null) {
+        for (int i = forks.size() - 1; i >= 0; i--) {
+          var fork = forks.get(i);
+          fork.join();
+          mSink.merge(fork.mSink);
+        }
+      }
+    }
+
+    /** Visits pending nodes depth first until the budget is spent or none are left. */
+    void visit(int budget) {
+      for (; budget > 0 && !mPending.isEmpty(); budget--) {
+        Node<T> node = mPending.pop();
+        mSink.accept(node);
+        if (mNext.hasNext(node)) {
+          List<Node<T>> children = node.getChildren();
+          // pushed in reverse so the first child is visited first
+          ListIterator<Node<T>> iterator = children.listIterator(children.size());
+          while (iterator.hasPrevious()) {
+            mPending.push(iterator.previous());
+          }
+        }
+      }
+    }
+  }
+
+  /** Accumulates the visited nodes of a task. */
+  private interface Sink<T> {
+
+    void accept(Node<T> node);
+
+    /** Returns an empty sink for a split off task. */
+    Sink<T> split();
+
+    /** Merges the sink of a joined task into this one. */
+    void merge(Sink<T> other);
+  }
+
+  private static final class VisitSink<T> implements Sink<T> {
+
+    private final NodeVisitor<T> mVisitor;
+
+    VisitSink(NodeVisitor<T> visitor) {
+      mVisitor = visitor;
+    }
+
+    @Override
+    public void accept(Node<T> node) {
+      mVisitor.visit(node);
+    }
+
+    @Override
+    public Sink<T> split() {
+      return this;
+    }
+
+    @Override
+    public void merge(Sink<T> other) {
+      // No-op
+    }
+  }
+
+  private static final class ReduceSink<T, R> implements Sink<T> {
+
+    private final R mIdentity;
+    private final Function<? super Node<T>, ? extends R> mMapper;
+    private final BinaryOperator<R> mCombiner;
+    R mResult;
+
+    ReduceSink(
+        R identity, Function<? super Node<T>, ? extends R> mapper, BinaryOperator<R> combiner) {
+      mIdentity = identity;
+      mMapper = mapper;
+      mCombiner = combiner;
+      mResult = identity;
+    }
+
+    @Override
+    public void accept(Node<T> node) {
+      mResult = mCombiner.apply(mResult, mMapper.apply(node));
+    }
+
+    @Override
+    public Sink<T> split() {
+      return new ReduceSink<>(mIdentity, mMapper, mCombiner);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void merge(Sink<T> other) {
+      mResult = mCombiner.apply(mResult, ((ReduceSink<T, R>) other).mResult);
+    }
+  }
+
+  private static final class CountSink<T> implements Sink<T> {
+
+    private final Predicate<? super Node<T>> mPredicate;
+    long mCount;
+
+    CountSink(Predicate<? super Node<T>> predicate) {
+      mPredicate = predicate;
+    }
+
+    @Override
+    public void accept(Node<T> node) {
+      if (mPredicate.test(node)) {
+        mCount++;
+      }
+    }
+
+    @Override
+    public Sink<T> split() {
+      return new CountSink<>(mPredicate);
+    }
+
+    @Override
+    public void merge(Sink<T> other) {
+      mCount += ((CountSink<T>) other).mCount;
+    }
+  }
+}
@@ -0,0 +1,428 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+package com.eup.codeops.ast.core.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.eup.codeops.ast.core.node.Node;
+import com.eup.codeops.ast.core.node.NodeIdAllocator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A read-only {@link Node} view of a node of a tree read by {@link TreeBinaryReader}, holding the
+ * reader and the pre-order ordinal of the node. The parent and number of children are decoded
+ * from the record of the node when first needed, the value when first asked for.
+ *
+ * <p>The level of a node is derived from its depth and the index of a node is its position among
+ * its siblings, their setters are no-ops. Mapped nodes have no identifiers. Every other mutator
+ * throws {@link UnsupportedOperationException}.
+ *
+ * @param <T> the type of data stored in the node
+ * @author EUP
+ */
+final class MappedNode<T> implements Node<T> {
+
+  private static final int UNDECODED = -2;
+  private static final int NO_PARENT = -1;
+  private static final Object NO_VALUE = new Object();
+
+  private final TreeBinaryReader<T> mReader;
+  private final int mOrdinal;
+  // decoded lazily, racing threads decode equal fields, the child count is published by the parent
+  private volatile int mParent = UNDECODED;
+  private int mChildCount;
+  private volatile Object mValue = NO_VALUE;
+
+  MappedNode(TreeBinaryReader<T> reader, int ordinal) {
+    mReader = reader;
+    mOrdinal = ordinal;
+  }
+
+  private void decodeStructure() {
+    var record = mReader.readRecord(mOrdinal);
+    long distance = record.readVarint();
+    long childCount = record.readVarint();
+    if (distance > mOrdinal || (distance == 0) != (mOrdinal == 0) || childCount >= size()) {
+      throw TreeBinaryReader.corrupt(mOrdinal);
+    }
+    mChildCount = (int) childCount;
+    mParent = distance == 0 ? NO_PARENT : mOrdinal - (int) distance;
+  }
+
+  private int parent() {
+    if (mParent == UNDECODED) decodeStructure();
+    return mParent;
+  }
+
+  private int size() {
+    return mReader.getSubtreeSize(mOrdinal);
+  }
+
+  /** The ordinal after the subtree of this node, that of its next sibling if any. */
+  private int end() {
+    return mOrdinal + size();
+  }
+
+  private MappedNode<T> node(int ordinal) {
+    return (MappedNode<T>) mReader.getNode(ordinal);
+  }
+
+  private UnsupportedOperationException readOnly() {
+    return new UnsupportedOperationException(
+        "Mapped nodes are read-only, copy the tree to edit it e.g. with CompactTree.copyOf");
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public T getValue() {
+    Object value = mValue;
+    if (value == NO_VALUE) {
+      var record = mReader.readRecord(mOrdinal);
+      record.readVarint(); // distance to the parent
+      record.readVarint(); // number of children
+      value = mReader.readValue(record);
+      mValue = value;
+    }
+    return (T) value;
+  }
+
+  @Override
+  public Node<T> setValue(T value) {
+    throw readOnly();
+  }
+
+  @Override
+  public Node<T> getParent() {
+    int parent = parent();
+    return parent == NO_PARENT ? null : node(parent);
+  }
+
+  @Override
+  public Node<T> setParent(@Nullable Node<T> parent) {
+    throw readOnly();
+  }
+
+  @Override
+  public Node<T> addChild(Node<T> child) {
+    throw readOnly();
+  }
+
+  @Override
+  public Node<T> addChild(Node<T> child, int index) {
+    throw readOnly();
+  }
+
+  @Override
+  public Node<T> addChild(@NonNull Node<T> child, @Nullable Comparator<Node<T>> comparator) {
+    throw readOnly();
+  }
+
+  @Override
+  public Node<T> addChildren(List<Node<T>> children) {
+    throw readOnly();
+  }
+
+  @Override
+  public Node<T> addChildren(Node<T>[] children) {
+    throw readOnly();
+  }
+
+  @Override
+  public Node<T> addChildren(
+      @NonNull List<Node<T>> children, @Nullable Comparator<Node<T>> comparator) {
+    throw readOnly();
+  }
+
+  @Override
+  public Node<T> sortChildren(@NonNull Comparator<Node<T>> comparator) {
+    throw readOnly();
+  }
+
+  @Override
+  public Node<T> updateChildren(
+      @NonNull List<Node<T>> children, @Nullable Comparator<Node<T>> comparator) {
+    throw readOnly();
+  }
+
+  @Override
+  public List<Node<T>> getChildren() {
+    int count = childrenSize();
+    if (count == 0) return Collections.emptyList();
+
+    var children = new ArrayList<Node<T>>(count);
+    int child = mOrdinal + 1;
+    for (int i = 0; i < count; i++) {
+      var node = node(child);
+      children.add(node);
+      child = node.end();
+    }
+    return Collections.unmodifiableList(children);
+  }
+
+  @Override
+  public Node<T> getChild(int index) {
+    int count = childrenSize();
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException("Invalid index: " + index + ", size is " + count);
+    }
+    int child = mOrdinal + 1;
+    for (int i = 0; i < index; i++) {
+      child = node(child).end();
+    }
+    return node(child);
+  }
+
+  @Override
+  public int removeChild(Node<T> child) {
+    throw readOnly();
+  }
+
+  @Override
+  public int removeAllChildren() {
+    throw readOnly();
+  }
+
+  @Override
+  public boolean isLeaf() {
+    return size() == 1;
+  }
+
+  @Override
+  public boolean hasChildren() {
+    return size() > 1;
+  }
+
+  @Override
+  public int childrenSize() {
+    if (mParent == UNDECODED) decodeStructure();
+    return mChildCount;
+  }
+
+  @Override
+  public int getDepth() {
+    int depth = 1;
+    for (int node = parent(); node != NO_PARENT; node = node(node).parent()) {
+      depth++;
+    }
+    return depth;
+  }
+
+  @Override
+  public int getApparentDepth() {
+    return getLevel() + getIndex();
+  }
+
+  @Override
+  public int getBreadth() {
+    return size() - 1;
+  }
+
+  @Override
+  public int getLevel() {
+    return mReader.getRootLevel() + getDepth() - 1;
+  }
+
+  /** No-op, the level of a mapped node is derived from its depth. */
+  @Override
+  public Node<T> setLevel(int level) {
+    return this;
+  }
+
+  /** No-op, the level of a mapped node is derived from its depth. */
+  @Override
+  public Node<T> updateChildrenLevels() {
+    return this;
+  }
+
+  /** No-op, the level of a mapped node is derived from its depth. */
+  @Override
+  public Node<T> updateDirectChildrenLevels(int level) {
+    return this;
+  }
+
+  @Override
+  public String getAncestorPath() {
+    int depth = getDepth();
+    int level = mReader.getRootLevel() + depth - 1;
+    var path = new StringBuilder();
+    for (int i = mReader.getRootLevel(); i < level; i++) {
+      path.append(NODE_SEPARATOR).append(i).append(NODE_SEPARATOR).append(i + 1);
+    }
+    return path.toString();
+  }
+
+  @Override
+  public boolean isRoot() {
+    return parent() == NO_PARENT;
+  }
+
+  @Override
+  public Node<T> getRoot() {
+    return node(0);
+  }
+
+  @Override
+  public boolean isLastChild() {
+    int parent = parent();
+    return parent != NO_PARENT && end() == node(parent).end();
+  }
+
+  @Override
+  public boolean isFirstChild() {
+    int parent = parent();
+    return parent != NO_PARENT && mOrdinal == parent + 1;
+  }
+
+  @Override
+  public Node<T> getLastChildNode() {
+    int count = childrenSize();
+    return count == 0 ? null : getChild(count - 1);
+  }
+
+  @Override
+  public Node<T> getFirstChildNode() {
+    return isLeaf() ? null : node(mOrdinal + 1);
+  }
+
+  @Override
+  public Node<T> getLastSibling() {
+    int parent = parent();
+    return parent == NO_PARENT ? null : node(parent).getLastChildNode();
+  }
+
+  @Override
+  public Node<T> getFirstSibling() {
+    int parent = parent();
+    return parent == NO_PARENT ? null : node(parent + 1);
+  }
+
+  @Override
+  public String toJsonString(int indent) {
+    return TreeJsonWriter.toJsonString(this, indent);
+  }
+
+  /** {@inheritDoc} The index of a mapped node is its position among its siblings. */
+  @Override
+  public int getIndex() {
+    int parent = parent();
+    if (parent == NO_PARENT) return 0;
+
+    int index = 0;
+    for (int child = parent + 1; child != mOrdinal; child = node(child).end()) {
+      index++;
+    }
+    return index;
+  }
+
+  /** No-op, the index of a mapped node is its position among its siblings. */
+  @Override
+  public Node<T> setIndex(int index) {
+    return this;
+  }
+
+  /** {@inheritDoc} The subtree of a node is the range of ordinals following it. */
+  @Override
+  public List<Node<T>> listNeighbours(boolean includeNode) {
+    int end = end();
+    var neighbours = new ArrayList<Node<T>>(end - mOrdinal);
+    for (int node = includeNode ? mOrdinal : mOrdinal + 1; node < end; node++) {
+      neighbours.add(node(node));
+    }
+    return neighbours;
+  }
+
+  @Override
+  public void removeRange(int fromIndex, int toIndex) {
+    throw readOnly();
+  }
+
+  /** Mapped nodes have no identifiers. */
+  @Nullable
+  @Override
+  public UUID getID() {
+    return null;
+  }
+
+  /** Mapped nodes have no identifiers. */
+  @Override
+  public long getNumericID() {
+    return NodeIdAllocator.NO_ID;
+  }
+
+  @Override
+  public int getLeafCount(boolean includeDescendants) {
+    int leafCount = 0;
+    if (includeDescendants) {
+      // the subtree of a leaf is the leaf
+      for (int node = mOrdinal, end = end(); node < end; node++) {
+        if (mReader.getSubtreeSize(node) == 1) {
+          leafCount++;
+        }
+      }
+      return leafCount;
+    }
+    for (Node<T> child : getChildren()) {
+      if (child.isLeaf()) {
+        leafCount++;
+      }
+    }
+    return leafCount;
+  }
+
+  @Override
+  public void setID(UUID id) {
+    throw readOnly();
+  }
+
+  /** Views are equal if they are views of the same node of the same reader. */
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) return true;
+    if (!(object instanceof MappedNode)) return false;
+
+    var other = (MappedNode<?>) object;
+    return mReader == other.mReader && mOrdinal == other.mOrdinal;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * System.identityHashCode(mReader) + mOrdinal;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s@%s (ordinal=%d, value=%s, level=%s, leaf=%s, root=%s)",
+        getClass().getSimpleName(),
+        Integer.toHexString(System.identityHashCode(mReader)),
+        mOrdinal,
+        getValue(),
+        getLevel(),
+        isLeaf(),
+        isRoot());
+  }
+}
@@ -24,27 +24,26 @@
 package com.eup.codeops.ast.core.util;
 
 import com.eup.codeops.ast.core.node.Node;
+import com.eup.codeops.ast.core.transversal.Order;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 public class NodeFactory {
 
+  /**
+   * Lists the descendants of a node in pre-order, without recursion.
+   *
+   * @param root the node
+   * @return the descendants, excluding the node itself
+   */
   public static <T> List<Node<T>> getNodeNeighbours(Node<T> root) {
     List<Node<T>> allNodes = new ArrayList<>();
 
-    PopulatNeighbours(allNodes, root);
-    allNodes.remove(root);
+    Iterator<Node<T>> iterator = root.iterator(Order.PRE);
+    iterator.next(); // skips the root
+    iterator.forEachRemaining(allNodes::add);
 
     return allNodes;
   }
-
-  private static <T> void PopulatNeighbours(List<Node<T>> nodes, Node<T> node) {
-    nodes.add(node);
-
-    if (node.hasChildren()) {
-      for (Node<T> child : node.getChildren()) {
-        PopulatNeighbours(nodes, child);
-      }
-    }
-  }
 }
@@ -0,0 +1,257 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+package com.eup.codeops.ast.core.util;
+
+import static com.eup.codeops.ast.core.util.TreeBinaryWriter.FLAG_STRING_TABLE;
+import static com.eup.codeops.ast.core.util.TreeBinaryWriter.FOOTER_SIZE;
+import static com.eup.codeops.ast.core.util.TreeBinaryWriter.HEADER_SIZE;
+import static com.eup.codeops.ast.core.util.TreeBinaryWriter.MAGIC;
+import static com.eup.codeops.ast.core.util.TreeBinaryWriter.VERSION;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.eup.codeops.ast.core.node.Node;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a tree written by {@link TreeBinaryWriter}, memory mapping the file so opening it only
+ * checks its footer.
+ *
+ * <p>Nodes are read-only views created the first time they are reached and kept, a node decodes
+ * its record when its structure is first needed and its value when first asked for. Navigating
+ * the tree only touches the records of the nodes visited, sizes and leaves are read from the node
+ * table. To edit a tree, copy it, e.g. with {@link
+ * com.eup.codeops.ast.core.node.CompactTree#copyOf(Node)}.
+ *
+ * <p>Readers may be shared between threads. A corrupt file is rejected when opened if its header,
+ * footer or tables are invalid, a corrupt record throws a runtime exception when decoded.
+ *
+ * @param <T> the type of data stored in the nodes
+ * @author EUP
+ */
+public final class TreeBinaryReader<T> {
+
+  private final ByteBuffer mBuffer;
+  private final ValueCodec<T> mCodec;
+  private final boolean mStringTable;
+  private final int mCount;
+  private final int mRootLevel;
+  private final int mStringCount;
+  private final int mStringOffsets;
+  private final int mNodeTable;
+  // created as reached, racing threads create equal views
+  private final MappedNode<T>[] mNodes;
+  private final String[] mStrings;
+
+  @SuppressWarnings("unchecked")
+  private TreeBinaryReader(ByteBuffer buffer, ValueCodec<T> codec) throws IOException {
+    mBuffer = buffer;
+    mCodec = codec;
+
+    int limit = buffer.limit();
+    if (limit < HEADER_SIZE + FOOTER_SIZE
+        || buffer.getInt(0) != MAGIC
+        || buffer.getInt(limit - 4) != MAGIC) {
+      throw new IOException("Not a tree file");
+    }
+    if (buffer.get(4) != VERSION) {
+      throw new IOException("Unsupported tree file version " + buffer.get(4));
+    }
+    mStringTable = (buffer.get(5) & FLAG_STRING_TABLE) != 0;
+
+    int footer = limit - FOOTER_SIZE;
+    mCount = buffer.getInt(footer);
+    mRootLevel = buffer.getInt(footer + 4);
+    mStringCount = buffer.getInt(footer + 8);
+    mStringOffsets = buffer.getInt(footer + 12);
+    mNodeTable = buffer.getInt(footer + 16);
+    if (mCount <= 0
+        || mStringCount < 0
+        || mStringOffsets < HEADER_SIZE
+        || (long) mStringOffsets + 4L * mStringCount != mNodeTable
+        || (long) mNodeTable + 8L * mCount != footer) {
+      throw new IOException("Corrupt tree file");
+    }
+    mNodes = new MappedNode[mCount];
+    mStrings = new String[mStringCount];
+  }
+
+  /**
+   * Opens a tree file, mapping it read-only. The mapping outlives the reader until collected.
+   *
+   * @param path the file
+   * @param codec reads the values
+   * @throws IOException if the file cannot be mapped or is not a valid tree file
+   */
+  @NonNull
+  public static <T> TreeBinaryReader<T> open(@NonNull Path path, @NonNull ValueCodec<T> codec)
+      throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Tree file exceeds " + Integer.MAX_VALUE + " bytes");
+      }
+      return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), codec);
+    }
+  }
+
+  /**
+   * Reads a tree from the remaining bytes of a buffer, which must not change while read.
+   *
+   * @param buffer the bytes of a tree file
+   * @param codec reads the values
+   * @throws IOException if the bytes are not a valid tree file
+   */
+  @NonNull
+  public static <T> TreeBinaryReader<T> of(@NonNull ByteBuffer buffer, @NonNull ValueCodec<T> codec)
+      throws IOException {
+    return new TreeBinaryReader<>(buffer.slice().order(ByteOrder.BIG_ENDIAN), codec);
+  }
+
+  @NonNull
+  public Node<T> getRoot() {
+    return getNode(0);
+  }
+
+  /**
+   * @param ordinal the position of the node in pre-order, 0 being the root
+   * @return the node
+   */
+  @NonNull
+  public Node<T> getNode(int ordinal) {
+    if (ordinal < 0 || ordinal >= mCount) {
+      throw new IndexOutOfBoundsException("Invalid ordinal: " + ordinal + ", size is " + mCount);
+    }
+    var node = mNodes[ordinal];
+    if (node == null) {
+      node = new MappedNode<>(this, ordinal);
+      mNodes[ordinal] = node;
+    }
+    return node;
+  }
+
+  /** The number of nodes of the tree. */
+  public int size() {
+    return mCount;
+  }
+
+  int getRootLevel() {
+    return mRootLevel;
+  }
+
+  /** The number of nodes of the subtree of a node. */
+  int getSubtreeSize(int ordinal) {
+    int size = mBuffer.getInt(mNodeTable + 8 * ordinal + 4);
+    if (size < 1 || size > mCount - ordinal) {
+      throw corrupt(ordinal);
+    }
+    return size;
+  }
+
+  /** Starts decoding the record of a node. */
+  Source readRecord(int ordinal) {
+    int offset = mBuffer.getInt(mNodeTable + 8 * ordinal);
+    if (offset < HEADER_SIZE || offset >= mStringOffsets) {
+      throw corrupt(ordinal);
+    }
+    return new Source(offset);
+  }
+
+  static IllegalStateException corrupt(int ordinal) {
+    return new IllegalStateException("Corrupt tree file at node " + ordinal);
+  }
+
+  /** Decodes the value at the current position of a record. */
+  T readValue(Source source) {
+    return mCodec.read(source);
+  }
+
+  private String getString(int index) {
+    if (index < 0 || index >= mStringCount) {
+      throw new IllegalStateException("Invalid string index: " + index);
+    }
+    var string = mStrings[index];
+    if (string == null) {
+      var source = new Source(mBuffer.getInt(mStringOffsets + 4 * index));
+      string = source.readUtf8((int) source.readVarint());
+      mStrings[index] = string;
+    }
+    return string;
+  }
+
+  /** Reads a record from an absolute position, independently of other sources. */
+  final class Source implements ValueCodec.Input {
+
+    private int mPosition;
+
+    Source(int position) {
+      mPosition = position;
+    }
+
+    @Override
+    public long readVarint() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        byte b = mBuffer.get(mPosition++);
+        value |= (long) (b & 0x7F) << shift;
+        if (b >= 0) return value;
+      }
+      throw new IllegalStateException("Malformed varint at " + (mPosition - 1));
+    }
+
+    @Override
+    public byte readByte() {
+      return mBuffer.get(mPosition++);
+    }
+
+    @NonNull
+    @Override
+    public byte[] readBytes(int length) {
+      byte[] bytes = new byte[length];
+      // absolute bulk reads are not available on older Android releases
+      ByteBuffer view = mBuffer.duplicate();
+      view.position(mPosition);
+      view.get(bytes);
+      mPosition += length;
+      return bytes;
+    }
+
+    @Nullable
+    @Override
+    public String readString() {
+      long value = readVarint();
+      if (value == 0) return null;
+      return mStringTable ? getString((int) (value - 1)) : readUtf8((int) (value - 1));
+    }
+
+    String readUtf8(int length) {
+      return new String(readBytes(length), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,275 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+package com.eup.codeops.ast.core.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.eup.codeops.ast.core.node.Node;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a tree in a compact binary format read back by {@link TreeBinaryReader}, e.g. to cache
+ * the outline of a project across launches.
+ *
+ * <p>The nodes are written in a single iterative pre-order pass, followed by the tables letting a
+ * reader find any node without decoding the others:
+ *
+ * <ul>
+ *   <li>Header: the magic number, the version and the flags.
+ *   <li>Records, one per node in pre-order: the varint distance to the parent, the varint number
+ *       of children and the value written by the {@link ValueCodec}.
+ *   <li>String table, if enabled: the varint length and UTF-8 bytes of every distinct string,
+ *       then the 32-bit offset of each.
+ *   <li>Node table: the 32-bit offset of the record and the size of the subtree of each node.
+ *   <li>Footer: the number of nodes, the level of the root, the number of strings, the offsets of
+ *       both tables and the magic number, as 32-bit integers.
+ * </ul>
+ *
+ * Only values and structure are kept: levels are derived from the level of the root, identifiers
+ * are not written. Files are limited to 2 GiB, the size of a memory mapping.
+ *
+ * @param <T> the type of data stored in the nodes
+ * @author EUP
+ */
+public final class TreeBinaryWriter<T> {
+
+  static final int MAGIC = 0x43545245; // "CTRE"
+  static final int VERSION = 1;
+  static final int FLAG_STRING_TABLE = 1;
+  static final int HEADER_SIZE = 6;
+  static final int FOOTER_SIZE = 24;
+
+  private final ValueCodec<T> mCodec;
+  private final boolean mStringTable;
+
+  /**
+   * Creates a writer storing every distinct string once.
+   *
+   * @param codec writes the values
+   */
+  public TreeBinaryWriter(@NonNull ValueCodec<T> codec) {
+    this(codec, true);
+  }
+
+  /**
+   * @param codec writes the values
+   * @param stringTable whether strings are stored once in a table rather than in every record
+   */
+  public TreeBinaryWriter(@NonNull ValueCodec<T> codec, boolean stringTable) {
+    mCodec = codec;
+    mStringTable = stringTable;
+  }
+
+  /**
+   * Writes a tree to a file, replacing it.
+   *
+   * @param root the root of the tree
+   * @param path the file
+   */
+  public void write(@NonNull Node<T> root, @NonNull Path path) throws IOException {
+    try (var out = Files.newOutputStream(path)) {
+      write(root, out);
+    }
+  }
+
+  /**
+   * Writes a tree to a stream, which is flushed but not closed.
+   *
+   * @param root the root of the tree
+   * @param out the stream
+   */
+  public void write(@NonNull Node<T> root, @NonNull OutputStream out) throws IOException {
+    var sink = new Sink(out, mStringTable);
+    sink.writeInt(MAGIC);
+    sink.writeByte(VERSION);
+    sink.writeByte(mStringTable ? FLAG_STRING_TABLE : 0);
+
+    var parents = new ArrayDeque<Integer>();
+    var iterators = new ArrayDeque<Iterator<Node<T>>>();
+    parents.push(sink.writeRecord(root, -1, mCodec));
+    iterators.push(root.getChildren().iterator());
+    while (!iterators.isEmpty()) {
+      var children = iterators.peek();
+      if (children.hasNext()) {
+        var child = children.next();
+        parents.push(sink.writeRecord(child, parents.peek(), mCodec));
+        iterators.push(child.getChildren().iterator());
+      } else {
+        iterators.pop();
+        int ordinal = parents.pop();
+        sink.mSizes[ordinal] = sink.mCount - ordinal;
+      }
+    }
+
+    int[] stringOffsets = new int[sink.mStrings.size()];
+    for (int i = 0; i < stringOffsets.length; i++) {
+      stringOffsets[i] = sink.offset();
+      byte[] bytes = sink.mStrings.get(i).getBytes(StandardCharsets.UTF_8);
+      sink.writeVarint(bytes.length);
+      sink.writeBytes(bytes);
+    }
+    int stringTable = sink.offset();
+    for (int offset : stringOffsets) {
+      sink.writeInt(offset);
+    }
+    int nodeTable = sink.offset();
+    for (int i = 0; i < sink.mCount; i++) {
+      sink.writeInt(sink.mOffsets[i]);
+      sink.writeInt(sink.mSizes[i]);
+    }
+
+    sink.writeInt(sink.mCount);
+    sink.writeInt(root.getLevel());
+    sink.writeInt(stringOffsets.length);
+    sink.writeInt(stringTable);
+    sink.writeInt(nodeTable);
+    sink.writeInt(MAGIC);
+    sink.offset(); // fails if the file outgrew a mapping
+    sink.flush();
+  }
+
+  /** Buffers the bytes written and records the offsets and subtree sizes of the nodes. */
+  private static final class Sink implements ValueCodec.Output {
+
+    private final OutputStream mOut;
+    private final byte[] mBuffer = new byte[1 << 16];
+    private int mBuffered;
+    private long mFlushed;
+
+    private final boolean mStringTable;
+    private final Map<String, Integer> mStringIndices = new HashMap<>();
+    final List<String> mStrings = new ArrayList<>();
+
+    int[] mOffsets = new int[1024];
+    int[] mSizes = new int[1024];
+    int mCount;
+
+    Sink(OutputStream out, boolean stringTable) {
+      mOut = out;
+      mStringTable = stringTable;
+    }
+
+    /** Writes the record of a node and returns its ordinal. */
+    <T> int writeRecord(Node<T> node, int parent, ValueCodec<T> codec) throws IOException {
+      int ordinal = mCount;
+      if (ordinal == mOffsets.length) {
+        mOffsets = Arrays.copyOf(mOffsets, ordinal * 2);
+        mSizes = Arrays.copyOf(mSizes, ordinal * 2);
+      }
+      mOffsets[ordinal] = offset();
+      writeVarint(parent < 0 ? 0 : ordinal - parent);
+      writeVarint(node.childrenSize());
+      codec.write(this, node.getValue());
+      mCount++;
+      return ordinal;
+    }
+
+    int offset() throws IOException {
+      long offset = mFlushed + mBuffered;
+      if (offset > Integer.MAX_VALUE) {
+        throw new IOException("Tree file exceeds " + Integer.MAX_VALUE + " bytes");
+      }
+      return (int) offset;
+    }
+
+    @Override
+    public void writeVarint(long value) throws IOException {
+      if (mBuffer.length - mBuffered < 10) flushBuffer();
+      while ((value & ~0x7FL) != 0) {
+        mBuffer[mBuffered++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      mBuffer[mBuffered++] = (byte) value;
+    }
+
+    @Override
+    public void writeByte(int value) throws IOException {
+      if (mBuffered == mBuffer.length) flushBuffer();
+      mBuffer[mBuffered++] = (byte) value;
+    }
+
+    void writeInt(int value) throws IOException {
+      if (mBuffer.length - mBuffered < 4) flushBuffer();
+      mBuffer[mBuffered++] = (byte) (value >>> 24);
+      mBuffer[mBuffered++] = (byte) (value >>> 16);
+      mBuffer[mBuffered++] = (byte) (value >>> 8);
+      mBuffer[mBuffered++] = (byte) value;
+    }
+
+    @Override
+    public void writeBytes(@NonNull byte[] bytes) throws IOException {
+      if (bytes.length > mBuffer.length - mBuffered) {
+        flushBuffer();
+        if (bytes.length > mBuffer.length) {
+          mOut.write(bytes);
+          mFlushed += bytes.length;
+          return;
+        }
+      }
+      System.arraycopy(bytes, 0, mBuffer, mBuffered, bytes.length);
+      mBuffered += bytes.length;
+    }
+
+    /** Writes 0 for null, else the index in the table or the length of the string plus one. */
+    @Override
+    public void writeString(@Nullable String value) throws IOException {
+      if (value == null) {
+        writeVarint(0);
+      } else if (mStringTable) {
+        Integer index = mStringIndices.get(value);
+        if (index == null) {
+          index = mStrings.size();
+          mStringIndices.put(value, index);
+          mStrings.add(value);
+        }
+        writeVarint(index + 1L);
+      } else {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length + 1L);
+        writeBytes(bytes);
+      }
+    }
+
+    private void flushBuffer() throws IOException {
+      mOut.write(mBuffer, 0, mBuffered);
+      mFlushed += mBuffered;
+      mBuffered = 0;
+    }
+
+    void flush() throws IOException {
+      flushBuffer();
+      mOut.flush();
+    }
+  }
+}
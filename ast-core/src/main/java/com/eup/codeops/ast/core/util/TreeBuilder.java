@@ -0,0 +1,175 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.eup.codeops.ast.core.node.Node;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds trees in bulk.
+ *
+ * <p>Adding children one at a time with a comparator re-sorts the sibling list on every insert and
+ * propagates levels once per child. The builder only records children as they are added, then
+ * {@link #build()} attaches them top-down in a single pass: each sibling list is sorted exactly
+ * once, or not at all for {@link #presorted()} input, and since parents are attached before their
+ * children every attachment only updates the attached node.
+ *
+ * <pre>
+ * CustomNode root = new CustomNode("Root");
+ * new TreeBuilder&lt;String&gt;(root)
+ *     .sortedBy(Comparator.comparing(Node::getValue))
+ *     .add(root, child1)
+ *     .add(child1, grandChild)
+ *     .add(root, child2)
+ *     .build();
+ * </pre>
+ *
+ * <p>A builder can be reused once built. This class is not thread safe.
+ *
+ * @param <T> the type of data stored in the nodes
+ * @author EUP
+ */
+public class TreeBuilder<T> {
+
+  private final Node<T> mRoot;
+
+  // parent -> children in insertion order, keyed by identity as node equality is structural
+  private final Map<Node<T>, List<Node<T>>> mPendingChildren = new IdentityHashMap<>();
+  // every node added as a child, parents not in it are attached as they are
+  private final Set<Node<T>> mAddedChildren = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  private Comparator<Node<T>> mComparator;
+
+  /**
+   * @param root the root of the tree to build, may already have children
+   */
+  public TreeBuilder(@NonNull Node<T> root) {
+    mRoot = root;
+  }
+
+  /**
+   * Sorts every sibling list with a comparator when built.
+   *
+   * @param comparator the comparator, {@code null} to keep insertion order
+   * @return this builder
+   */
+  public TreeBuilder<T> sortedBy(@Nullable Comparator<Node<T>> comparator) {
+    mComparator = comparator;
+    return this;
+  }
+
+  /**
+   * Keeps children in insertion order, for input that is already sorted.
+   *
+   * @return this builder
+   */
+  public TreeBuilder<T> presorted() {
+    return sortedBy(null);
+  }
+
+  /**
+   * Records a child, attached when built.
+   *
+   * @param parent the root, a node added as a child or any node already in a tree
+   * @param child the child
+   * @return this builder
+   * @throws IllegalArgumentException if the child was already added
+   */
+  public TreeBuilder<T> add(@NonNull Node<T> parent, @NonNull Node<T> child) {
+    if (child == mRoot || !mAddedChildren.add(child)) {
+      throw new IllegalArgumentException("Node already added: " + child.getValue());
+    }
+    mPendingChildren.computeIfAbsent(parent, any -> new ArrayList<>()).add(child);
+    return this;
+  }
+
+  /**
+   * Records children, attached when built in iteration order.
+   *
+   * @param parent the root, a node added as a child or any node already in a tree
+   * @param children the children
+   * @return this builder
+   */
+  public TreeBuilder<T> addAll(
+      @NonNull Node<T> parent, @NonNull Collection<? extends Node<T>> children) {
+    for (Node<T> child : children) {
+      add(parent, child);
+    }
+    return this;
+  }
+
+  /**
+   * Attaches the recorded children, parents before their children.
+   *
+   * @return the root
+   */
+  @NonNull
+  public Node<T> build() {
+    var queue = new ArrayDeque<Node<T>>();
+    queue.add(mRoot);
+    for (Node<T> parent : mPendingChildren.keySet()) {
+      if (parent != mRoot && !mAddedChildren.contains(parent)) {
+        queue.add(parent);
+      }
+    }
+
+    while (!queue.isEmpty()) {
+      var parent = queue.poll();
+      var children = mPendingChildren.remove(parent);
+      if (children == null) continue;
+
+      boolean merge = mComparator != null && parent.hasChildren();
+      if (mComparator != null && !merge) {
+        children.sort(mComparator);
+      }
+      for (Node<T> child : children) {
+        parent.addChild(child);
+        queue.add(child);
+      }
+      if (merge) {
+        // existing children, the whole sibling list is sorted once then reindexed
+        parent.sortChildren(mComparator);
+        int index = 0;
+        for (Node<T> child : parent.getChildren()) {
+          child.setIndex(index++);
+        }
+      }
+    }
+
+    // children of parents never reached, e.g. added to each other
+    mPendingChildren.clear();
+    mAddedChildren.clear();
+    return mRoot;
+  }
+}
@@ -0,0 +1,465 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.eup.codeops.ast.core.node.Node;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Computes the edits turning an old tree into a new one, e.g. when an outline or a file tree is
+ * rebuilt, so a UI only updates the nodes that changed.
+ *
+ * <p>Nodes are matched by a key, e.g. a file path, expected to be unique within each tree and
+ * derived from node values. Matching runs top-down from the roots, which always match: the
+ * children of a matched pair are matched among each other first, then against the whole old tree
+ * to detect moves across parents. Matched subtrees with equal structural hashes {@see
+ * Node#getStructuralHash()} are identical and not descended into.
+ *
+ * <p>The script is meant to be applied to the old tree in order, every index is valid at the time
+ * its edit is applied:
+ *
+ * <ul>
+ *   <li>{@link Edit.Type#UPDATE} the value of a matched node changed.
+ *   <li>{@link Edit.Type#MOVE} removes a matched node from its current parent and inserts it into
+ *       its target parent. Within a parent only the nodes outside the longest run of children that
+ *       kept their relative order are moved.
+ *   <li>{@link Edit.Type#INSERT} inserts a new node with its subtree. Nodes of inserted subtrees
+ *       are not matched, a node moved into a new parent is deleted and inserted again.
+ *   <li>{@link Edit.Type#DELETE} removes an old node with what is left of its subtree, deletions
+ *       come last so descendants moved elsewhere are moved out first.
+ * </ul>
+ *
+ * <p>Target parents are nodes of the old tree, or new nodes inserted earlier in the script.
+ *
+ * @param <T> the type of data stored in the nodes
+ * @param <K> the type of the keys
+ * @author EUP
+ */
+public class TreeDiff<T, K> {
+
+  /** An edit of an edit script. */
+  public static final class Edit<T> {
+
+    public enum Type {
+      INSERT,
+      DELETE,
+      MOVE,
+      UPDATE
+    }
+
+    private final Type mType;
+    private final Node<T> mOldNode;
+    private final Node<T> mNewNode;
+    private final Node<T> mFromParent;
+    private final int mFromIndex;
+    private final Node<T> mToParent;
+    private final int mToIndex;
+
+    Edit(
+        Type type,
+        Node<T> oldNode,
+        Node<T> newNode,
+        Node<T> fromParent,
+        int fromIndex,
+        Node<T> toParent,
+        int toIndex) {
+      mType = type;
+      mOldNode = oldNode;
+      mNewNode = newNode;
+      mFromParent = fromParent;
+      mFromIndex = fromIndex;
+      mToParent = toParent;
+      mToIndex = toIndex;
+    }
+
+    @NonNull
+    public Type getType() {
+      return mType;
+    }
+
+    /**
+     * @return the node of the old tree, {@code null} for an insertion
+     */
+    @Nullable
+    public Node<T> getOldNode() {
+      return mOldNode;
+    }
+
+    /**
+     * @return the node of the new tree, {@code null} for a deletion
+     */
+    @Nullable
+    public Node<T> getNewNode() {
+      return mNewNode;
+    }
+
+    /**
+     * @return the parent a moved or deleted node is removed from, {@code null} otherwise
+     */
+    @Nullable
+    public Node<T> getFromParent() {
+      return mFromParent;
+    }
+
+    /**
+     * @return the index a moved or deleted node is removed from, -1 otherwise
+     */
+    public int getFromIndex() {
+      return mFromIndex;
+    }
+
+    /**
+     * @return the parent a moved or inserted node is inserted into, {@code null} otherwise
+     */
+    @Nullable
+    public Node<T> getToParent() {
+      return mToParent;
+    }
+
+    /**
+     * @return the index a moved or inserted node is inserted at, after its removal, -1 otherwise
+     */
+    public int getToIndex() {
+      return mToIndex;
+    }
+
+    @Override
+    public String toString() {
+      var node = mType == Type.INSERT ? mNewNode : mOldNode;
+      switch (mType) {
+        case INSERT:
+          return "INSERT " + node.getValue() + " at " + mToIndex;
+        case DELETE:
+          return "DELETE " + node.getValue() + " at " + mFromIndex;
+        case MOVE:
+          return "MOVE " + node.getValue() + " from " + mFromIndex + " to " + mToIndex;
+        default:
+          return "UPDATE " + node.getValue() + " to " + mNewNode.getValue();
+      }
+    }
+  }
+
+  private final Function<? super Node<T>, ? extends K> mKeyFunction;
+
+  /**
+   * @param keyFunction identifies the nodes matched between the trees
+   */
+  public TreeDiff(@NonNull Function<? super Node<T>, ? extends K> keyFunction) {
+    mKeyFunction = keyFunction;
+  }
+
+  /**
+   * Computes the edit script between two trees.
+   *
+   * @param oldRoot the root of the old tree
+   * @param newRoot the root of the new tree
+   * @param keyFunction identifies the nodes matched between the trees
+   * @return the edits in the order they are to be applied, empty if the trees are equal
+   */
+  @NonNull
+  public static <T, K> List<Edit<T>> diff(
+      @NonNull Node<T> oldRoot,
+      @NonNull Node<T> newRoot,
+      @NonNull Function<? super Node<T>, ? extends K> keyFunction) {
+    return new TreeDiff<T, K>(keyFunction).diff(oldRoot, newRoot);
+  }
+
+  /**
+   * Computes the edit script between two trees.
+   *
+   * @param oldRoot the root of the old tree
+   * @param newRoot the root of the new tree
+   * @return the edits in the order they are to be applied, empty if the trees are equal
+   */
+  @NonNull
+  public List<Edit<T>> diff(@NonNull Node<T> oldRoot, @NonNull Node<T> newRoot) {
+    return new Session(oldRoot).run(newRoot);
+  }
+
+  /**
+   * The state of a single diff. Nodes are keyed by identity, the children of every node are listed
+   * once so flyweight views of nodes, created anew on every call, keep a stable identity.
+   */
+  private final class Session {
+
+    private final Node<T> mOldRoot;
+    private final List<Edit<T>> mScript = new ArrayList<>();
+
+    // new node -> matched old node
+    private final Map<Node<T>, Node<T>> mMatches = new IdentityHashMap<>();
+    private final Set<Node<T>> mMatchedOldNodes =
+        Collections.newSetFromMap(new IdentityHashMap<>());
+    // roots of identical old subtrees, their nodes are matched implicitly
+    private final Set<Node<T>> mIdenticalOldNodes =
+        Collections.newSetFromMap(new IdentityHashMap<>());
+    // matched pairs whose children are to be arranged, parents first
+    private final List<Node<T>> mArranged = new ArrayList<>();
+    // key -> old node of the whole old tree, built on the first unmatched child
+    private Map<K, Node<T>> mOldIndex;
+
+    // the children of the matched new nodes
+    private final Map<Node<T>, List<Node<T>>> mNewChildren = new IdentityHashMap<>();
+    // the children and parents of old nodes as the script is applied
+    private final Map<Node<T>, List<Node<T>>> mChildren = new IdentityHashMap<>();
+    private final Map<Node<T>, Node<T>> mParents = new IdentityHashMap<>();
+    private final Set<Node<T>> mInsertedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    Session(Node<T> oldRoot) {
+      mOldRoot = oldRoot;
+    }
+
+    List<Edit<T>> run(Node<T> newRoot) {
+      match(newRoot);
+      for (Node<T> newParent : mArranged) {
+        arrange(newParent);
+      }
+      deleteUnmatched();
+      return mScript;
+    }
+
+    /** Matches the nodes of the new tree top-down and records value updates. */
+    private void match(Node<T> newRoot) {
+      var queue = new ArrayDeque<Node<T>>();
+      matchPair(mOldRoot, newRoot);
+      queue.add(newRoot);
+      while (!queue.isEmpty()) {
+        var newNode = queue.poll();
+        var oldNode = mMatches.get(newNode);
+        if (oldNode.getStructuralHash() == newNode.getStructuralHash()) {
+          mIdenticalOldNodes.add(oldNode);
+          continue;
+        }
+        if (!Objects.equals(oldNode.getValue(), newNode.getValue())) {
+          mScript.add(new Edit<>(Edit.Type.UPDATE, oldNode, newNode, null, -1, null, -1));
+        }
+        if (!newNode.hasChildren() && !oldNode.hasChildren()) continue;
+
+        mArranged.add(newNode);
+        var siblings = new HashMap<K, Node<T>>();
+        for (Node<T> oldChild : getChildren(oldNode)) {
+          siblings.putIfAbsent(mKeyFunction.apply(oldChild), oldChild);
+        }
+        var newChildren = newNode.getChildren();
+        mNewChildren.put(newNode, newChildren);
+        for (Node<T> newChild : newChildren) {
+          K key = mKeyFunction.apply(newChild);
+          var oldChild = siblings.get(key);
+          if (oldChild == null || mMatchedOldNodes.contains(oldChild)) {
+            oldChild = getOldIndex().get(key);
+          }
+          if (oldChild != null && !mMatchedOldNodes.contains(oldChild)) {
+            matchPair(oldChild, newChild);
+            queue.add(newChild);
+          }
+        }
+      }
+    }
+
+    private void matchPair(Node<T> oldNode, Node<T> newNode) {
+      mMatches.put(newNode, oldNode);
+      mMatchedOldNodes.add(oldNode);
+    }
+
+    private Map<K, Node<T>> getOldIndex() {
+      if (mOldIndex == null) {
+        mOldIndex = new HashMap<>();
+        var pending = new ArrayDeque<Node<T>>();
+        pending.push(mOldRoot);
+        while (!pending.isEmpty()) {
+          var node = pending.pop();
+          mOldIndex.putIfAbsent(mKeyFunction.apply(node), node);
+          for (Node<T> child : getChildren(node)) {
+            pending.push(child);
+          }
+        }
+      }
+      return mOldIndex;
+    }
+
+    /**
+     * Emits the moves and insertions ordering the children of a matched parent like the new
+     * children. Children keeping their relative order stay, the others are inserted from the last
+     * to the first right before their next sibling.
+     */
+    private void arrange(Node<T> newParent) {
+      var parent = mMatches.get(newParent);
+      var current = getChildren(parent);
+      var newChildren = mNewChildren.get(newParent);
+      int size = newChildren.size();
+
+      // the current node of each new child, or null if it is inserted
+      var targets = new ArrayList<Node<T>>(size);
+      int[] positions = new int[size];
+      for (int i = 0; i < size; i++) {
+        var oldChild = mMatches.get(newChildren.get(i));
+        targets.add(oldChild);
+        positions[i] = oldChild != null && getParent(oldChild) == parent ? -2 : -1;
+      }
+      if (size > 0) {
+        var indexes = new IdentityHashMap<Node<T>, Integer>();
+        for (int i = 0; i < current.size(); i++) {
+          indexes.put(current.get(i), i);
+        }
+        for (int i = 0; i < size; i++) {
+          if (positions[i] == -2) {
+            positions[i] = indexes.get(targets.get(i));
+          }
+        }
+      }
+      boolean[] stable = longestIncreasingRun(positions);
+
+      Node<T> anchor = null;
+      for (int i = size - 1; i >= 0; i--) {
+        var target = targets.get(i);
+        if (!stable[i]) {
+          int toIndex;
+          if (target == null) {
+            target = newChildren.get(i);
+            toIndex = anchor == null ? current.size() : indexOf(current, anchor);
+            mScript.add(new Edit<>(Edit.Type.INSERT, null, target, null, -1, parent, toIndex));
+            mInsertedNodes.add(target);
+          } else {
+            var fromParent = getParent(target);
+            var from = getChildren(fromParent);
+            int fromIndex = indexOf(from, target);
+            from.remove(fromIndex);
+            toIndex = anchor == null ? current.size() : indexOf(current, anchor);
+            mScript.add(
+                new Edit<>(
+                    Edit.Type.MOVE,
+                    target,
+                    newChildren.get(i),
+                    fromParent,
+                    fromIndex,
+                    parent,
+                    toIndex));
+          }
+          current.add(toIndex, target);
+          mParents.put(target, parent);
+        }
+        anchor = target;
+      }
+    }
+
+    /**
+     * Deletes the topmost old nodes that were not matched, with what is left of their subtree. The
+     * tree is walked as arranged so nodes moved out of deleted subtrees are visited.
+     */
+    private void deleteUnmatched() {
+      var pending = new ArrayDeque<Node<T>>();
+      pending.push(mOldRoot);
+      while (!pending.isEmpty()) {
+        var node = pending.pop();
+        if (mIdenticalOldNodes.contains(node)) continue;
+
+        for (Node<T> child : new ArrayList<>(getChildren(node))) {
+          if (mInsertedNodes.contains(child)) continue;
+
+          if (mMatchedOldNodes.contains(child)) {
+            pending.push(child);
+          } else {
+            var from = getChildren(node);
+            int fromIndex = indexOf(from, child);
+            from.remove(fromIndex);
+            mScript.add(
+                new Edit<>(Edit.Type.DELETE, child, null, node, fromIndex, null, -1));
+          }
+        }
+      }
+    }
+
+    private List<Node<T>> getChildren(Node<T> node) {
+      var children = mChildren.get(node);
+      if (children == null) {
+        children = new ArrayList<>(node.getChildren());
+        for (Node<T> child : children) {
+          mParents.put(child, node);
+        }
+        mChildren.put(node, children);
+      }
+      return children;
+    }
+
+    /** The position of a node in a list, by identity. */
+    private int indexOf(List<Node<T>> nodes, @Nullable Node<T> node) {
+      for (int i = 0; i < nodes.size(); i++) {
+        if (nodes.get(i) == node) return i;
+      }
+      return -1;
+    }
+
+    private Node<T> getParent(Node<T> node) {
+      return mParents.containsKey(node) ? mParents.get(node) : node.getParent();
+    }
+  }
+
+  /**
+   * Finds a longest strictly increasing subsequence of positions, in O(n log n).
+   *
+   * @param positions the positions, negative ones are never part of it
+   * @return whether each position is part of the subsequence
+   */
+  static boolean[] longestIncreasingRun(int[] positions) {
+    int n = positions.length;
+    int[] tails = new int[n]; // indexes of the smallest tail of each run length
+    int[] previous = new int[n];
+    int length = 0;
+    for (int i = 0; i < n; i++) {
+      if (positions[i] < 0) continue;
+
+      int low = 0;
+      int high = length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (positions[tails[mid]] < positions[i]) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      previous[i] = low > 0 ? tails[low - 1] : -1;
+      tails[low] = i;
+      if (low == length) {
+        length++;
+      }
+    }
+
+    boolean[] run = new boolean[n];
+    for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+      run[i] = true;
+    }
+    return run;
+  }
+}
@@ -0,0 +1,214 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.util;
+
+import androidx.annotation.NonNull;
+import com.eup.codeops.ast.core.node.Node;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Writes trees as JSON to an {@link Appendable}, e.g. a buffered file or socket writer, without
+ * building the document in memory.
+ *
+ * <p>Every node is written as an object of its value, level, depth, parent value and children. The
+ * tree is walked iteratively so the stack depth does not grow with the tree, and the indentation
+ * strings are cached so each line costs a single append of its indentation.
+ *
+ * <pre>
+ * try (var writer = new BufferedWriter(new FileWriter(file))) {
+ *   new TreeJsonWriter(writer).write(root);
+ * }
+ * </pre>
+ *
+ * <p>This class is not thread safe.
+ *
+ * @author EUP
+ */
+public class TreeJsonWriter {
+
+  // deeper indentations are appended in chunks so the cache stays small on deep trees
+  private static final int MAX_CACHED_INDENT = 64;
+
+  private final Appendable mOut;
+  // tabs of each indentation up to MAX_CACHED_INDENT, built on demand
+  private final String[] mIndents = new String[MAX_CACHED_INDENT + 1];
+
+  /**
+   * @param out the destination, not closed
+   */
+  public TreeJsonWriter(@NonNull Appendable out) {
+    mOut = out;
+  }
+
+  /**
+   * Converts a node and its descendants to a JSON string.
+   *
+   * @param node the node
+   * @param indent the indentation of the node
+   * @return the JSON object of the node
+   */
+  @NonNull
+  public static String toJsonString(@NonNull Node<?> node, int indent) {
+    var sb = new StringBuilder();
+    try {
+      new TreeJsonWriter(sb).write(node, indent);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // never thrown by a StringBuilder
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Writes a node and its descendants as a JSON object.
+   *
+   * @param node the node
+   * @throws IOException if the destination fails
+   */
+  public void write(@NonNull Node<?> node) throws IOException {
+    write(node, 0);
+  }
+
+  /**
+   * Writes a node and its descendants as a JSON object.
+   *
+   * @param node the node
+   * @param indent the indentation of the node
+   * @throws IOException if the destination fails
+   */
+  public void write(@NonNull Node<?> node, int indent) throws IOException {
+    appendIndent(indent).append("{\n");
+    writeMembers(node, indent);
+    appendIndent(indent).append('}');
+  }
+
+  /**
+   * Writes the members of the JSON object of a node, without its braces, its children are written
+   * as complete objects.
+   *
+   * @param node the node
+   * @param indent the indentation of the node
+   * @throws IOException if the destination fails
+   */
+  public void writeMembers(@NonNull Node<?> node, int indent) throws IOException {
+    // the children left to write of each open node
+    var stack = new ArrayDeque<Iterator<? extends Node<?>>>();
+    openMembers(node, indent);
+    stack.push(node.getChildren().iterator());
+    while (!stack.isEmpty()) {
+      var children = stack.peek();
+      int depth = indent + stack.size() - 1;
+      if (children.hasNext()) {
+        var child = children.next();
+        appendIndent(depth + 1).append("{\n");
+        openMembers(child, depth + 1);
+        stack.push(child.getChildren().iterator());
+        continue;
+      }
+
+      stack.pop();
+      mOut.append('\n');
+      appendIndent(depth).append("\t]\n");
+      if (!stack.isEmpty()) {
+        appendIndent(depth).append('}');
+        if (stack.peek().hasNext()) {
+          mOut.append(",\n");
+        }
+      }
+    }
+  }
+
+  /** Writes the members of a node up to the opening of its children. */
+  private void openMembers(Node<?> node, int indent) throws IOException {
+    var parent = node.getParent();
+    appendIndent(indent).append("\t\"value\": ");
+    writeString(node.getValue());
+    mOut.append(",\n");
+    appendIndent(indent).append("\t\"level\": ").append(Integer.toString(node.getLevel()));
+    mOut.append(",\n");
+    appendIndent(indent).append("\t\"depth\": ").append(Integer.toString(node.getDepth()));
+    mOut.append(",\n");
+    appendIndent(indent).append("\t\"parent\": ");
+    if (parent != null) {
+      writeString(parent.getValue());
+    } else {
+      mOut.append("null");
+    }
+    mOut.append(",\n");
+    appendIndent(indent).append("\t\"children\": [\n");
+  }
+
+  /** Writes a value as a JSON string, escaping quotes, backslashes and control characters. */
+  private void writeString(Object value) throws IOException {
+    var string = String.valueOf(value);
+    mOut.append('"');
+    int start = 0;
+    for (int i = 0; i < string.length(); i++) {
+      char c = string.charAt(i);
+      if (c >= 0x20 && c != '"' && c != '\\') continue;
+
+      mOut.append(string, start, i);
+      switch (c) {
+        case '"':
+          mOut.append("\\\"");
+          break;
+        case '\\':
+          mOut.append("\\\\");
+          break;
+        case '\n':
+          mOut.append("\\n");
+          break;
+        case '\r':
+          mOut.append("\\r");
+          break;
+        case '\t':
+          mOut.append("\\t");
+          break;
+        default:
+          mOut.append(String.format("\\u%04x", (int) c));
+          break;
+      }
+      start = i + 1;
+    }
+    mOut.append(string, start, string.length()).append('"');
+  }
+
+  private Appendable appendIndent(int indent) throws IOException {
+    for (; indent > MAX_CACHED_INDENT; indent -= MAX_CACHED_INDENT) {
+      mOut.append(indent(MAX_CACHED_INDENT));
+    }
+    return mOut.append(indent(indent));
+  }
+
+  private String indent(int indent) {
+    var prefix = mIndents[indent];
+    if (prefix == null) {
+      prefix = "\t".repeat(indent);
+      mIndents[indent] = prefix;
+    }
+    return prefix;
+  }
+}
@@ -23,13 +23,34 @@
 
 package com.eup.codeops.ast.core.util;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+
+/**
+ * Prints a tree with box-drawing pointers, one node per line.
+ *
+ * <p>The tree is walked iteratively and the padding of every line is kept in a single buffer, so
+ * deep trees print in constant stack depth and large trees can be streamed to a writer {@see
+ * #print(Appendable)}.
+ */
 public abstract class TreePrinter {
 
   private Object root;
-  private StringBuilder sb;
   private String pointerFotrLast = "└─";
   private String pointerForOther = "├─";
-  private boolean isInstantPrintNeeded;
+
+  /** The children of a node being printed and the padding of their lines. */
+  private static final class Frame {
+    final Object[] children;
+    final int paddingLength;
+    int next;
+
+    Frame(Object[] children, int paddingLength) {
+      this.children = children;
+      this.paddingLength = paddingLength;
+    }
+  }
 
   public TreePrinter(Object root) {
     this.root = root;
@@ -42,58 +63,70 @@ public abstract class TreePrinter {
   public abstract boolean isLeaf(Object obj);
 
   public void visitAndPrint() {
-    isInstantPrintNeeded = true;
-    visitRoot();
+    try {
+      print(System.out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // never thrown by a PrintStream
+    }
   }
 
   public StringBuilder visitAndReturn() {
-    isInstantPrintNeeded = false;
-    sb = new StringBuilder();
-    visitRoot();
-    return this.sb;
+    var sb = new StringBuilder();
+    try {
+      visitRoot(sb, true);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // never thrown by a StringBuilder
+    }
+    return sb;
   }
 
-  private void visitRoot() {
-    if (isInstantPrintNeeded) {
-      instantPrint(root, "", "");
-    } else {
-      appendToSb(root, "", "");
-    }
+  /**
+   * Prints the tree, each line followed by a line feed.
+   *
+   * @param out the destination, not closed
+   * @throws IOException if the destination fails
+   */
+  public void print(Appendable out) throws IOException {
+    visitRoot(out, false);
+  }
 
+  /**
+   * @param leadingLineFeed whether lines are preceded rather than followed by a line feed
+   */
+  private void visitRoot(Appendable out, boolean leadingLineFeed) throws IOException {
+    var padding = new StringBuilder();
+    appendLine(out, root, padding, "", leadingLineFeed);
     if (isLeaf(root)) return;
 
-    Object[] childs = getChild(root);
-    for (int i = 0; i < childs.length; i++) {
-      if (i == childs.length - 1) visitNode(childs[i], "", pointerFotrLast, false);
-      else visitNode(childs[i], "", pointerForOther, true);
+    var stack = new ArrayDeque<Frame>();
+    stack.push(new Frame(getChild(root), 0));
+    while (!stack.isEmpty()) {
+      var frame = stack.peek();
+      if (frame.next == frame.children.length) {
+        stack.pop();
+        continue;
+      }
+
+      var node = frame.children[frame.next++];
+      boolean hasMore = frame.next < frame.children.length;
+      padding.setLength(frame.paddingLength);
+      appendLine(out, node, padding, hasMore ? pointerForOther : pointerFotrLast, leadingLineFeed);
+      if (!isLeaf(node)) {
+        padding.append(hasMore ? "│  " : "   ");
+        stack.push(new Frame(getChild(node), padding.length()));
+      }
     }
   }
 
-  private void visitNode(Object node, String padding, String pointer, boolean hasMore) {
-    if (isInstantPrintNeeded) {
-      instantPrint(node, padding, pointer);
-    } else {
-      appendToSb(node, padding, pointer);
+  private void appendLine(
+      Appendable out, Object node, CharSequence padding, String pointer, boolean leadingLineFeed)
+      throws IOException {
+    if (leadingLineFeed) {
+      out.append('\n');
     }
-
-    if (isLeaf(node)) return;
-
-    StringBuilder paddingBuilder = new StringBuilder(padding);
-    paddingBuilder.append(hasMore ? "│  " : "   ");
-
-    Object[] childs = getChild(node);
-    for (int i = 0; i < childs.length; i++) {
-      if (i == childs.length - 1)
-        visitNode(childs[i], paddingBuilder.toString(), pointerFotrLast, false);
-      else visitNode(childs[i], paddingBuilder.toString(), pointerForOther, true);
+    out.append(padding).append(pointer).append(getValue(node));
+    if (!leadingLineFeed) {
+      out.append('\n');
     }
   }
-
-  private void instantPrint(Object obj, String padding, String pointer) {
-    System.out.println(padding + pointer + getValue(obj));
-  }
-
-  private void appendToSb(Object obj, String padding, String pointer) {
-    sb.append("\n" + padding + pointer + getValue(obj));
-  }
 }
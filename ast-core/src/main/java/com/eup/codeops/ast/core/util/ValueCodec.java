@@ -0,0 +1,99 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+package com.eup.codeops.ast.core.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.IOException;
+
+/**
+ * Encodes the values of nodes for {@link TreeBinaryWriter} and decodes them for {@link
+ * TreeBinaryReader}. A codec writes a value with the primitives of {@link Output} and must read it
+ * back with the matching primitives of {@link Input}.
+ *
+ * @param <T> the type of data stored in the nodes
+ * @author EUP
+ */
+public interface ValueCodec<T> {
+
+  /** Writes the parts of a value. */
+  interface Output {
+
+    /** Writes an unsigned LEB128 varint, one byte per 7 bits. */
+    void writeVarint(long value) throws IOException;
+
+    /** Writes a ZigZag encoded varint, small negative values stay short. */
+    default void writeSignedVarint(long value) throws IOException {
+      writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    void writeByte(int value) throws IOException;
+
+    void writeBytes(@NonNull byte[] bytes) throws IOException;
+
+    /** Writes a string, only once per file if the string table is enabled. */
+    void writeString(@Nullable String value) throws IOException;
+  }
+
+  /** Reads the parts of a value. */
+  interface Input {
+
+    long readVarint();
+
+    default long readSignedVarint() {
+      long value = readVarint();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    byte readByte();
+
+    @NonNull
+    byte[] readBytes(int length);
+
+    @Nullable
+    String readString();
+  }
+
+  void write(@NonNull Output out, @Nullable T value) throws IOException;
+
+  @Nullable
+  T read(@NonNull Input in);
+
+  /**
+   * @return a codec of string values, null included
+   */
+  @NonNull
+  static ValueCodec<String> strings() {
+    return new ValueCodec<>() {
+      @Override
+      public void write(@NonNull Output out, @Nullable String value) throws IOException {
+        out.writeString(value);
+      }
+
+      @Override
+      public String read(@NonNull Input in) {
+        return in.readString();
+      }
+    };
+  }
+}
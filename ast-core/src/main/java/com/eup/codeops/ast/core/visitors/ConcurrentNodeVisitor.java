@@ -0,0 +1,37 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeops.ast.core.visitors;
+
+/**
+ * A {@link NodeVisitor} safe to be called from several threads at once.
+ *
+ * <p>Parallel traversals {@see com.eup.codeops.ast.core.transversal.ParallelTraversal} visit nodes
+ * of such visitors concurrently, in no particular order except that a node is always visited
+ * before its descendants. Visitors not implementing this interface are still supported but their
+ * calls are serialized.
+ *
+ * @param <T> the type of data stored in the nodes
+ * @author EUP
+ */
+public interface ConcurrentNodeVisitor<T> extends NodeVisitor<T> {}
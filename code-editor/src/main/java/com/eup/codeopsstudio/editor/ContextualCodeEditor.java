@@ -37,6 +37,7 @@ import com.eup.codeopsstudio.common.AsyncTask;
 import com.eup.codeopsstudio.common.Constants;
 import com.eup.codeopsstudio.common.util.PreferencesUtils;
 import com.eup.codeopsstudio.editor.event.IndexingEvent;
+import com.eup.codeopsstudio.editor.langs.textmate.TextMateGrammarLoader;
 import com.eup.codeopsstudio.editor.langs.widget.component.ContextualEditorAutoCompletion;
 import com.eup.codeopsstudio.editor.langs.widget.component.ContextualEditorCompletionAdapter;
 import com.eup.codeopsstudio.editor.langs.widget.component.ContextualEditorTextActionWindow;
@@ -483,21 +484,28 @@ public class ContextualCodeEditor extends CodeEditor implements OnSharedPreferen
     }
   }
 
+  /**
+   * Registers the TextMate grammars and themes. Only their metadata is read, grammars are compiled
+   * the first time a file of their scope is opened {@see TextMateGrammarLoader}.
+   *
+   * @param context the context to read the assets with
+   */
   public static void loadConfigurations(Context context) throws Exception {
-    FileProviderRegistry.getInstance().addFileProvider(new AssetsFileResolver(context.getAssets()));
-
-    loadDefaultLanguages();
+    loadConfigurations(context, false);
+  }
 
-    String[] themes = new String[] {"darcula", "quietlight"};
-    ThemeRegistry themeRegistry = ThemeRegistry.getInstance();
-        
-    for (String name : themes) {
-      var path = "editor/scheme/" + name + ".json";
-      themeRegistry.loadTheme(
-          new ThemeModel(
-              IThemeSource.fromInputStream(
-                  FileProviderRegistry.getInstance().tryGetInputStream(path), path, null),
-              name));
+  /**
+   * Registers the TextMate grammars and themes.
+   *
+   * @param context the context to read the assets with
+   * @param eager whether to compile every grammar and load the themes right away, as done before
+   *     grammars were loaded on demand. Kept to measure startup against.
+   */
+  public static void loadConfigurations(Context context, boolean eager) throws Exception {
+    TextMateGrammarLoader.initialize(context);
+    if (eager) {
+      TextMateGrammarLoader.getInstance().loadAll();
+      TextMateGrammarLoader.getInstance().ensureThemesLoaded();
     }
   }
 
@@ -524,6 +532,9 @@ public class ContextualCodeEditor extends CodeEditor implements OnSharedPreferen
    * Call this method when ever you set a new theme
    */
   public void ensureTextmateTheme() throws Exception {
+    if (TextMateGrammarLoader.isInitialized()) {
+      TextMateGrammarLoader.getInstance().ensureThemesLoaded();
+    }
     var editorColorScheme = getColorScheme();
     editorColorScheme = TextMateColorScheme.create(ThemeRegistry.getInstance());
     setColorScheme(editorColorScheme);
@@ -550,6 +561,9 @@ public class ContextualCodeEditor extends CodeEditor implements OnSharedPreferen
   public void setEditorLanguage(
       String langScope, boolean autoCompleteEnabled, boolean isAutoCompleteSymbols)
       throws Exception {
+    if (TextMateGrammarLoader.isInitialized()) {
+      TextMateGrammarLoader.getInstance().ensureLoaded(langScope);
+    }
     var lang = getEditorLanguage();
     TextMateLanguage language = null;
     if (lang != null) {
@@ -595,6 +609,12 @@ public class ContextualCodeEditor extends CodeEditor implements OnSharedPreferen
   }
 
   public static void loadDefaultLanguages(String defaultGrammarPath) {
+    if (TextMateGrammarLoader.isInitialized()
+        && TextMateGrammarLoader.LANGUAGES_PATH.equals(defaultGrammarPath)) {
+      // keep the on demand loader aware of the compiled grammars
+      TextMateGrammarLoader.getInstance().loadAll();
+      return;
+    }
     GrammarRegistry.getInstance().loadGrammars(defaultGrammarPath);
   }
 
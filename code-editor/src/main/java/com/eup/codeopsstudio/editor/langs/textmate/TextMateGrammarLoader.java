@@ -0,0 +1,323 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeopsstudio.editor.langs.textmate;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.github.rosemoe.sora.langs.textmate.registry.FileProviderRegistry;
+import io.github.rosemoe.sora.langs.textmate.registry.GrammarRegistry;
+import io.github.rosemoe.sora.langs.textmate.registry.ThemeRegistry;
+import io.github.rosemoe.sora.langs.textmate.registry.model.DefaultGrammarDefinition;
+import io.github.rosemoe.sora.langs.textmate.registry.model.ThemeModel;
+import io.github.rosemoe.sora.langs.textmate.registry.provider.AssetsFileResolver;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.tm4e.core.registry.IGrammarSource;
+import org.eclipse.tm4e.core.registry.IThemeSource;
+
+/**
+ * Loads TextMate grammars and themes on demand.
+ *
+ * <p>At startup only the grammar metadata of {@value #LANGUAGES_PATH} is read. A grammar is
+ * compiled into the {@link GrammarRegistry} the first time a file of its scope is opened {@see
+ * #ensureLoaded(String)}, together with the grammars it includes or embeds so they are known before
+ * the first line is tokenized. Themes are loaded once, the first time the editor needs them.
+ *
+ * <p>The number of launches each scope is opened in is kept so the most used grammars can be
+ * compiled ahead of time on a low priority thread {@see #prewarm(int)}.
+ *
+ * @author EUP
+ */
+public final class TextMateGrammarLoader {
+
+  public static final String LOG_TAG = "TextMateGrammarLoader";
+  public static final String LANGUAGES_PATH = "editor/textmate/languages.json";
+  private static final String[] THEMES = new String[] {"darcula", "quietlight"};
+  private static final String USAGE_PREFERENCES = "textmate_grammar_usage";
+
+  // external includes of a grammar, e.g. "include": "source.css#rule"
+  private static final Pattern INCLUDE_PATTERN =
+      Pattern.compile("\"include\"\\s*:\\s*\"([^\"#$][^\"#]*)");
+
+  /** The metadata of a grammar as declared in {@value #LANGUAGES_PATH}. */
+  private static final class Definition {
+    String grammar;
+    String name;
+    String scopeName;
+    String languageConfiguration;
+    Map<String, String> embeddedLanguages;
+  }
+
+  private static volatile TextMateGrammarLoader sInstance;
+
+  private final SharedPreferences mUsage;
+  private final Map<String, Definition> mDefinitionsByScope = new HashMap<>();
+  private final Map<String, Definition> mDefinitionsByName = new HashMap<>();
+  // scopes compiled or being compiled
+  private final Set<String> mLoadedScopes = new HashSet<>();
+  // scopes opened during this process, usage is counted once per launch
+  private final Set<String> mUsedScopes = new HashSet<>();
+  // themes have their own lock so the editor never waits on a grammar being compiled
+  private final Object mThemesLock = new Object();
+  private volatile boolean mThemesLoaded;
+
+  private TextMateGrammarLoader(Context context) throws IOException {
+    mUsage = context.getSharedPreferences(USAGE_PREFERENCES, Context.MODE_PRIVATE);
+    try (var reader =
+        new InputStreamReader(context.getAssets().open(LANGUAGES_PATH), StandardCharsets.UTF_8)) {
+      var languages = JsonParser.parseReader(reader).getAsJsonObject().getAsJsonArray("languages");
+      for (var element : languages) {
+        var definition = parseDefinition(element.getAsJsonObject());
+        mDefinitionsByScope.put(definition.scopeName, definition);
+        mDefinitionsByName.put(definition.name, definition);
+      }
+    }
+  }
+
+  /**
+   * Registers the assets with the TextMate file provider and reads the grammar metadata. No grammar
+   * or theme is loaded.
+   *
+   * @param context the context to read the assets with
+   * @throws IOException if the grammar metadata cannot be read
+   */
+  public static void initialize(@NonNull Context context) throws IOException {
+    if (sInstance != null) return;
+
+    synchronized (TextMateGrammarLoader.class) {
+      if (sInstance == null) {
+        var applicationContext = context.getApplicationContext();
+        FileProviderRegistry.getInstance()
+            .addFileProvider(new AssetsFileResolver(applicationContext.getAssets()));
+        sInstance = new TextMateGrammarLoader(applicationContext);
+      }
+    }
+  }
+
+  /**
+   * @throws IllegalStateException if {@link #initialize(Context)} was not invoked
+   */
+  @NonNull
+  public static TextMateGrammarLoader getInstance() {
+    if (sInstance == null) {
+      throw new IllegalStateException(LOG_TAG + " is not initialized");
+    }
+    return sInstance;
+  }
+
+  /**
+   * @return true if {@link #initialize(Context)} was invoked
+   */
+  public static boolean isInitialized() {
+    return sInstance != null;
+  }
+
+  /**
+   * Compiles the grammar of a scope and the grammars it depends on if not yet done, and records its
+   * use for prewarming. Unknown scopes are ignored.
+   *
+   * @param scopeName the scope of the file being opened
+   */
+  public void ensureLoaded(@Nullable String scopeName) {
+    if (scopeName == null || !mDefinitionsByScope.containsKey(scopeName)) return;
+
+    synchronized (this) {
+      if (mUsedScopes.add(scopeName)) {
+        recordUsage(scopeName);
+      }
+      load(mDefinitionsByScope.get(scopeName));
+    }
+  }
+
+  /** Loads the editor themes if not yet done. */
+  public void ensureThemesLoaded() {
+    if (mThemesLoaded) return;
+
+    synchronized (mThemesLock) {
+      if (mThemesLoaded) return;
+
+      var themeRegistry = ThemeRegistry.getInstance();
+      for (String name : THEMES) {
+        var path = "editor/scheme/" + name + ".json";
+        try {
+          themeRegistry.loadTheme(
+              new ThemeModel(
+                  IThemeSource.fromInputStream(
+                      FileProviderRegistry.getInstance().tryGetInputStream(path), path, null),
+                  name));
+        } catch (Exception e) {
+          Log.e(LOG_TAG, "Failed to load theme " + name, e);
+        }
+      }
+      mThemesLoaded = true;
+    }
+  }
+
+  /** Compiles every grammar, as done at startup before grammars were loaded on demand. */
+  public synchronized void loadAll() {
+    for (Definition definition : mDefinitionsByScope.values()) {
+      load(definition);
+    }
+  }
+
+  /**
+   * Loads the themes then compiles the most used grammars on a low priority thread.
+   *
+   * @param count the number of grammars to compile
+   */
+  public void prewarm(int count) {
+    var scopes = getMostUsedScopes(count);
+    var thread =
+        new Thread(
+            () -> {
+              Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+              ensureThemesLoaded();
+              for (String scopeName : scopes) {
+                synchronized (this) {
+                  load(mDefinitionsByScope.get(scopeName));
+                }
+              }
+            },
+            LOG_TAG);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * @param count the maximum number of scopes
+   * @return the known scopes opened most often, most used first
+   */
+  @NonNull
+  public List<String> getMostUsedScopes(int count) {
+    var scopes = new ArrayList<String>();
+    for (Map.Entry<String, ?> entry : mUsage.getAll().entrySet()) {
+      if (entry.getValue() instanceof Integer && mDefinitionsByScope.containsKey(entry.getKey())) {
+        scopes.add(entry.getKey());
+      }
+    }
+    scopes.sort((a, b) -> Integer.compare(mUsage.getInt(b, 0), mUsage.getInt(a, 0)));
+    return scopes.subList(0, Math.min(count, scopes.size()));
+  }
+
+  private void recordUsage(String scopeName) {
+    mUsage.edit().putInt(scopeName, mUsage.getInt(scopeName, 0) + 1).apply();
+  }
+
+  /** Compiles a grammar after its dependencies, must hold the lock. */
+  private void load(@Nullable Definition definition) {
+    if (definition == null || !mLoadedScopes.add(definition.scopeName)) return;
+
+    byte[] grammar;
+    try (InputStream inputStream =
+        FileProviderRegistry.getInstance().tryGetInputStream(definition.grammar)) {
+      if (inputStream == null) {
+        Log.e(LOG_TAG, "Grammar not found " + definition.grammar);
+        return;
+      }
+      grammar = IOUtils.toByteArray(inputStream);
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "Failed to read grammar " + definition.grammar, e);
+      return;
+    }
+
+    for (Definition dependency : getDependencies(definition, grammar)) {
+      load(dependency);
+    }
+
+    var source =
+        IGrammarSource.fromInputStream(
+            new ByteArrayInputStream(grammar), definition.grammar, StandardCharsets.UTF_8);
+    var grammarDefinition =
+        definition.languageConfiguration == null
+            ? DefaultGrammarDefinition.withGrammarSource(
+                source, definition.name, definition.scopeName)
+            : DefaultGrammarDefinition.withLanguageConfiguration(
+                source, definition.languageConfiguration, definition.name, definition.scopeName);
+    if (definition.embeddedLanguages != null) {
+      grammarDefinition = grammarDefinition.withEmbeddedLanguages(definition.embeddedLanguages);
+    }
+    try {
+      GrammarRegistry.getInstance().loadGrammar(grammarDefinition);
+    } catch (Exception e) {
+      Log.e(LOG_TAG, "Failed to load grammar " + definition.scopeName, e);
+    }
+  }
+
+  /** The grammars embedded by a grammar or referenced by its includes. */
+  private Set<Definition> getDependencies(Definition definition, byte[] grammar) {
+    var dependencies = new LinkedHashSet<Definition>();
+    if (definition.embeddedLanguages != null) {
+      for (String name : definition.embeddedLanguages.values()) {
+        var dependency = mDefinitionsByName.get(name);
+        if (dependency != null) {
+          dependencies.add(dependency);
+        }
+      }
+    }
+    Matcher matcher = INCLUDE_PATTERN.matcher(new String(grammar, StandardCharsets.UTF_8));
+    while (matcher.find()) {
+      var dependency = mDefinitionsByScope.get(matcher.group(1));
+      if (dependency != null && dependency != definition) {
+        dependencies.add(dependency);
+      }
+    }
+    return dependencies;
+  }
+
+  private static Definition parseDefinition(JsonObject object) {
+    var definition = new Definition();
+    definition.grammar = object.get("grammar").getAsString();
+    definition.name = object.get("name").getAsString();
+    definition.scopeName = object.get("scopeName").getAsString();
+    if (object.has("languageConfiguration")) {
+      definition.languageConfiguration = object.get("languageConfiguration").getAsString();
+    }
+    if (object.has("embeddedLanguages")) {
+      definition.embeddedLanguages = new HashMap<>();
+      for (var entry : object.getAsJsonObject("embeddedLanguages").entrySet()) {
+        definition.embeddedLanguages.put(entry.getKey(), entry.getValue().getAsString());
+      }
+    }
+    return definition;
+  }
+}
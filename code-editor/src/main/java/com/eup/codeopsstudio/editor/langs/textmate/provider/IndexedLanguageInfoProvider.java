@@ -0,0 +1,222 @@
+/*************************************************************************
+ * This file is part of CodeOps Studio.
+ * CodeOps Studio - code anywhere anytime
+ * https://github.com/euptron/CodeOps-Studio
+ * Copyright (C) 2024 EUP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/
+ *
+ * If you have more questions, feel free to message EUP if you have any
+ * questions or need additional information. Email: etido.up@gmail.com
+ *************************************************************************/
+
+package com.eup.codeopsstudio.editor.langs.textmate.provider;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.gson.stream.JsonReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Process wide language-scope mapping loaded once from {@value #LANG_SCOPE_PATH}.
+ *
+ * <p>Entries of the configuration are either plain extensions ({@code "css"}), compound extensions
+ * or file names without their leading dot ({@code "eslintrc.json"}, {@code "gitignore"}) or glob
+ * patterns ({@code "*.log.?"}). Plain and compound entries are indexed in hash maps, a file name is
+ * resolved by looking up each of its dot separated suffixes, longest first, so a plain extension
+ * resolves in O(1). Globs are compiled once and only consulted when no suffix matches.
+ *
+ * <p>The reverse index maps every scope to its entries in configuration order.
+ *
+ * @author EUP
+ */
+public final class IndexedLanguageInfoProvider implements LanguageInfoProvider {
+
+  public static final String LANG_SCOPE_PATH = "editor/textmate/language_scopes.json";
+
+  private static volatile IndexedLanguageInfoProvider sInstance;
+
+  // entry -> scope, exactly as configured
+  private final Map<String, String> mScopes = new HashMap<>();
+  // lower case entry -> scope, for case insensitive file systems and user typed names
+  private final Map<String, String> mLowerCaseScopes = new HashMap<>();
+  // scope -> entries in configuration order
+  private final Map<String, List<String>> mExtensions = new HashMap<>();
+  // compiled glob -> scope in configuration order
+  private final Map<Pattern, String> mGlobs = new LinkedHashMap<>();
+
+  /**
+   * Returns the process wide provider, loading the configuration from the assets on first use.
+   *
+   * @param context the context to read the assets with
+   * @return the provider
+   * @throws IOException if the configuration cannot be read, the next call retries
+   */
+  @NonNull
+  public static IndexedLanguageInfoProvider getInstance(@NonNull Context context)
+      throws IOException {
+    if (sInstance == null) {
+      synchronized (IndexedLanguageInfoProvider.class) {
+        if (sInstance == null) {
+          try (var inputStream = context.getAssets().open(LANG_SCOPE_PATH)) {
+            sInstance = new IndexedLanguageInfoProvider(inputStream);
+          }
+        }
+      }
+    }
+    return sInstance;
+  }
+
+  /**
+   * Creates a provider from a language-scope configuration, a JSON object of entries to scopes.
+   *
+   * @param inputStream the configuration, not closed
+   * @throws IOException if the configuration cannot be read
+   */
+  public IndexedLanguageInfoProvider(@NonNull InputStream inputStream) throws IOException {
+    var reader = new JsonReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    reader.beginObject();
+    while (reader.hasNext()) {
+      put(reader.nextName(), reader.nextString());
+    }
+    reader.endObject();
+  }
+
+  private void put(String entry, String scope) {
+    mExtensions.computeIfAbsent(scope, any -> new ArrayList<>()).add(entry);
+    if (isGlob(entry)) {
+      mGlobs.put(compileGlob(entry), scope);
+    } else {
+      mScopes.put(entry, scope);
+      mLowerCaseScopes.putIfAbsent(entry.toLowerCase(Locale.ROOT), scope);
+    }
+  }
+
+  @Override
+  public String getScope(String extensionEntry) {
+    if (extensionEntry == null) return null;
+
+    var scope = mScopes.get(extensionEntry);
+    return scope != null ? scope : mLowerCaseScopes.get(extensionEntry.toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * Finds the scope of a file from its name.
+   *
+   * @param file the file
+   * @return the associated scope or null if not found
+   */
+  @Nullable
+  public String getScope(@NonNull File file) {
+    return getScopeForFileName(file.getName());
+  }
+
+  /**
+   * Finds the scope of a file name. The whole name (without a leading dot) is tried first, then
+   * every suffix following a dot from the longest to the plain extension, then the globs.
+   *
+   * @param fileName the file name
+   * @return the associated scope or null if not found
+   */
+  @Nullable
+  public String getScopeForFileName(@NonNull String fileName) {
+    var name = fileName.startsWith(".") ? fileName.substring(1) : fileName;
+    for (int from = 0; from >= 0; ) {
+      var scope = getScope(name.substring(from));
+      if (scope != null) {
+        return scope;
+      }
+      int dot = name.indexOf('.', from);
+      from = dot < 0 ? -1 : dot + 1;
+    }
+
+    for (Map.Entry<Pattern, String> glob : mGlobs.entrySet()) {
+      if (glob.getKey().matcher(fileName).matches()) {
+        return glob.getValue();
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String getLanguageExtension(String scopeEntry) {
+    var extensions = mExtensions.get(scopeEntry);
+    return extensions == null ? null : extensions.get(0);
+  }
+
+  /**
+   * Finds every entry associated with a scope.
+   *
+   * @param scopeEntry the scope entry
+   * @return the entries in configuration order, empty if none
+   */
+  @NonNull
+  public List<String> getLanguageExtensions(String scopeEntry) {
+    var extensions = mExtensions.get(scopeEntry);
+    return extensions == null ? Collections.emptyList() : Collections.unmodifiableList(extensions);
+  }
+
+  private static boolean isGlob(String entry) {
+    return entry.indexOf('*') >= 0 || entry.indexOf('?') >= 0 || entry.indexOf('[') >= 0;
+  }
+
+  /**
+   * Compiles a glob matched against a whole file name. {@code *} matches any run of characters,
+   * {@code ?} a single character and {@code [...]} a character class.
+   */
+  private static Pattern compileGlob(String glob) {
+    var regex = new StringBuilder(glob.length() + 8);
+    boolean inClass = false;
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (inClass) {
+        if (c == ']') inClass = false;
+        regex.append(c == '\\' ? "\\\\" : String.valueOf(c));
+        continue;
+      }
+      switch (c) {
+        case '*':
+          regex.append(".*");
+          break;
+        case '?':
+          regex.append('.');
+          break;
+        case '[':
+          inClass = glob.indexOf(']', i + 1) > 0;
+          regex.append(inClass ? "[" : "\\[");
+          break;
+        default:
+          if ("\\.^$+{}()|]".indexOf(c) >= 0) {
+            regex.append('\\');
+          }
+          regex.append(c);
+          break;
+      }
+    }
+    return Pattern.compile(regex.toString());
+  }
+}
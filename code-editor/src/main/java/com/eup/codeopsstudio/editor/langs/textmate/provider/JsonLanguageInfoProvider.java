@@ -35,8 +35,11 @@ import java.util.Map;
 
 /**
 * Provides language-scope mapping functionality for the code editor.
+* @deprecated parses the configuration on every instantiation, use
+* {@link IndexedLanguageInfoProvider#getInstance(Context)}
 * @author EUP
 */
+@Deprecated
 public class JsonLanguageInfoProvider implements LanguageInfoProvider {
 	
 	private static JsonLanguageInfoProvider instance;
@@ -105,13 +108,13 @@ public class JsonLanguageInfoProvider implements LanguageInfoProvider {
 	}
 	
 	public String readInputStream(InputStream inputStream) throws IOException {
-		String data = "";
+		StringBuilder data = new StringBuilder();
 		BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
 		String dataRow = "";
 		while ((dataRow = reader.readLine()) != null) {
-			data += dataRow + "\n";
+			data.append(dataRow).append("\n");
 		}
 		reader.close();
-		return data;
+		return data.toString();
 	}
 }
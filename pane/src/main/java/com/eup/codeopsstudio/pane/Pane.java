@@ -34,10 +34,8 @@ import com.google.gson.Gson;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.Set;
 import java.util.UUID;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -156,9 +154,6 @@ public abstract class Pane {
   // Indicates whether createView() method has been executed for this pane
   protected boolean hasPerformedCreateView = false;
 
-  // A shared set of generated IDs to ensure uniqueness across all instances of subclasses.
-  private static final Set<UUID> generatedIDS = new HashSet<>();
-
   // keeps track of all pane arguments
   final HashMap<String, Object> mArguments = new HashMap<>();
 
@@ -505,13 +500,13 @@ public abstract class Pane {
     this.mUUID = id;
   }
 
-  protected synchronized void generateUUID() {
-    UUID id;
-    do {
-      id = UUID.randomUUID();
-    } while (generatedIDS.contains(id));
-    generatedIDS.add(id);
-    mUUID = id;
+  /**
+   * Generates a random UUID for this pane. Pane UUIDs are persisted across launches so they are
+   * random rather than sequential, collisions are improbable enough not to keep a record of past
+   * UUIDs.
+   */
+  protected void generateUUID() {
+    mUUID = UUID.randomUUID();
   }
 
   /**